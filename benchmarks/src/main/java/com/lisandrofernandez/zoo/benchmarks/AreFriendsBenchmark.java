@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lisandrofernandez.zoo.Animal;
+import com.lisandrofernandez.zoo.Zoo;
+
+/**
+ * Benchmarks checking friendships of random pairs of animals, which are
+ * rarely friends, and a day, which checks the candidates to new friends,
+ * by searching the friends of an animal and by probing the hash set of
+ * friendships, with and without a Bloom filter.
+ *
+ * @author Lisandro Fernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AreFriendsBenchmark {
+    private static final int PAIRS = 1 << 16;
+
+    @Param({ "100000", "1000000" })
+    public int animals;
+
+    @Param({ "16" })
+    public int friends;
+
+    @Param({ "none", "set", "bloom" })
+    public String hashing;
+
+    private Zoo zoo;
+    private Animal[] a;
+    private Animal[] b;
+
+    @Setup
+    public void setUp() {
+        List<Animal> list = Zoos.generateAnimals(animals);
+        zoo = Zoos.newZoo(list, friends);
+        zoo.setHashingFriendships(!"none".equals(hashing), "bloom".equals(hashing));
+        SplittableRandom random = new SplittableRandom(42);
+        a = new Animal[PAIRS];
+        b = new Animal[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            a[i] = list.get(random.nextInt(animals));
+            b[i] = list.get(random.nextInt(animals));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public int areFriends() {
+        int count = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            if (zoo.areFriends(a[i], b[i])) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void liveDay() {
+        zoo.liveDay();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lisandrofernandez.zoo.AnimalColumns;
+import com.lisandrofernandez.zoo.Parrot;
+import com.lisandrofernandez.zoo.ReadOnlyAnimal;
+import com.lisandrofernandez.zoo.Zoo;
+
+/**
+ * Benchmarks the average length of the wings of the parrots which can
+ * speak, by iterating the animals of a zoo and by scanning its columns.
+ *
+ * @author Lisandro Fernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnsBenchmark {
+
+    @Param({ "1000", "1000000" })
+    public int animals;
+
+    private Zoo zoo;
+    private AnimalColumns columns;
+
+    @Setup
+    public void setUp() {
+        zoo = new Zoo(Zoos.generateAnimals(animals));
+        columns = zoo.columns();
+    }
+
+    @Benchmark
+    public double animals() {
+        double sum = 0;
+        int count = 0;
+        for (ReadOnlyAnimal animal : zoo.getAnimalsView()) {
+            if (animal instanceof Parrot && Boolean.TRUE.equals(((Parrot) animal).canSpeak())) {
+                sum += ((Parrot) animal).getWingsLength();
+                count++;
+            }
+        }
+        return sum / count;
+    }
+
+    @Benchmark
+    public double columns() {
+        return columns.averageWingsLength(columns.speakingParrots());
+    }
+
+    @Benchmark
+    public AnimalColumns build() {
+        return zoo.columns();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lisandrofernandez.zoo.Animal;
+import com.lisandrofernandez.zoo.EdgeBatch;
+import com.lisandrofernandez.zoo.Zoo;
+
+/**
+ * Benchmarks building a zoo: adding the animals in bulk with
+ * {@link Zoo#Zoo(java.util.Collection)} and then making friends one
+ * pair at a time with {@link Zoo#makeFriends(Animal, Animal)}, or all
+ * at once with {@link Zoo#makeFriends(EdgeBatch)}.
+ *
+ * @author Lisandro Fernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConstructionBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int animals;
+
+    @Param({ "2", "16" })
+    public int friends;
+
+    private List<Animal> generated;
+    private EdgeBatch batch;
+
+    @Setup
+    public void setUp() {
+        generated = Zoos.generateAnimals(animals);
+        // the same pairs as Zoos.makeFriends
+        SplittableRandom random = new SplittableRandom(42);
+        long friendships = (long) animals * friends / 2;
+        batch = new EdgeBatch((int) friendships);
+        for (long i = 0; i < friendships; i++) {
+            batch.add(random.nextInt(animals), random.nextInt(animals));
+        }
+    }
+
+    @Benchmark
+    public Zoo newZoo() {
+        return new Zoo(generated);
+    }
+
+    @Benchmark
+    public Zoo newZooWithFriends() {
+        Zoo zoo = new Zoo(generated);
+        Zoos.makeFriends(zoo, generated, friends);
+        return zoo;
+    }
+
+    @Benchmark
+    public Zoo newZooWithFriendsInBatch() {
+        Zoo zoo = new Zoo(generated);
+        zoo.makeFriends(batch);
+        return zoo;
+    }
+
+    @Benchmark
+    public Zoo newZooWithFriendsInParallelBatch() {
+        Zoo zoo = new Zoo(generated);
+        zoo.makeFriends(batch, ForkJoinPool.commonPool());
+        return zoo;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lisandrofernandez.zoo.FriendshipPolicy;
+import com.lisandrofernandez.zoo.Zoo;
+
+/**
+ * Benchmarks a day in a zoo. Every animal loses a friend and makes a
+ * new one each day, so the number of friends stays about the same
+ * between iterations. The new friends are drawn uniformly, weighted by
+ * species and favourite food, or limited to twice the initial number.
+ *
+ * @author Lisandro Fernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LiveDayBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int animals;
+
+    @Param({ "2", "16" })
+    public int friends;
+
+    @Param({ "uniform", "weighted", "capped" })
+    public String policy;
+
+    private Zoo zoo;
+
+    @Setup
+    public void setUp() {
+        zoo = Zoos.newZoo(Zoos.generateAnimals(animals), friends);
+        if ("weighted".equals(policy)) {
+            zoo.setFriendshipPolicy(FriendshipPolicy.bySpecies(4)
+                    .and(FriendshipPolicy.byFavouriteFood(2)));
+        } else if ("capped".equals(policy)) {
+            zoo.setFriendshipPolicy(FriendshipPolicy.uniform().withMaxFriends(2 * friends));
+        }
+    }
+
+    @Benchmark
+    public void liveDay() {
+        zoo.liveDay();
+    }
+
+    @Benchmark
+    public void liveDayInParallel() {
+        zoo.liveDayInParallel(ForkJoinPool.commonPool());
+    }
+}
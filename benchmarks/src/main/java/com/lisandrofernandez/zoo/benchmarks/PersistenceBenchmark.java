@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lisandrofernandez.zoo.Animal;
+import com.lisandrofernandez.zoo.Pair;
+import com.lisandrofernandez.zoo.ReadOnlyAnimal;
+import com.lisandrofernandez.zoo.Zoo;
+
+/**
+ * Benchmarks saving a zoo to a file and loading it, compared with
+ * building it again by making all its friendships.
+ *
+ * @author Lisandro Fernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int animals;
+
+    @Param({ "16" })
+    public int friends;
+
+    private Zoo zoo;
+    private List<Animal> animalList;
+    private List<Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>>> friendships;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        animalList = Zoos.generateAnimals(animals);
+        zoo = Zoos.newZoo(animalList, friends);
+        friendships = zoo.getAnimalsAndFriends();
+        file = Files.createTempFile("zoo", ".bin");
+        zoo.save(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        zoo.save(file);
+    }
+
+    @Benchmark
+    public Zoo load() throws IOException {
+        return Zoo.load(file);
+    }
+
+    @Benchmark
+    public Zoo rebuild() {
+        Zoo rebuilt = new Zoo(new ArrayList<>(animalList));
+        for (Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>> pair : friendships) {
+            for (ReadOnlyAnimal friend : pair.getValue()) {
+                rebuilt.makeFriends(pair.getKey(), friend);
+            }
+        }
+        return rebuilt;
+    }
+}
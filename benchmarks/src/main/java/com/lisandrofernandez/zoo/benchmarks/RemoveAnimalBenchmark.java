@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lisandrofernandez.zoo.Animal;
+import com.lisandrofernandez.zoo.Zoo;
+
+/**
+ * Benchmarks removing a tenth of the animals of a zoo, one by one and
+ * at once. Every invocation starts from a freshly built zoo, so the
+ * time of a single invocation is measured.
+ *
+ * @author Lisandro Fernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RemoveAnimalBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int animals;
+
+    @Param({ "2", "16" })
+    public int friends;
+
+    private List<Animal> generated;
+    private List<Animal> retired;
+    private Set<Animal> retiredSet;
+    private Zoo zoo;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        generated = Zoos.generateAnimals(animals);
+        retired = new ArrayList<>();
+        for (int i = 0; i < generated.size(); i += 10) {
+            retired.add(generated.get(i));
+        }
+        retiredSet = new HashSet<>(retired);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        zoo = Zoos.newZoo(generated, friends);
+    }
+
+    @Benchmark
+    public Zoo removeAnimal() {
+        for (Animal animal : retired) zoo.removeAnimal(animal);
+        return zoo;
+    }
+
+    @Benchmark
+    public Zoo removeAnimals() {
+        zoo.removeAnimals(retired);
+        return zoo;
+    }
+
+    @Benchmark
+    public Zoo removeAnimalsInParallel() {
+        zoo.removeAnimals(retiredSet::contains, ForkJoinPool.commonPool());
+        return zoo;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lisandrofernandez.zoo.Animal;
+import com.lisandrofernandez.zoo.RandomSource;
+import com.lisandrofernandez.zoo.ShardServer;
+import com.lisandrofernandez.zoo.ShardedZoo;
+
+/**
+ * Benchmarks a day in a sharded zoo, with the shards in this process
+ * or behind sockets. The servers of the socket shards run in threads
+ * of this process, so the benchmark measures the cost of the messages
+ * rather than the heaps of several processes.
+ *
+ * @author Lisandro Fernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ShardedDayBenchmark {
+
+    @Param({ "100000" })
+    public int animals;
+
+    @Param({ "16" })
+    public int friends;
+
+    @Param({ "1", "4" })
+    public int shards;
+
+    @Param({ "local", "socket" })
+    public String transport;
+
+    private final List<ShardServer> servers = new ArrayList<>();
+    private ShardedZoo zoo;
+
+    @Setup
+    public void setUp() throws IOException {
+        if ("local".equals(transport)) {
+            zoo = new ShardedZoo(shards);
+        } else {
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            for (int s = 0; s < shards; s++) {
+                ShardServer server = new ShardServer(0);
+                servers.add(server);
+                addresses.add(new InetSocketAddress("localhost", server.getPort()));
+                Thread thread = new Thread(() -> {
+                    try {
+                        server.run();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                thread.setDaemon(true);
+                thread.start();
+            }
+            zoo = ShardedZoo.connect(addresses);
+        }
+        zoo.setRandomSource(RandomSource.of(42));
+        List<Animal> list = Zoos.generateAnimals(animals);
+        for (Animal animal : list) zoo.addAnimal(animal);
+        SplittableRandom random = new SplittableRandom(42);
+        long friendships = (long) animals * friends / 2;
+        for (long i = 0; i < friendships; i++) {
+            zoo.makeFriends(list.get(random.nextInt(animals)),
+                            list.get(random.nextInt(animals)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        zoo.close();
+        for (ShardServer server : servers) server.close();
+        servers.clear();
+    }
+
+    @Benchmark
+    public void liveDay() {
+        zoo.liveDay();
+    }
+}
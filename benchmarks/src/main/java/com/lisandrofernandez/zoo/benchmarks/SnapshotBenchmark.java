@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.lisandrofernandez.zoo.AnimalCursor;
+import com.lisandrofernandez.zoo.Pair;
+import com.lisandrofernandez.zoo.ReadOnlyAnimal;
+import com.lisandrofernandez.zoo.Zoo;
+import com.lisandrofernandez.zoo.ZooSnapshot;
+
+/**
+ * Benchmarks listing the animals of a zoo and their friends, by copying
+ * them, by taking a snapshot and by walking them with a cursor.
+ *
+ * @author Lisandro Fernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int animals;
+
+    @Param({ "2", "16" })
+    public int friends;
+
+    private Zoo zoo;
+
+    @Setup
+    public void setUp() {
+        zoo = Zoos.newZoo(Zoos.generateAnimals(animals), friends);
+    }
+
+    @Benchmark
+    public Set<ReadOnlyAnimal> getAnimals() {
+        return zoo.getAnimals();
+    }
+
+    @Benchmark
+    public List<Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>>> getAnimalsAndFriends() {
+        return zoo.getAnimalsAndFriends();
+    }
+
+    @Benchmark
+    public ZooSnapshot snapshot() {
+        return zoo.snapshot();
+    }
+
+    @Benchmark
+    public void cursor(Blackhole blackhole) {
+        AnimalCursor cursor = zoo.cursor();
+        while (cursor.next()) {
+            blackhole.consume(cursor.animal());
+            for (int i = 0; i < cursor.friendCount(); i++) {
+                blackhole.consume(cursor.friend(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lisandrofernandez.zoo.Animal;
+import com.lisandrofernandez.zoo.FriendshipEventSink;
+import com.lisandrofernandez.zoo.FriendshipStorage;
+import com.lisandrofernandez.zoo.RandomSource;
+import com.lisandrofernandez.zoo.Zoo;
+
+/**
+ * Benchmarks a day in a zoo keeping the friends on the heap and outside
+ * the heap. Run with the GC profiler to compare the time spent in
+ * garbage collection.
+ *
+ * @author Lisandro Fernandez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StorageBenchmark {
+
+    @Param({ "100000", "1000000" })
+    public int animals;
+
+    @Param({ "16" })
+    public int friends;
+
+    @Param({ "heap", "offHeap" })
+    public String storage;
+
+    private Zoo zoo;
+
+    @Setup
+    public void setUp() {
+        List<Animal> list = Zoos.generateAnimals(animals);
+        zoo = new Zoo(list, "heap".equals(storage)
+                ? FriendshipStorage.heap() : FriendshipStorage.offHeap());
+        zoo.setEventSink(FriendshipEventSink.none());
+        zoo.setRandomSource(RandomSource.of(42));
+        Zoos.makeFriends(zoo, list, friends);
+    }
+
+    @Benchmark
+    public void liveDay() {
+        zoo.liveDay();
+    }
+
+    @Benchmark
+    public void liveDayInParallel() {
+        zoo.liveDayInParallel(ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.lisandrofernandez.zoo.Animal;
+import com.lisandrofernandez.zoo.Chicken;
+import com.lisandrofernandez.zoo.Dog;
+import com.lisandrofernandez.zoo.DogType;
+import com.lisandrofernandez.zoo.FriendshipEventSink;
+import com.lisandrofernandez.zoo.Parrot;
+import com.lisandrofernandez.zoo.RandomSource;
+import com.lisandrofernandez.zoo.Zoo;
+
+/**
+ * Builds the zoos used by the benchmarks.
+ *
+ * @author Lisandro Fernandez
+ */
+final class Zoos {
+
+    private Zoos() { }
+
+    /**
+     * Generates the given number of animals, a third of each kind.
+     *
+     * @param  n the number of animals
+     * @return the animals
+     */
+    static List<Animal> generateAnimals(int n) {
+        DogType[] types = DogType.values();
+        List<Animal> animals = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            switch (i % 3) {
+            case 0:
+                animals.add(new Dog("Dog " + i, "Meat", types[i % types.length]));
+                break;
+            case 1:
+                animals.add(new Parrot("Parrot " + i, "Grain", .25f, i % 2 == 0));
+                break;
+            default:
+                animals.add(new Chicken("Chicken " + i, "Corn", .75f, i % 2 == 0));
+                break;
+            }
+        }
+        return animals;
+    }
+
+    /**
+     * Builds a zoo with the given animals where every animal has about
+     * the given number of friends, chosen at random with a fixed seed.
+     * The changes of the days are ignored.
+     *
+     * @param  animals the animals
+     * @param  friends the average number of friends of an animal
+     * @return the zoo
+     */
+    static Zoo newZoo(List<Animal> animals, int friends) {
+        Zoo zoo = new Zoo(animals);
+        zoo.setEventSink(FriendshipEventSink.none());
+        zoo.setRandomSource(RandomSource.of(42));
+        makeFriends(zoo, animals, friends);
+        return zoo;
+    }
+
+    /**
+     * Makes friends random animals of the zoo until every animal has
+     * about the given number of friends.
+     *
+     * @param zoo the zoo
+     * @param animals the animals in the zoo
+     * @param friends the average number of friends of an animal
+     */
+    static void makeFriends(Zoo zoo, List<Animal> animals, int friends) {
+        SplittableRandom random = new SplittableRandom(42);
+        long friendships = (long) animals.size() * friends / 2;
+        for (long i = 0; i < friendships; i++) {
+            Animal a = animals.get(random.nextInt(animals.size()));
+            Animal b = animals.get(random.nextInt(animals.size()));
+            zoo.makeFriends(a, b);
+        }
+    }
+}
@@ -27,7 +27,7 @@ package com.lisandrofernandez.zoo;
  * @author Lisandro Fernandez
  */
 
-public class Animal {
+public class Animal implements ReadOnlyAnimal {
     protected String name;
     protected String favouriteFood;
 
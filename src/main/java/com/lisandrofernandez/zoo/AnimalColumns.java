@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The attributes of the animals of a zoo stored by column, for scans
+ * over many animals. Every animal is a row, and every attribute an
+ * array indexed by row: the names and favourite foods are codes into a
+ * dictionary of distinct strings, the species and dog types are byte
+ * codes, the length of the wings is a {@code float} and whether a
+ * parrot can speak or a chicken is a broiler are bits of a set. A scan
+ * reads a few contiguous arrays instead of an object per animal.
+ *
+ * <p>
+ * The columns are a copy of the attributes when they are built by
+ * {@link Zoo#columns()}, whose rows are the animals in the order of
+ * {@link Zoo#getAnimalsView()}, and are not changed by later changes to
+ * the zoo or the animals. Selections of rows are {@link BitSet}s, which
+ * are combined with {@link BitSet#and(BitSet)} and the like, e.g. the
+ * average length of the wings of the parrots which can speak is
+ * {@code averageWingsLength(speakingParrots())}.
+ *
+ * <p>
+ * The species of an animal is the most specific of {@code Animal},
+ * {@code Bird}, {@code Dog}, {@code Parrot} and {@code Chicken} whose
+ * read-only interface it implements, so immutable dogs are dogs.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public final class AnimalColumns {
+    private static final byte NONE = -1;
+
+    private static final Class<?>[] SPECIES = {
+        Animal.class, Bird.class, Dog.class, Parrot.class, Chicken.class
+    };
+    private static final byte BIRD = 1;
+    private static final byte DOG = 2;
+    private static final byte PARROT = 3;
+    private static final byte CHICKEN = 4;
+
+    private final int size;
+    private final byte[] species;
+    private final int[] names;
+    private final String[] nameDictionary;
+    private final int[] foods;
+    private final String[] foodDictionary;
+    private final Map<String, Integer> foodCodes = new HashMap<>();
+    private final byte[] dogTypes;
+    private final float[] wingsLengths;
+    private final BitSet speaking;
+    private final BitSet broilers;
+
+    /**
+     * Builds the columns of the animals of a graph, one row per id.
+     *
+     * @param graph the graph
+     */
+    AnimalColumns(FriendshipGraph graph) {
+        size = graph.size();
+        species = new byte[size];
+        names = new int[size];
+        foods = new int[size];
+        dogTypes = new byte[size];
+        wingsLengths = new float[size];
+        speaking = new BitSet(size);
+        broilers = new BitSet(size);
+        Map<String, Integer> nameCodes = new HashMap<>();
+        Arrays.fill(dogTypes, NONE);
+        Arrays.fill(wingsLengths, Float.NaN);
+        for (int row = 0; row < size; row++) {
+            ReadOnlyAnimal animal = graph.animal(row);
+            species[row] = speciesOf(animal);
+            names[row] = encode(nameCodes, animal.getName());
+            foods[row] = encode(foodCodes, animal.getFavouriteFood());
+            if (animal instanceof ReadOnlyDog) {
+                DogType type = ((ReadOnlyDog) animal).getType();
+                if (type != null) dogTypes[row] = (byte) type.ordinal();
+            } else if (animal instanceof ReadOnlyBird) {
+                wingsLengths[row] = ((ReadOnlyBird) animal).wingsLength();
+                if (animal instanceof ReadOnlyParrot
+                    && Boolean.TRUE.equals(
+                           ((ReadOnlyParrot) animal).canSpeak())) {
+                    speaking.set(row);
+                }
+                if (animal instanceof ReadOnlyChicken
+                    && Boolean.TRUE.equals(
+                           ((ReadOnlyChicken) animal).isBoiler())) {
+                    broilers.set(row);
+                }
+            }
+        }
+        nameDictionary = dictionary(nameCodes);
+        foodDictionary = dictionary(foodCodes);
+    }
+
+    /**
+     * Returns the number of rows, one per animal.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the species of the animal of a row.
+     *
+     * @param  row the row
+     * @return the species of the animal
+     * @throws IndexOutOfBoundsException if the row is out of range
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends ReadOnlyAnimal> species(int row) {
+        checkRow(row);
+        return (Class<? extends ReadOnlyAnimal>) SPECIES[species[row]];
+    }
+
+    /**
+     * Returns the name of the animal of a row.
+     *
+     * @param  row the row
+     * @return the name of the animal, or null
+     * @throws IndexOutOfBoundsException if the row is out of range
+     */
+    public String name(int row) {
+        checkRow(row);
+        return names[row] == NONE ? null : nameDictionary[names[row]];
+    }
+
+    /**
+     * Returns the favourite food of the animal of a row.
+     *
+     * @param  row the row
+     * @return the favourite food of the animal, or null
+     * @throws IndexOutOfBoundsException if the row is out of range
+     */
+    public String favouriteFood(int row) {
+        checkRow(row);
+        return foods[row] == NONE ? null : foodDictionary[foods[row]];
+    }
+
+    /**
+     * Returns the dog type of the animal of a row.
+     *
+     * @param  row the row
+     * @return the dog type, or null if the animal is not a dog or has
+     *         no type
+     * @throws IndexOutOfBoundsException if the row is out of range
+     */
+    public DogType dogType(int row) {
+        checkRow(row);
+        return dogTypes[row] == NONE ? null : DogType.values()[dogTypes[row]];
+    }
+
+    /**
+     * Returns the length of the wings of the animal of a row.
+     *
+     * @param  row the row
+     * @return the length of the wings, or {@code NaN} if the animal is
+     *         not a bird or the length is unknown
+     * @throws IndexOutOfBoundsException if the row is out of range
+     */
+    public float wingsLength(int row) {
+        checkRow(row);
+        return wingsLengths[row];
+    }
+
+    /**
+     * Returns the rows of the animals of a species.
+     *
+     * @param  type the species
+     * @return a new set of the rows of the animals of the species
+     * @throws NullPointerException if the species is null
+     * @throws IllegalArgumentException if the class is not a species
+     */
+    public BitSet rowsOf(Class<? extends ReadOnlyAnimal> type) {
+        if (type == null) throw new NullPointerException();
+        int code = Arrays.asList(SPECIES).indexOf(type);
+        if (code < 0) throw new IllegalArgumentException("Illegal species: " + type.getName());
+        BitSet rows = new BitSet(size);
+        for (int row = 0; row < size; row++) {
+            if (species[row] == code) rows.set(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the rows of the dogs of a type.
+     *
+     * @param  type the dog type
+     * @return a new set of the rows of the dogs of the type
+     * @throws NullPointerException if the type is null
+     */
+    public BitSet rowsOf(DogType type) {
+        byte code = (byte) type.ordinal();
+        BitSet rows = new BitSet(size);
+        for (int row = 0; row < size; row++) {
+            if (dogTypes[row] == code) rows.set(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the rows of the animals with a favourite food. The food
+     * is looked up once in the dictionary and the rows are found by
+     * comparing codes.
+     *
+     * @param  favouriteFood the favourite food
+     * @return a new set of the rows of the animals with the food
+     * @throws NullPointerException if the food is null
+     */
+    public BitSet rowsWithFavouriteFood(String favouriteFood) {
+        if (favouriteFood == null) throw new NullPointerException();
+        Integer code = foodCodes.get(favouriteFood);
+        BitSet rows = new BitSet(size);
+        if (code == null) return rows;
+        for (int row = 0, c = code; row < size; row++) {
+            if (foods[row] == c) rows.set(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the rows of the parrots which can speak.
+     *
+     * @return a new set of the rows of the parrots which can speak
+     */
+    public BitSet speakingParrots() {
+        return (BitSet) speaking.clone();
+    }
+
+    /**
+     * Returns the rows of the chickens which are broilers.
+     *
+     * @return a new set of the rows of the broilers
+     */
+    public BitSet broilers() {
+        return (BitSet) broilers.clone();
+    }
+
+    /**
+     * Returns the average length of the wings of the animals of the
+     * given rows, ignoring the animals which are not birds or whose
+     * length is unknown, and the rows out of range.
+     *
+     * @param  rows the rows
+     * @return the average length of the wings, or {@code NaN} if no
+     *         animal of the rows has a known length
+     * @throws NullPointerException if the rows are null
+     */
+    public double averageWingsLength(BitSet rows) {
+        double sum = 0;
+        int count = 0;
+        long[] words = rows.toLongArray();
+        for (int w = 0, end = Math.min(words.length, (size + 63) >>> 6); w < end; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                if (row >= size) break; // the rest of the last word
+                float wingsLength = wingsLengths[row];
+                if (wingsLength == wingsLength) { // not NaN
+                    sum += wingsLength;
+                    count++;
+                }
+            }
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Illegal row: " + row);
+        }
+    }
+
+    private static byte speciesOf(ReadOnlyAnimal animal) {
+        if (animal instanceof ReadOnlyChicken) return CHICKEN;
+        if (animal instanceof ReadOnlyParrot) return PARROT;
+        if (animal instanceof ReadOnlyDog) return DOG;
+        if (animal instanceof ReadOnlyBird) return BIRD;
+        return 0;
+    }
+
+    private static int encode(Map<String, Integer> codes, String s) {
+        if (s == null) return NONE;
+        Integer code = codes.get(s);
+        if (code == null) {
+            code = codes.size();
+            codes.put(s, code);
+        }
+        return code;
+    }
+
+    private static String[] dictionary(Map<String, Integer> codes) {
+        String[] dictionary = new String[codes.size()];
+        for (Map.Entry<String, Integer> e : codes.entrySet()) {
+            dictionary[e.getValue()] = e.getKey();
+        }
+        return dictionary;
+    }
+}
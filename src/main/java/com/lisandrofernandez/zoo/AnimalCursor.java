@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+/**
+ * A cursor over the animals of a zoo and their friends. The cursor
+ * reads the zoo directly, without copying it, and is positioned before
+ * the first animal when created:
+ *
+ * <pre>{@code
+ * AnimalCursor cursor = zoo.cursor();
+ * while (cursor.next()) {
+ *     ReadOnlyAnimal animal = cursor.animal();
+ *     for (int i = 0; i < cursor.friendCount(); i++) {
+ *         ReadOnlyAnimal friend = cursor.friend(i);
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ *
+ * @author Lisandro Fernandez
+ * @see Zoo#cursor()
+ * @see ZooSnapshot#cursor()
+ */
+
+public interface AnimalCursor {
+
+    /**
+     * Moves the cursor to the next animal.
+     *
+     * @return {@code true} if there is a next animal
+     * @throws java.util.ConcurrentModificationException if the zoo was
+     *         modified since the cursor was created
+     */
+    boolean next();
+
+    /**
+     * Returns the current animal.
+     *
+     * @return the current animal
+     * @throws IllegalStateException if the cursor is not positioned on
+     *         an animal
+     * @throws java.util.ConcurrentModificationException if the zoo was
+     *         modified since the cursor was created
+     */
+    ReadOnlyAnimal animal();
+
+    /**
+     * Returns the number of friends of the current animal.
+     *
+     * @return the number of friends of the current animal
+     * @throws IllegalStateException if the cursor is not positioned on
+     *         an animal
+     * @throws java.util.ConcurrentModificationException if the zoo was
+     *         modified since the cursor was created
+     */
+    int friendCount();
+
+    /**
+     * Returns a friend of the current animal.
+     *
+     * @param  index the index of the friend, from 0 to
+     *         {@code friendCount() - 1}
+     * @return a friend of the current animal
+     * @throws IllegalStateException if the cursor is not positioned on
+     *         an animal
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws java.util.ConcurrentModificationException if the zoo was
+     *         modified since the cursor was created
+     */
+    ReadOnlyAnimal friend(int index);
+}
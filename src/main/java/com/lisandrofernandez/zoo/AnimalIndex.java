@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Secondary indexes of the animals of a zoo by class, dog type,
+ * favourite food, whether a parrot can speak and whether a chicken is a
+ * broiler. Every index maps a value of its attribute, null included, to
+ * the set of animals having it, so a lookup costs the size of its result
+ * instead of the size of the zoo.
+ *
+ * <p>
+ * The animals are mutable, so the values indexed for every animal are
+ * kept until it is removed or {@linkplain #update(ReadOnlyAnimal) updated}, to
+ * find it again even if it changed meanwhile.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class AnimalIndex {
+    static final int CLASS = 0;
+    static final int DOG_TYPE = 1;
+    static final int FAVOURITE_FOOD = 2;
+    static final int SPEAK = 3;
+    static final int BOILER = 4;
+    private static final int ATTRIBUTES = 5;
+
+    /**
+     * The value of an attribute which an animal does not have, e.g. the
+     * dog type of a parrot.
+     */
+    private static final Object NONE = new Object();
+
+    private final Map<ReadOnlyAnimal, Object[]> values = new HashMap<>();
+
+    private final List<Map<Object, Set<ReadOnlyAnimal>>> indexes =
+            new ArrayList<>(ATTRIBUTES);
+
+    AnimalIndex() {
+        for (int i = 0; i < ATTRIBUTES; i++) indexes.add(new HashMap<>());
+    }
+
+    void add(ReadOnlyAnimal animal) {
+        Object[] keys = valuesOf(animal);
+        values.put(animal, keys);
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            if (keys[i] != NONE) {
+                indexes.get(i).computeIfAbsent(keys[i], k -> new HashSet<>())
+                              .add(animal);
+            }
+        }
+    }
+
+    void remove(ReadOnlyAnimal animal) {
+        Object[] keys = values.remove(animal);
+        if (keys == null) return;
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            if (keys[i] == NONE) continue;
+            Set<ReadOnlyAnimal> animals = indexes.get(i).get(keys[i]);
+            animals.remove(animal);
+            if (animals.isEmpty()) indexes.get(i).remove(keys[i]);
+        }
+    }
+
+    /**
+     * Indexes again an animal whose attributes changed.
+     */
+    void update(ReadOnlyAnimal animal) {
+        Object[] keys = values.get(animal);
+        if (keys != null && !Arrays.equals(keys, valuesOf(animal))) {
+            remove(animal);
+            add(animal);
+        }
+    }
+
+    /**
+     * Returns a new set of the animals with the given value of an
+     * attribute.
+     */
+    @SuppressWarnings("unchecked")
+    <T extends ReadOnlyAnimal> Set<T> get(int attribute, Object value) {
+        Set<ReadOnlyAnimal> animals = indexes.get(attribute).get(value);
+        return animals == null ? new HashSet<>() : new HashSet<>((Set<T>) (Set<?>) animals);
+    }
+
+    /**
+     * Returns {@code true} if an animal has the given value of an
+     * attribute, testing the animal as it is now.
+     */
+    static boolean matches(ReadOnlyAnimal animal, int attribute, Object value) {
+        Object key = valueOf(animal, attribute);
+        return key != NONE && Objects.equals(key, value);
+    }
+
+    private static Object[] valuesOf(ReadOnlyAnimal animal) {
+        Object[] keys = new Object[ATTRIBUTES];
+        for (int i = 0; i < ATTRIBUTES; i++) keys[i] = valueOf(animal, i);
+        return keys;
+    }
+
+    private static Object valueOf(ReadOnlyAnimal animal, int attribute) {
+        switch (attribute) {
+        case CLASS:
+            return animal.getClass();
+        case DOG_TYPE:
+            return animal instanceof ReadOnlyDog
+                   ? ((ReadOnlyDog) animal).getType() : NONE;
+        case FAVOURITE_FOOD:
+            return animal.getFavouriteFood();
+        case SPEAK:
+            return animal instanceof ReadOnlyParrot
+                   ? ((ReadOnlyParrot) animal).canSpeak() : NONE;
+        case BOILER:
+            return animal instanceof ReadOnlyChicken
+                   ? ((ReadOnlyChicken) animal).isBoiler() : NONE;
+        default:
+            throw new AssertionError(attribute);
+        }
+    }
+}
@@ -23,7 +23,6 @@ package com.lisandrofernandez.zoo;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Starts the zoo application.
@@ -63,13 +62,13 @@ public class App {
      * @param zoo the zoo
      */
     private static void printAnimals(Zoo zoo) {
-        for (Pair<Animal, Set<Animal>> af : zoo.getAnimalsAndFriends()) {
-            Animal animal = af.getKey();
-            Set<Animal> friends = af.getValue();
+        AnimalCursor cursor = zoo.cursor();
+        while (cursor.next()) {
             StringBuilder sb = new StringBuilder();
-            sb.append(animal);
-            for (Animal f : friends) {
-                sb.append(System.lineSeparator()).append("  - ").append(f.getName());
+            sb.append(cursor.animal());
+            for (int i = 0; i < cursor.friendCount(); i++) {
+                sb.append(System.lineSeparator()).append("  - ")
+                  .append(cursor.friend(i).getName());
             }
             System.out.println(sb);
         }
@@ -27,7 +27,7 @@ package com.lisandrofernandez.zoo;
  * @author Lisandro Fernandez
  */
 
-public class Bird extends Animal {
+public class Bird extends Animal implements ReadOnlyBird {
     protected Float wingsLength;
 
     /**
@@ -66,6 +66,11 @@ public class Bird extends Animal {
         return wingsLength;
     }
 
+    @Override
+    public float wingsLength() {
+        return wingsLength == null ? Float.NaN : wingsLength;
+    }
+
     /**
      * Sets the length of the wings.
      * 
@@ -21,7 +21,7 @@
  */
 package com.lisandrofernandez.zoo;
 
-public class Chicken extends Bird {
+public class Chicken extends Bird implements ReadOnlyChicken {
     Boolean boiler;
 
     /**
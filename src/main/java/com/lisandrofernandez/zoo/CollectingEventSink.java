@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link FriendshipEventSink} which keeps every event in memory, in
+ * the order they were reported.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public class CollectingEventSink implements FriendshipEventSink {
+    private final List<FriendshipEvent> events = new ArrayList<>();
+
+    @Override
+    public void accept(FriendshipEvent event) {
+        if (event == null) throw new NullPointerException();
+        events.add(event);
+    }
+
+    /**
+     * Returns the events collected so far. The list is a read-only
+     * view which reflects the events collected later.
+     *
+     * @return the events collected so far
+     */
+    public List<FriendshipEvent> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Discards the events collected so far.
+     */
+    public void clear() {
+        events.clear();
+    }
+}
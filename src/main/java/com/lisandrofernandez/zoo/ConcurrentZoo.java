@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe zoo. Many threads can add and remove animals and make
+ * and break friendships at the same time.
+ *
+ * <p>
+ * Every animal gets a unique id when it is added. The friends of an
+ * animal are guarded by one of a fixed number of locks (stripes),
+ * chosen by the id of the animal. A friendship updates both animals
+ * while holding the stripes of both, which are always acquired in
+ * increasing stripe order, so two threads updating the same pair of
+ * stripes cannot deadlock. Updates of animals guarded by different
+ * stripes run in parallel, which lets the throughput scale with the
+ * number of cores instead of serializing on a single lock.
+ *
+ * <p>
+ * Given two animals x and y in the zoo which are friends, then y is in
+ * the friends of x and x is in the friends of y, and no thread can
+ * observe one without the other. An animal is removed with all its
+ * friendships at once, while holding the stripes of the animal and of
+ * all its friends, so no thread can observe a removed animal in the
+ * friends of another.
+ *
+ * <p>
+ * {@link #getAnimals()} and {@link #getAnimalsAndFriends()} are weakly
+ * consistent: every friendship of an animal is read atomically, but
+ * changes made by other threads during the call may or may not be
+ * seen.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public class ConcurrentZoo {
+    private static final int MAX_STRIPES = 1 << 16;
+
+    /**
+     * An animal in the zoo. The friends and the removed flag are guarded
+     * by the stripe of the id.
+     */
+    private static final class Node {
+        final int id;
+        final ReadOnlyAnimal animal;
+        final HashSet<Node> friends = new HashSet<>();
+        boolean removed;
+
+        Node(int id, ReadOnlyAnimal animal) {
+            this.id = id;
+            this.animal = animal;
+        }
+    }
+
+    private final ConcurrentHashMap<ReadOnlyAnimal, Node> nodes;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Constructs an empty {@code ConcurrentZoo} with a number of stripes
+     * suited to the available processors.
+     */
+    public ConcurrentZoo() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Constructs an empty {@code ConcurrentZoo} with the given estimated
+     * number of concurrently updating threads.
+     *
+     * @param  concurrencyLevel the estimated number of concurrently
+     *         updating threads
+     * @throws IllegalArgumentException if the concurrency level is not
+     *         positive
+     */
+    public ConcurrentZoo(int concurrencyLevel) {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Illegal concurrency level: " +
+                                               concurrencyLevel);
+        }
+        int n = 1;
+        while (n < concurrencyLevel && n < MAX_STRIPES) n <<= 1;
+        stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) stripes[i] = new ReentrantLock();
+        nodes = new ConcurrentHashMap<>(16, .75f, n);
+    }
+
+    /**
+     * Constructs a {@code ConcurrentZoo} with the specified animals.
+     *
+     * @param  animals the collection of animals
+     * @throws NullPointerException if the collection is null or any
+     *         animal in it is null
+     */
+    public ConcurrentZoo(Collection<? extends ReadOnlyAnimal> animals) {
+        this();
+        for (ReadOnlyAnimal a : animals) if (a == null) throw new NullPointerException();
+        for (ReadOnlyAnimal animal : animals) addAnimal(animal);
+    }
+
+    /**
+     * Adds an animal to the zoo if it is not present.
+     *
+     * @param  animal the animal to add
+     * @return {@code true} if the animal was not in the zoo
+     * @throws NullPointerException if the animal is null
+     */
+    public boolean addAnimal(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        if (nodes.containsKey(animal)) return false;
+        Node node = new Node(nextId.getAndIncrement(), animal);
+        return nodes.putIfAbsent(animal, node) == null;
+    }
+
+    /**
+     * Removes an animal from the zoo if it is present, breaking all its
+     * friendships.
+     *
+     * @param  animal the animal to remove
+     * @return {@code true} if the animal was in the zoo
+     * @throws NullPointerException if the animal is null
+     */
+    public boolean removeAnimal(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        Node node = nodes.get(animal);
+        if (node == null) return false;
+        while (true) {
+            int[] locked = stripesOf(node);
+            for (int stripe : locked) stripes[stripe].lock();
+            try {
+                if (node.removed) return false;
+                if (!Arrays.equals(locked, stripesOf(node))) {
+                    continue; // made a new friend meanwhile
+                }
+                // the animal and all its friendships go at once
+                node.removed = true;
+                nodes.remove(animal, node);
+                for (Node friend : node.friends) friend.friends.remove(node);
+                node.friends.clear();
+                return true;
+            } finally {
+                for (int stripe : locked) stripes[stripe].unlock();
+            }
+        }
+    }
+
+    /**
+     * Checks if an animal is in the zoo.
+     *
+     * @param  animal the whose presence in this zoo is to be tested
+     * @return {@code true} if the animal is in the zoo
+     * @throws NullPointerException if the animal is null
+     */
+    public boolean isAnimalPresent(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        return nodes.containsKey(animal);
+    }
+
+    /**
+     * Returns the set of animals in the zoo. Changes to the set are not
+     * reflected in the zoo, and vice-versa.
+     *
+     * @return the set of animals in the zoo
+     */
+    public Set<ReadOnlyAnimal> getAnimals() {
+        return new HashSet<>(nodes.keySet());
+    }
+
+    /**
+     * Returns the list of animals and their friends in the zoo. Changes
+     * to the list are not reflected in the zoo, and vice-versa.
+     *
+     * @return the list of animals and their friends in the zoo
+     */
+    public List<Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>>> getAnimalsAndFriends() {
+        List<Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>>> list = new ArrayList<>(nodes.size());
+        for (Node node : nodes.values()) {
+            Set<ReadOnlyAnimal> friends = new HashSet<>();
+            ReentrantLock lock = stripeOf(node);
+            lock.lock();
+            try {
+                if (node.removed) continue;
+                for (Node f : node.friends) friends.add(f.animal);
+            } finally {
+                lock.unlock();
+            }
+            list.add(new Pair<>(node.animal, friends));
+        }
+        return list;
+    }
+
+    /**
+     * Returns {@code true} if the given animals are friends. If A is
+     * friend of B then B is friend of A.
+     *
+     * @param a the first animal
+     * @param b the second animal
+     * @return {@code true} if the animals are friends
+     * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals is
+     *         not in the zoo
+     */
+    public boolean areFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        Node x = nodeOf(a), y = nodeOf(b);
+        ReentrantLock lock = stripeOf(x);
+        lock.lock();
+        try {
+            return x.friends.contains(y);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Establishes a friendship between two animals which are not
+     * friends. If A is friend of B then B is friend of A.
+     *
+     * <p>
+     * Note: an animal cannot be friend of itself.
+     *
+     * @param a the first animal to be friend
+     * @param b the second animal to be friend
+     * @return {@code true} if the animals were not friends, are not
+     *         equals and none of them was removed meanwhile
+     * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals is
+     *         not in the zoo
+     */
+    public boolean makeFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        Node x = nodeOf(a), y = nodeOf(b);
+        if (x == y) return false; // cannot be friend of itself
+        lock(x, y);
+        try {
+            if (x.removed || y.removed) return false;
+            return x.friends.add(y) // false if were already friends
+                   && y.friends.add(x); // true if reached
+        } finally {
+            unlock(x, y);
+        }
+    }
+
+    /**
+     * Breaks a friendship between two animals which are friends.
+     *
+     * @param a the first animal to break the friendship
+     * @param b the second animal to break the friendship
+     * @return {@code true} if the animals were friends
+     * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals is
+     *         not in the zoo
+     */
+    public boolean unmakeFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        Node x = nodeOf(a), y = nodeOf(b);
+        lock(x, y);
+        try {
+            return x.friends.remove(y) // false if were not friends
+                   && y.friends.remove(x); // true if reached
+        } finally {
+            unlock(x, y);
+        }
+    }
+
+    private Node nodeOf(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        Node node = nodes.get(animal);
+        if (node == null) {
+            throw new IllegalArgumentException(animal + " is not in the zoo");
+        }
+        return node;
+    }
+
+    /**
+     * Returns the stripes of an animal and its friends in increasing
+     * order, reading the friends under the stripe of the animal.
+     */
+    private int[] stripesOf(Node node) {
+        int mask = stripes.length - 1;
+        ReentrantLock lock = stripeOf(node);
+        lock.lock();
+        try {
+            int[] all = new int[node.friends.size() + 1];
+            int n = 0;
+            all[n++] = node.id & mask;
+            for (Node friend : node.friends) all[n++] = friend.id & mask;
+            Arrays.sort(all, 0, n);
+            int distinct = 0;
+            for (int i = 0; i < n; i++) {
+                if (distinct == 0 || all[i] != all[distinct - 1]) all[distinct++] = all[i];
+            }
+            return Arrays.copyOf(all, distinct);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock stripeOf(Node node) {
+        return stripes[node.id & (stripes.length - 1)];
+    }
+
+    /**
+     * Locks the stripes of both animals in increasing stripe order.
+     */
+    private void lock(Node x, Node y) {
+        int i = x.id & (stripes.length - 1);
+        int j = y.id & (stripes.length - 1);
+        if (i == j) {
+            stripes[i].lock();
+        } else {
+            stripes[Math.min(i, j)].lock();
+            stripes[Math.max(i, j)].lock();
+        }
+    }
+
+    private void unlock(Node x, Node y) {
+        int i = x.id & (stripes.length - 1);
+        int j = y.id & (stripes.length - 1);
+        stripes[i].unlock();
+        if (i != j) stripes[j].unlock();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * A {@link FriendshipEventSink} which prints every event as a line of
+ * text, e.g. "Dog one has lost friendship with Chicken one".
+ *
+ * <p>
+ * The lines are written to a buffer without building intermediate
+ * strings, and the buffer is written out when it is full and at the
+ * end of every day, instead of once per line.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public class ConsoleEventSink implements FriendshipEventSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+
+    /**
+     * Constructs a {@code ConsoleEventSink} printing to the standard
+     * output.
+     */
+    public ConsoleEventSink() {
+        this(System.out);
+    }
+
+    /**
+     * Constructs a {@code ConsoleEventSink} printing to the given
+     * stream, with the default charset.
+     *
+     * @param  out the stream
+     * @throws NullPointerException if the stream is null
+     */
+    public ConsoleEventSink(OutputStream out) {
+        this(new OutputStreamWriter(out));
+    }
+
+    /**
+     * Constructs a {@code ConsoleEventSink} printing to the given
+     * writer.
+     *
+     * @param  out the writer
+     * @throws NullPointerException if the writer is null
+     */
+    public ConsoleEventSink(Writer out) {
+        if (out == null) throw new NullPointerException();
+        this.out = new BufferedWriter(out, BUFFER_SIZE);
+    }
+
+    @Override
+    public void accept(FriendshipEvent event) {
+        print(event.getAnimal(), event.getType(), event.getFriend());
+    }
+
+    @Override
+    public void friendshipLost(ReadOnlyAnimal animal, ReadOnlyAnimal friend) {
+        print(animal, FriendshipEvent.Type.LOST, friend);
+    }
+
+    @Override
+    public void friendshipEstablished(ReadOnlyAnimal animal,
+                                      ReadOnlyAnimal friend) {
+        print(animal, FriendshipEvent.Type.ESTABLISHED, friend);
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void print(ReadOnlyAnimal animal, FriendshipEvent.Type type,
+                       ReadOnlyAnimal friend) {
+        try {
+            out.write(String.valueOf(animal.getName()));
+            out.write(' ');
+            out.write(type.getVerb());
+            out.write(' ');
+            out.write(String.valueOf(friend.getName()));
+            out.write(System.lineSeparator());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
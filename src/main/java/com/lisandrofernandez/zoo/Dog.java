@@ -27,7 +27,7 @@ package com.lisandrofernandez.zoo;
  * @author Lisandro Fernandez
  */
 
-public class Dog extends Animal {
+public class Dog extends Animal implements ReadOnlyDog {
     private DogType type;
 
     /**
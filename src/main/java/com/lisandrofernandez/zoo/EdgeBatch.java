@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A batch of friendships to make or break at once with
+ * {@link Zoo#makeFriends(EdgeBatch)} or {@link Zoo#unmakeFriends(EdgeBatch)}.
+ * The friendships are pairs of animals given by their index in the zoo,
+ * as returned by {@link Zoo#indexOf(ReadOnlyAnimal)}, and are kept in a single
+ * {@code int} array, without an object per friendship.
+ *
+ * <p>
+ * When applied, the batch is grouped by animal with a counting sort and
+ * the friends of every animal are sorted and deduplicated, so the array
+ * of friends of every animal is replaced once, whatever the number of
+ * its friendships in the batch. Repeated friendships, in either order,
+ * and friendships of an animal with itself are ignored. The batch is
+ * not changed by applying it, so it can be applied again.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public final class EdgeBatch {
+    private static final int ANIMALS_PER_TASK = 1 << 12;
+
+    private int[] pairs;
+    private int size;
+
+    /**
+     * Constructs an empty {@code EdgeBatch}.
+     */
+    public EdgeBatch() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty {@code EdgeBatch} with room for the given
+     * number of friendships.
+     *
+     * @param  expectedFriendships the expected number of friendships
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public EdgeBatch(int expectedFriendships) {
+        if (expectedFriendships < 0) {
+            throw new IllegalArgumentException("Illegal number of friendships: " +
+                                               expectedFriendships);
+        }
+        pairs = new int[2 * expectedFriendships];
+    }
+
+    /**
+     * Adds a friendship between two animals to the batch.
+     *
+     * @param  a the index of the first animal
+     * @param  b the index of the second animal
+     * @throws IllegalArgumentException if any of the indexes is negative
+     */
+    public void add(int a, int b) {
+        if (a < 0 || b < 0) {
+            throw new IllegalArgumentException("Illegal animal index: " +
+                                               Math.min(a, b));
+        }
+        if (2 * size == pairs.length) {
+            pairs = Arrays.copyOf(pairs, 2 * Math.max(16, size + (size >> 1)));
+        }
+        pairs[2 * size] = a;
+        pairs[2 * size + 1] = b;
+        size++;
+    }
+
+    /**
+     * Returns the number of friendships in the batch, repeated ones
+     * included.
+     *
+     * @return the number of friendships in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the friendships from the batch.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Groups the friendships by animal in compressed rows: the friends
+     * of animal i are {@code targets[offsets[i]..offsets[i + 1])}, sorted
+     * and distinct, and every friendship is in the rows of both animals.
+     *
+     * @param  n the number of animals in the zoo
+     * @param  pool the pool sorting the rows, or null
+     * @return the offsets and the targets
+     * @throws IllegalArgumentException if an index is not less than n
+     */
+    int[][] group(int n, ForkJoinPool pool) {
+        int[] counts = new int[n + 1];
+        for (int i = 0; i < 2 * size; i += 2) {
+            int a = pairs[i], b = pairs[i + 1];
+            if (a >= n || b >= n) {
+                throw new IllegalArgumentException("No such animal: " + Math.max(a, b));
+            }
+            if (a == b) continue;
+            counts[a + 1]++;
+            counts[b + 1]++;
+        }
+        for (int id = 0; id < n; id++) counts[id + 1] += counts[id];
+        int[] targets = new int[counts[n]];
+        int[] next = Arrays.copyOf(counts, n);
+        for (int i = 0; i < 2 * size; i += 2) {
+            int a = pairs[i], b = pairs[i + 1];
+            if (a == b) continue;
+            targets[next[a]++] = b;
+            targets[next[b]++] = a;
+        }
+        // sort every row and move its distinct friends to the front,
+        // then pack the rows
+        int[] distinct = next;
+        if (pool == null) {
+            for (int id = 0; id < n; id++) {
+                distinct[id] = sortDistinct(targets, counts[id], counts[id + 1]);
+            }
+        } else {
+            int tasks = (n + ANIMALS_PER_TASK - 1) / ANIMALS_PER_TASK;
+            pool.invoke(new ChunkTask(0, tasks, t -> {
+                for (int id = t * ANIMALS_PER_TASK,
+                         end = Math.min(n, id + ANIMALS_PER_TASK); id < end; id++) {
+                    distinct[id] = sortDistinct(targets, counts[id], counts[id + 1]);
+                }
+            }));
+        }
+        int[] offsets = new int[n + 1];
+        int k = 0;
+        for (int id = 0; id < n; id++) {
+            offsets[id] = k;
+            System.arraycopy(targets, counts[id], targets, k, distinct[id]);
+            k += distinct[id];
+        }
+        offsets[n] = k;
+        return new int[][] { offsets, targets };
+    }
+
+    /**
+     * Sorts a range and moves its distinct values to the front.
+     *
+     * @return the number of distinct values
+     */
+    private static int sortDistinct(int[] a, int from, int to) {
+        if (from == to) return 0;
+        Arrays.sort(a, from, to);
+        int k = from + 1;
+        for (int i = from + 1; i < to; i++) {
+            if (a[i] != a[k - 1]) a[k++] = a[i];
+        }
+        return k - from;
+    }
+}
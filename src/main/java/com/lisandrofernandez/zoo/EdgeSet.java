@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+
+/**
+ * The set of friendships of a graph as a single open-addressing hash
+ * table of {@code long} keys, the lower id of both animals in the high
+ * half and the higher id in the low half. Checking a friendship probes
+ * a single array, usually a single cache line, instead of searching
+ * the array of friends of one of the animals.
+ *
+ * <p>
+ * The table uses linear probing with a load factor of at most one half,
+ * and removals shift the following keys back instead of leaving
+ * tombstones, so probe sequences never grow with the removals.
+ *
+ * <p>
+ * Optionally, a blocked Bloom filter with a single 64-bit word per key
+ * answers most checks of animals which are not friends without touching
+ * the table, which is eight times larger. A Bloom filter cannot forget
+ * keys, so the removed friendships are counted and the filter is built
+ * again once they outnumber the half of the friendships.
+ *
+ * <p>
+ * Several threads can check friendships at once as long as no thread
+ * modifies the set.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class EdgeSet {
+    private static final long EMPTY = -1L; // ids are never negative
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int size;
+
+    private long[] bloom;
+    private int removedSinceBloom;
+
+    /**
+     * Constructs an empty set with room for the given number of
+     * friendships.
+     */
+    EdgeSet(int expectedFriendships, boolean bloomFilter) {
+        keys = new long[tableSize(expectedFriendships)];
+        Arrays.fill(keys, EMPTY);
+        if (bloomFilter) bloom = new long[bloomSize(keys.length)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean hasBloomFilter() {
+        return bloom != null;
+    }
+
+    /**
+     * Returns {@code true} if two animals are friends.
+     */
+    boolean contains(int a, int b) {
+        long key = key(a, b);
+        long hash = mix(key);
+        if (bloom != null) {
+            long bits = bloomBits(hash);
+            if ((bloom[bloomIndex(hash)] & bits) != bits) return false;
+        }
+        int mask = keys.length - 1;
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return true;
+            if (k == EMPTY) return false;
+        }
+    }
+
+    /**
+     * Adds the friendship of two animals.
+     *
+     * @return {@code true} if it was not in the set
+     */
+    boolean add(int a, int b) {
+        long key = key(a, b);
+        long hash = mix(key);
+        int mask = keys.length - 1;
+        int i = (int) hash & mask;
+        for (long k; (k = keys[i]) != EMPTY; i = (i + 1) & mask) {
+            if (k == key) return false;
+        }
+        keys[i] = key;
+        if (bloom != null) bloom[bloomIndex(hash)] |= bloomBits(hash);
+        if (++size > keys.length >> 1) resize(keys.length << 1);
+        return true;
+    }
+
+    /**
+     * Removes the friendship of two animals.
+     *
+     * @return {@code true} if it was in the set
+     */
+    boolean remove(int a, int b) {
+        long key = key(a, b);
+        int mask = keys.length - 1;
+        int i = (int) mix(key) & mask;
+        for (long k; (k = keys[i]) != key; i = (i + 1) & mask) {
+            if (k == EMPTY) return false;
+        }
+        // shift back the following keys which probed past the hole
+        for (int hole = i, j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            long k = keys[j];
+            if (k == EMPTY) {
+                keys[hole] = EMPTY;
+                break;
+            }
+            int home = (int) mix(k) & mask;
+            // move k if its home is not in (hole, j], cyclically
+            if (hole <= j ? home <= hole || home > j : home <= hole && home > j) {
+                keys[hole] = k;
+                hole = j;
+            }
+        }
+        size--;
+        if (bloom != null && ++removedSinceBloom > size >> 1) rebuildBloom();
+        return true;
+    }
+
+    private void resize(int capacity) {
+        long[] old = keys;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (long key : old) {
+            if (key == EMPTY) continue;
+            int i = (int) mix(key) & mask;
+            while (keys[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = key;
+        }
+        if (bloom != null) {
+            bloom = new long[bloomSize(capacity)];
+            rebuildBloom();
+        }
+    }
+
+    private void rebuildBloom() {
+        Arrays.fill(bloom, 0);
+        for (long key : keys) {
+            if (key == EMPTY) continue;
+            long hash = mix(key);
+            bloom[bloomIndex(hash)] |= bloomBits(hash);
+        }
+        removedSinceBloom = 0;
+    }
+
+    /**
+     * Returns the index of the word of the Bloom filter of a key, from
+     * the high bits of its hash, which the table does not use.
+     */
+    private int bloomIndex(long hash) {
+        return (int) (hash >>> 40) & (bloom.length - 1);
+    }
+
+    /**
+     * Returns the three bits of a key in its word of the Bloom filter.
+     */
+    private static long bloomBits(long hash) {
+        return 1L << (hash >>> 22) | 1L << (hash >>> 28) | 1L << (hash >>> 34);
+    }
+
+    private static int tableSize(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity >> 1 < expected) capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Returns the number of words of the Bloom filter of a table: about
+     * 16 bits per key when the table is full.
+     */
+    private static int bloomSize(int tableSize) {
+        return Math.max(1, tableSize >> 3);
+    }
+
+    private static long key(int a, int b) {
+        return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, so the ids of the animals, which are
+     * dense, spread over the table.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
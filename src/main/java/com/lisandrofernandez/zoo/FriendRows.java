@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+/**
+ * The storage of the friends of the animals of a {@link FriendshipGraph}:
+ * a sorted row of friend ids per animal id.
+ *
+ * <p>
+ * Implementations are not thread-safe, but the methods modifying the
+ * row of an animal may be called by several threads at once for
+ * different animals, as long as no thread reads those rows meanwhile.
+ *
+ * @author Lisandro Fernandez
+ */
+
+abstract class FriendRows {
+
+    /**
+     * Makes room for the rows of the given number of animals.
+     */
+    abstract void ensureCapacity(int capacity);
+
+    /**
+     * Returns the number of friends of an animal.
+     */
+    abstract int degree(int id);
+
+    /**
+     * Returns the friend of an animal at the given index of its row.
+     */
+    abstract int friend(int id, int index);
+
+    /**
+     * Searches a friend in the row of an animal.
+     *
+     * @return the index of the friend as in
+     *         {@link java.util.Arrays#binarySearch(int[], int, int, int)}
+     */
+    abstract int indexOf(int id, int friend);
+
+    /**
+     * Returns the sorted ids of the friends of an animal in the first
+     * {@code degree(id)} elements. The array may be shared and must not
+     * be modified.
+     */
+    abstract int[] friendIds(int id);
+
+    /**
+     * Adds a friend to the row of an animal.
+     *
+     * @return {@code true} if it was not a friend
+     */
+    abstract boolean insert(int id, int friend);
+
+    /**
+     * Removes a friend from the row of an animal.
+     *
+     * @return {@code true} if it was a friend
+     */
+    abstract boolean remove(int id, int friend);
+
+    /**
+     * Replaces the row of an animal with the given sorted ids, which
+     * must not be modified afterwards.
+     */
+    abstract void set(int id, int[] row, int degree);
+
+    /**
+     * Empties the row of an animal.
+     */
+    abstract void clear(int id);
+
+    /**
+     * Moves the row of an animal to an empty id, leaving its old id
+     * empty.
+     */
+    abstract void move(int from, int to);
+
+    /**
+     * Drops the marked friends of an animal.
+     */
+    abstract void dropMarked(int id, boolean[] marks);
+
+    /**
+     * Renumbers the friends of an animal from {@code newSize} up to the
+     * ids given by {@code newIds[friend - newSize]}, keeping the row
+     * sorted.
+     */
+    abstract void renumber(int id, int[] newIds, int newSize);
+
+    /**
+     * Merges the sorted friends {@code targets[offsets[id]..offsets[id + 1])}
+     * into the row of an animal, complementing those which were not
+     * friends.
+     */
+    abstract void merge(int id, int[] offsets, int[] targets);
+
+    /**
+     * Drops the sorted friends {@code targets[offsets[id]..offsets[id + 1])}
+     * from the row of an animal, complementing those which were friends.
+     */
+    abstract void drop(int id, int[] offsets, int[] targets);
+
+    /**
+     * Returns the rows of the first {@code size} animals for a snapshot,
+     * which never changes afterwards.
+     */
+    abstract int[][] snapshot(int size);
+
+    /**
+     * Returns a copy of the degrees of the first {@code size} animals.
+     */
+    abstract int[] degrees(int size);
+}
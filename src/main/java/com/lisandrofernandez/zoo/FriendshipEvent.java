@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+/**
+ * A friendship lost or established by an animal during a day in a
+ * {@link Zoo}.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public class FriendshipEvent {
+
+    /**
+     * The type of a friendship event.
+     */
+    public enum Type {
+        LOST("has lost friendship with"),
+        ESTABLISHED("has established friendship with");
+
+        private final String verb;
+
+        private Type(String verb) {
+            this.verb = verb;
+        }
+
+        /**
+         * Returns the text between the names of the animals when the
+         * event is printed, e.g. "has lost friendship with".
+         *
+         * @return the text describing the event
+         */
+        public String getVerb() {
+            return verb;
+        }
+    }
+
+    private final Type type;
+    private final ReadOnlyAnimal animal;
+    private final ReadOnlyAnimal friend;
+
+    /**
+     * Constructs a {@code FriendshipEvent}.
+     *
+     * @param  type the type of the event
+     * @param  animal the animal which lost or established the friendship
+     * @param  friend the other animal of the friendship
+     * @throws NullPointerException if any argument is null
+     */
+    public FriendshipEvent(Type type, ReadOnlyAnimal animal,
+                           ReadOnlyAnimal friend) {
+        if (type == null || animal == null || friend == null) {
+            throw new NullPointerException();
+        }
+        this.type = type;
+        this.animal = animal;
+        this.friend = friend;
+    }
+
+    /**
+     * Returns the type of the event.
+     *
+     * @return the type of the event
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the animal which lost or established the friendship.
+     *
+     * @return the animal which lost or established the friendship
+     */
+    public ReadOnlyAnimal getAnimal() {
+        return animal;
+    }
+
+    /**
+     * Returns the other animal of the friendship.
+     *
+     * @return the other animal of the friendship
+     */
+    public ReadOnlyAnimal getFriend() {
+        return friend;
+    }
+
+    /**
+     * Returns the event as printed to the console, e.g. "Dog one has
+     * lost friendship with Chicken one".
+     */
+    @Override
+    public String toString() {
+        return animal.getName() + " " + type.getVerb() + " " + friend.getName();
+    }
+}
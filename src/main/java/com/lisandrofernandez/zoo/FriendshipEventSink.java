@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+/**
+ * A consumer of the friendship changes made during the days of a
+ * {@link Zoo}.
+ *
+ * <p>
+ * The zoo reports every change through {@link #friendshipLost} or
+ * {@link #friendshipEstablished}, which by default create a
+ * {@link FriendshipEvent} and pass it to {@link #accept}. A sink which
+ * does not need the event objects can override those methods instead,
+ * so no event is allocated. At the end of every day the zoo calls
+ * {@link #flush()}.
+ *
+ * @author Lisandro Fernandez
+ */
+
+@FunctionalInterface
+public interface FriendshipEventSink {
+
+    /**
+     * Consumes an event.
+     *
+     * @param event the event
+     */
+    void accept(FriendshipEvent event);
+
+    /**
+     * Reports that an animal has lost friendship with another.
+     *
+     * @param animal the animal which lost the friendship
+     * @param friend the animal it was friend of
+     */
+    default void friendshipLost(ReadOnlyAnimal animal, ReadOnlyAnimal friend) {
+        accept(new FriendshipEvent(FriendshipEvent.Type.LOST, animal, friend));
+    }
+
+    /**
+     * Reports that an animal has established friendship with another.
+     *
+     * @param animal the animal which established the friendship
+     * @param friend the animal it is now friend of
+     */
+    default void friendshipEstablished(ReadOnlyAnimal animal,
+                                       ReadOnlyAnimal friend) {
+        accept(new FriendshipEvent(FriendshipEvent.Type.ESTABLISHED,
+                                   animal, friend));
+    }
+
+    /**
+     * Writes out any buffered event. Called at the end of every day.
+     */
+    default void flush() { }
+
+    /**
+     * Returns a sink which ignores every event.
+     *
+     * @return a sink which ignores every event
+     */
+    static FriendshipEventSink none() {
+        return NoEventSink.INSTANCE;
+    }
+}
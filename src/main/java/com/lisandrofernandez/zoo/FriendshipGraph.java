@@ -0,0 +1,619 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+/**
+ * The friendship graph behind a {@link Zoo}.
+ *
+ * <p>
+ * Every animal is interned to a dense {@code int} id in
+ * {@code [0, size())} and the friends of an animal are stored as a
+ * sorted row of ids, in {@code int[]} arrays on the heap or in memory
+ * outside the heap (see {@link FriendshipStorage}). An id stays valid
+ * until an animal is removed: the animal with the highest id then takes
+ * the id of the removed one, so the ids are always dense.
+ *
+ * <p>
+ * A snapshot of the graph never changes and can be read by other
+ * threads while the graph is being modified: the map of ids is copied
+ * the first time it is modified after the snapshot, and the rows are
+ * shared copy-on-write or copied, depending on the storage.
+ *
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Lisandro Fernandez
+ */
+
+class FriendshipGraph {
+    private static final int MIN_CAPACITY = 4;
+
+    /**
+     * The maximum number of candidates drawn by {@link #randomNotFriend}
+     * before it falls back to an exact walk over the friends.
+     */
+    private static final int MAX_NOT_FRIEND_ATTEMPTS = 32;
+
+    /**
+     * The number of ids scanned by a task of a bulk update.
+     */
+    private static final int PARALLEL_CHUNK = 1024;
+
+    private HashMap<ReadOnlyAnimal, Integer> ids;
+    private ReadOnlyAnimal[] animals;
+    private final FriendRows rows;
+    private int size;
+    private int modCount;
+    private boolean idsShared;
+
+    /**
+     * The friendships hashed, or null if friendships are only looked
+     * for in the arrays of friends.
+     */
+    private EdgeSet edges;
+
+    /**
+     * Constructs an empty graph with room for the given number of
+     * animals.
+     *
+     * @param  expectedAnimals the number of animals expected
+     * @throws IllegalArgumentException if the number is negative
+     */
+    FriendshipGraph(int expectedAnimals) {
+        this(expectedAnimals, FriendshipStorage.heap());
+    }
+
+    /**
+     * Constructs an empty graph with room for the given number of
+     * animals, keeping the friends in the given storage.
+     *
+     * @param  expectedAnimals the number of animals expected
+     * @param  storage the storage of the friends
+     * @throws IllegalArgumentException if the number is negative
+     */
+    FriendshipGraph(int expectedAnimals, FriendshipStorage storage) {
+        if (expectedAnimals < 0) {
+            throw new IllegalArgumentException("Illegal capacity: " +
+                                               expectedAnimals);
+        }
+        ids = new HashMap<>(Math.max(16, (int) (expectedAnimals / .75f) + 1));
+        animals = new ReadOnlyAnimal[expectedAnimals];
+        rows = storage.newRows(expectedAnimals);
+    }
+
+    /**
+     * Returns the number of animals.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of times the graph has been modified, to let
+     * the views of a zoo detect concurrent modifications.
+     */
+    int modCount() {
+        return modCount;
+    }
+
+    /**
+     * Returns the id of the given animal, or -1 if it is not in the
+     * graph.
+     */
+    int idOf(Object animal) {
+        Integer id = ids.get(animal);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the animal with the given id.
+     */
+    ReadOnlyAnimal animal(int id) {
+        return animals[id];
+    }
+
+    /**
+     * Adds an animal if it is not present.
+     *
+     * @return the id of the added animal, or -1 if it was present
+     */
+    int add(ReadOnlyAnimal animal) {
+        if (idsShared) {
+            if (ids.containsKey(animal)) return -1;
+            unshareIds();
+        }
+        Integer previous = ids.putIfAbsent(animal, size);
+        if (previous != null) return -1;
+        if (size == animals.length) {
+            int capacity = Math.max(MIN_CAPACITY, size + (size >> 1));
+            animals = Arrays.copyOf(animals, capacity);
+            rows.ensureCapacity(capacity);
+        }
+        modCount++;
+        int id = size++;
+        animals[id] = animal;
+        rows.clear(id);
+        return id;
+    }
+
+    /**
+     * Sets the friends of an animal without touching the friends of its
+     * friends, to load a graph without inserting every friendship
+     * twice. The ids must be sorted and the caller must set the other
+     * halves of the friendships, before hashing them.
+     *
+     * @param id     the id of the animal
+     * @param row    the sorted ids of the friends, which must not be
+     *               modified afterwards
+     * @param degree the number of friends in the row
+     */
+    void setFriends(int id, int[] row, int degree) {
+        modCount++;
+        rows.set(id, row, degree);
+    }
+
+    /**
+     * Removes an animal and all its friendships. The animal with the
+     * highest id takes the id of the removed one.
+     *
+     * @return the old id of the removed animal, or -1 if it was not
+     *         present
+     */
+    int remove(Object animal) {
+        if (idsShared) {
+            if (!ids.containsKey(animal)) return -1;
+            unshareIds();
+        }
+        Integer boxed = ids.remove(animal);
+        if (boxed == null) return -1;
+        modCount++;
+        int id = boxed;
+        for (int i = 0, n = rows.degree(id); i < n; i++) {
+            int f = rows.friend(id, i);
+            rows.remove(f, id);
+            if (edges != null) edges.remove(id, f);
+        }
+        rows.clear(id);
+        int last = --size;
+        if (id != last) {
+            // renumber the last animal as id
+            for (int i = 0, n = rows.degree(last); i < n; i++) {
+                int f = rows.friend(last, i);
+                rows.remove(f, last);
+                rows.insert(f, id);
+                if (edges != null) {
+                    edges.remove(last, f);
+                    edges.add(id, f);
+                }
+            }
+            animals[id] = animals[last];
+            rows.move(last, id);
+            ids.put(animals[id], id);
+        }
+        animals[last] = null;
+        return id;
+    }
+
+    /**
+     * Removes the marked animals and all their friendships at once. The
+     * animals with the highest ids take the ids left free, exactly as if
+     * the marked animals were removed one by one in decreasing id order.
+     *
+     * <p>
+     * Every array of friends is updated at most twice, once to drop the
+     * removed friends and once to renumber the friends that moved,
+     * instead of once per removed friend. The arrays of friends are
+     * updated by the threads of the pool if given; they are independent
+     * since the graph only reads the marks and writes the array it owns.
+     *
+     * @param  removed the marks of the ids to remove, at least
+     *         {@code size()} long
+     * @param  count the number of marked ids
+     * @param  pool the pool updating the arrays of friends, or null to
+     *         update them in this thread
+     */
+    void removeAll(boolean[] removed, int count, ForkJoinPool pool) {
+        if (count == 0) return;
+        if (idsShared) unshareIds();
+        modCount++;
+        int n = size;
+        int newSize = n - count;
+
+        // the friends left by the removed animals drop them
+        boolean[] touched = new boolean[n];
+        for (int id = 0; id < n; id++) {
+            if (!removed[id]) continue;
+            ids.remove(animals[id]);
+            for (int i = 0, d = rows.degree(id); i < d; i++) {
+                int f = rows.friend(id, i);
+                if (!removed[f]) touched[f] = true;
+                if (edges != null) edges.remove(id, f);
+            }
+            rows.clear(id);
+        }
+        forEachMarked(touched, n, pool, id -> rows.dropMarked(id, removed));
+
+        // replay the swaps of removing in decreasing id order; an animal
+        // may move more than once, but only the ids from newSize up are
+        // ever the last one, so only their occupants are tracked
+        int[] newIds = new int[count];
+        int[] movers = new int[count];
+        int[] occupants = new int[count];
+        for (int i = 0; i < count; i++) occupants[i] = newSize + i;
+        int moves = 0;
+        for (int hole = n - 1, last = n - 1; hole >= 0; hole--) {
+            if (!removed[hole]) continue;
+            if (hole != last) {
+                int moved = occupants[last - newSize];
+                if (hole >= newSize) {
+                    occupants[hole - newSize] = moved;
+                } else {
+                    newIds[moved - newSize] = hole;
+                    movers[moves++] = moved;
+                }
+            }
+            last--;
+        }
+
+        // the friends of the moved animals renumber them
+        Arrays.fill(touched, false);
+        for (int k = 0; k < moves; k++) {
+            int moved = movers[k];
+            for (int i = 0, d = rows.degree(moved); i < d; i++) {
+                int f = rows.friend(moved, i);
+                touched[f] = true;
+                if (edges != null) edges.remove(moved, f);
+            }
+        }
+        forEachMarked(touched, n, pool, id -> rows.renumber(id, newIds, newSize));
+
+        for (int k = 0; k < moves; k++) {
+            int moved = movers[k];
+            int id = newIds[moved - newSize];
+            animals[id] = animals[moved];
+            rows.move(moved, id);
+            ids.put(animals[id], id);
+        }
+        if (edges != null) {
+            // after every renumbering, so the friends have their new ids
+            for (int k = 0; k < moves; k++) {
+                int id = newIds[movers[k] - newSize];
+                for (int i = 0, d = rows.degree(id); i < d; i++) {
+                    edges.add(id, rows.friend(id, i));
+                }
+            }
+        }
+        Arrays.fill(animals, newSize, n, null);
+        size = newSize;
+    }
+
+    /**
+     * Makes the friendships grouped by animal in compressed rows: the
+     * new friends of animal i are {@code targets[offsets[i]..offsets[i + 1])},
+     * sorted, distinct and other than i, and every friendship is in the
+     * rows of both animals. Each array of friends is replaced once by
+     * the merge of the old friends and the new ones, by the threads of
+     * the pool if given.
+     *
+     * <p>
+     * The friends which were not friends already are complemented in
+     * the targets, so the caller can tell the friendships made.
+     *
+     * @return the number of friendships made
+     */
+    long linkAll(int[] offsets, int[] targets, ForkJoinPool pool) {
+        modCount++;
+        forEachMarked(null, size, pool, id -> rows.merge(id, offsets, targets));
+        if (edges != null) hashComplemented(offsets, targets, true);
+        return countComplemented(offsets[size], targets) / 2;
+    }
+
+    /**
+     * Breaks the friendships grouped by animal as in
+     * {@link #linkAll(int[], int[], ForkJoinPool)}. The friends which
+     * were friends are complemented in the targets.
+     *
+     * @return the number of friendships broken
+     */
+    long unlinkAll(int[] offsets, int[] targets, ForkJoinPool pool) {
+        modCount++;
+        forEachMarked(null, size, pool, id -> rows.drop(id, offsets, targets));
+        if (edges != null) hashComplemented(offsets, targets, false);
+        return countComplemented(offsets[size], targets) / 2;
+    }
+
+    /**
+     * Adds or removes the hashed friendships complemented in the rows.
+     */
+    private void hashComplemented(int[] offsets, int[] targets, boolean add) {
+        for (int id = 0; id < size; id++) {
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                int f = ~targets[i];
+                if (f <= id) continue; // not changed, or seen from f
+                if (add) {
+                    edges.add(id, f);
+                } else {
+                    edges.remove(id, f);
+                }
+            }
+        }
+    }
+
+    private static long countComplemented(int length, int[] targets) {
+        long count = 0;
+        for (int i = 0; i < length; i++) if (targets[i] < 0) count++;
+        return count;
+    }
+
+    /**
+     * Runs an action for every marked id in {@code [0, n)}, or every id
+     * if there are no marks, in chunks run by the threads of the pool if
+     * given.
+     */
+    private static void forEachMarked(boolean[] marks, int n, ForkJoinPool pool,
+                                      IntConsumer action) {
+        if (pool == null) {
+            for (int id = 0; id < n; id++) {
+                if (marks == null || marks[id]) action.accept(id);
+            }
+            return;
+        }
+        int chunks = (n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        pool.invoke(new ChunkTask(0, chunks, c -> {
+            for (int id = c * PARALLEL_CHUNK,
+                     end = Math.min(n, id + PARALLEL_CHUNK); id < end; id++) {
+                if (marks == null || marks[id]) action.accept(id);
+            }
+        }));
+    }
+
+    /**
+     * Takes a snapshot of the graph. On the heap the arrays of friends
+     * are shared with the snapshot, so this only copies one reference
+     * and a couple of values per animal.
+     *
+     * @param  day the day of the snapshot
+     * @return a snapshot of the graph
+     */
+    ZooSnapshot snapshot(long day) {
+        idsShared = true;
+        return new ZooSnapshot(day, Arrays.copyOf(animals, size),
+                               rows.snapshot(size), rows.degrees(size), ids);
+    }
+
+    private void unshareIds() {
+        ids = new HashMap<>(ids);
+        idsShared = false;
+    }
+
+    /**
+     * Returns the number of friends of the given animal.
+     */
+    int degree(int id) {
+        return rows.degree(id);
+    }
+
+    /**
+     * Returns the sorted ids of the friends of the given animal in the
+     * first {@code degree(id)} elements. The array may be shared and
+     * must not be modified.
+     */
+    int[] friendIds(int id) {
+        return rows.friendIds(id);
+    }
+
+    /**
+     * Returns the id of a friend of the given animal. Friends are
+     * sorted by id, so index 0 is the friend with the lowest id.
+     */
+    int friend(int id, int index) {
+        return rows.friend(id, index);
+    }
+
+    /**
+     * Returns {@code true} if the given animals are friends.
+     */
+    boolean areFriends(int a, int b) {
+        if (edges != null) return edges.contains(a, b);
+        return rows.indexOf(a, b) >= 0;
+    }
+
+    /**
+     * Makes friends two different animals.
+     *
+     * @return {@code true} if they were not friends
+     */
+    boolean link(int a, int b) {
+        if (!insertIntoRow(a, b)) return false;
+        insertIntoRow(b, a);
+        if (edges != null) edges.add(a, b);
+        return true;
+    }
+
+    /**
+     * Breaks the friendship between two animals.
+     *
+     * @return {@code true} if they were friends
+     */
+    boolean unlink(int a, int b) {
+        if (!removeFromRow(a, b)) return false;
+        removeFromRow(b, a);
+        if (edges != null) edges.remove(a, b);
+        return true;
+    }
+
+    /**
+     * Starts or stops hashing every friendship in a single set, so that
+     * {@link #areFriends(int, int)} is a probe of a hash table instead
+     * of a binary search. The set is built from the arrays of friends
+     * when hashing starts and kept in sync by every modification.
+     *
+     * @param hashing {@code true} to hash the friendships
+     * @param bloomFilter {@code true} to put a Bloom filter in front of
+     *        the set, ignored if not hashing
+     */
+    void setHashingFriendships(boolean hashing, boolean bloomFilter) {
+        if (!hashing) {
+            edges = null;
+            return;
+        }
+        if (edges != null && edges.hasBloomFilter() == bloomFilter) return;
+        long twice = 0;
+        for (int id = 0; id < size; id++) twice += rows.degree(id);
+        edges = new EdgeSet((int) Math.min(Integer.MAX_VALUE >> 2, twice / 2),
+                            bloomFilter);
+        for (int id = 0; id < size; id++) {
+            // each friendship once, from its lowest id
+            int i = rows.indexOf(id, id);
+            for (i = -i - 1; i < rows.degree(id); i++) edges.add(id, rows.friend(id, i));
+        }
+    }
+
+    /**
+     * Returns {@code true} if the friendships are hashed.
+     */
+    boolean isHashingFriendships() {
+        return edges != null;
+    }
+
+    /**
+     * Hashes again the friendship of two animals after it was changed
+     * through {@link #addHalf(int, int)} and {@link #removeHalf(int, int)},
+     * which cannot update the set since they run in several threads.
+     */
+    void rehash(int a, int b) {
+        if (edges == null || a < 0 || b < 0) return;
+        if (rows.indexOf(a, b) >= 0) {
+            edges.add(a, b);
+        } else {
+            edges.remove(a, b);
+        }
+    }
+
+    /**
+     * Returns the id of an animal chosen uniformly at random among those
+     * which are neither the given animal nor one of its friends, or -1
+     * if there is no such animal. The friend {@code lost}, if not -1, is
+     * treated as a non-friend, as if the friendship was already broken.
+     *
+     * <p>
+     * Candidates are drawn from all the animals and rejected while they
+     * are the animal itself or a friend. When at least half of the zoo
+     * is rejected, or too many candidates in a row were rejected, the
+     * non-friends are counted exactly and one of them is picked by its
+     * rank. Both ways give a uniformly random non-friend, so a day is
+     * expected O(N) instead of O(N^2).
+     *
+     * <p>
+     * This method only reads the graph, so several threads can call it
+     * at once as long as no thread modifies the graph.
+     *
+     * @param  id the id of the animal looking for a new friend
+     * @param  lost the id of a friend to treat as a non-friend, or -1
+     * @param  random the source of randomness
+     * @return the id of a random non-friend or -1 if there is none
+     */
+    int randomNotFriend(int id, int lost, RandomSource random) {
+        int n = size;
+        int degree = rows.degree(id);
+        int notFriends = n - 1 - degree + (lost < 0 ? 0 : 1);
+        if (notFriends <= 0) return -1;
+        if (notFriends >= n / 2) {
+            for (int i = 0; i < MAX_NOT_FRIEND_ATTEMPTS; i++) {
+                int candidate = random.nextInt(n);
+                if (candidate == lost ||
+                    candidate != id && !areFriends(id, candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        int rank = random.nextInt(notFriends);
+        if (lost >= 0 && rank == notFriends - 1) return lost;
+        // the friends are sorted, so the non-friends are the gaps
+        // between them (skipping the animal itself)
+        int candidate = 0;
+        for (int i = 0; i <= degree; i++) {
+            int next = i < degree ? rows.friend(id, i) : n;
+            if (candidate <= id && id < next) {
+                if (rank < id - candidate) return candidate + rank;
+                rank -= id - candidate;
+                candidate = id + 1;
+            }
+            int gap = next - candidate;
+            if (rank < gap) return candidate + rank;
+            rank -= gap;
+            candidate = next + 1;
+        }
+        throw new AssertionError("friends are not in the graph");
+    }
+
+    /**
+     * Adds a friend to a single animal, leaving the friend untouched.
+     * The caller must add the animal to the friend too, to keep the
+     * friendship symmetric, and then {@link #rehash(int, int)} it and
+     * call {@link #modified()}.
+     *
+     * @return {@code true} if it was not a friend
+     */
+    boolean addHalf(int id, int friend) {
+        return rows.insert(id, friend);
+    }
+
+    /**
+     * Removes a friend from a single animal, leaving the friend
+     * untouched. The caller must remove the animal from the friend too,
+     * to keep the friendship symmetric, and then {@link #rehash(int, int)}
+     * it and call {@link #modified()}.
+     *
+     * @return {@code true} if it was a friend
+     */
+    boolean removeHalf(int id, int friend) {
+        return rows.remove(id, friend);
+    }
+
+    /**
+     * Counts a modification made through {@link #addHalf(int, int)} and
+     * {@link #removeHalf(int, int)}, which do not count it since they
+     * run in several threads. Called once by the thread which waited
+     * for them.
+     */
+    void modified() {
+        modCount++;
+    }
+
+    private boolean insertIntoRow(int id, int friend) {
+        if (!rows.insert(id, friend)) return false;
+        modCount++;
+        return true;
+    }
+
+    private boolean removeFromRow(int id, int friend) {
+        if (!rows.remove(id, friend)) return false;
+        modCount++;
+        return true;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The implementations of the {@link FriendshipPolicy} factories.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class FriendshipPolicies {
+
+    static final FriendshipPolicy UNIFORM = new FriendshipPolicy() {
+        @Override
+        public Object group(ReadOnlyAnimal animal) {
+            return null;
+        }
+
+        @Override
+        public double affinity(Object group, Object otherGroup) {
+            return 1;
+        }
+    };
+
+    private FriendshipPolicies() {
+    }
+
+    static FriendshipPolicy capped(FriendshipPolicy policy, int maxFriends) {
+        if (maxFriends < 0) {
+            throw new IllegalArgumentException("Illegal maximum number of friends: " +
+                                               maxFriends);
+        }
+        return new FriendshipPolicy() {
+            @Override
+            public Object group(ReadOnlyAnimal animal) {
+                return policy.group(animal);
+            }
+
+            @Override
+            public double affinity(Object group, Object otherGroup) {
+                return policy.affinity(group, otherGroup);
+            }
+
+            @Override
+            public int maxFriends(ReadOnlyAnimal animal) {
+                return Math.min(maxFriends, policy.maxFriends(animal));
+            }
+        };
+    }
+
+    static FriendshipPolicy combined(FriendshipPolicy first,
+                                     FriendshipPolicy second) {
+        if (second == null) throw new NullPointerException();
+        return new FriendshipPolicy() {
+            @Override
+            public Object group(ReadOnlyAnimal animal) {
+                return Arrays.asList(first.group(animal), second.group(animal));
+            }
+
+            @Override
+            public double affinity(Object group, Object otherGroup) {
+                List<?> a = (List<?>) group, b = (List<?>) otherGroup;
+                return first.affinity(a.get(0), b.get(0)) *
+                       second.affinity(a.get(1), b.get(1));
+            }
+
+            @Override
+            public int maxFriends(ReadOnlyAnimal animal) {
+                return Math.min(first.maxFriends(animal), second.maxFriends(animal));
+            }
+        };
+    }
+
+    static double checkAffinity(double affinity) {
+        if (!(affinity >= 0) || Double.isInfinite(affinity)) {
+            throw new IllegalArgumentException("Illegal affinity: " + affinity);
+        }
+        return affinity;
+    }
+
+    static final class BySpecies implements FriendshipPolicy {
+        private final double sameSpeciesAffinity;
+
+        BySpecies(double sameSpeciesAffinity) {
+            this.sameSpeciesAffinity = checkAffinity(sameSpeciesAffinity);
+        }
+
+        @Override
+        public Object group(ReadOnlyAnimal animal) {
+            // the immutable animals are of the species they extend
+            if (animal instanceof ReadOnlyDog) {
+                DogType type = ((ReadOnlyDog) animal).getType();
+                return type == null ? Dog.class : type;
+            }
+            if (animal instanceof ReadOnlyChicken) return Chicken.class;
+            if (animal instanceof ReadOnlyParrot) return Parrot.class;
+            if (animal instanceof ReadOnlyBird) return Bird.class;
+            return Animal.class;
+        }
+
+        @Override
+        public double affinity(Object group, Object otherGroup) {
+            return group == otherGroup ? sameSpeciesAffinity : 1;
+        }
+    }
+
+    static final class ByFavouriteFood implements FriendshipPolicy {
+        private final double sameFoodAffinity;
+
+        ByFavouriteFood(double sameFoodAffinity) {
+            this.sameFoodAffinity = checkAffinity(sameFoodAffinity);
+        }
+
+        @Override
+        public Object group(ReadOnlyAnimal animal) {
+            return animal.getFavouriteFood();
+        }
+
+        @Override
+        public double affinity(Object group, Object otherGroup) {
+            return group != null && group.equals(otherGroup) ? sameFoodAffinity : 1;
+        }
+    }
+}
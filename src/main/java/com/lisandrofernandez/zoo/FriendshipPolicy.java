@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+/**
+ * The rule by which the animals of a {@link Zoo} make friends during a
+ * day.
+ *
+ * <p>
+ * A policy splits the animals into groups, for instance by species or
+ * by favourite food. An animal makes friends with another with a chance
+ * proportional to the affinity of the group of the first animal for the
+ * group of the second one, among the animals which are not yet its
+ * friends. Since only the groups are weighted, a new friend is drawn in
+ * time logarithmic in the number of groups instead of weighing every
+ * animal of the zoo.
+ *
+ * <p>
+ * A policy can also limit the number of friends of an animal. An animal
+ * with that many friends makes no new friends during a day, and no
+ * other animal makes friends with it, but it still loses a friend every
+ * day. The friendships made with
+ * {@link Zoo#makeFriends(ReadOnlyAnimal, ReadOnlyAnimal)} are not limited.
+ *
+ * <p>
+ * The group and the maximum number of friends of an animal are read
+ * when the policy is set or the animal is added. If they change, the
+ * animal must be {@linkplain Zoo#reindexAnimal(ReadOnlyAnimal) reindexed}.
+ *
+ * @author Lisandro Fernandez
+ * @see    Zoo#setFriendshipPolicy(FriendshipPolicy)
+ */
+
+public interface FriendshipPolicy {
+
+    /**
+     * Returns the group of an animal. Groups are compared with
+     * {@code equals}, and may be null.
+     *
+     * @param  animal the animal
+     * @return the group of the animal
+     */
+    Object group(ReadOnlyAnimal animal);
+
+    /**
+     * Returns how much the animals of a group are drawn to the animals
+     * of another group, relative to other groups. An affinity of zero
+     * means they never make friends.
+     *
+     * @param  group the group of the animal looking for a friend
+     * @param  otherGroup the group of a possible new friend
+     * @return the affinity, non-negative and finite
+     */
+    double affinity(Object group, Object otherGroup);
+
+    /**
+     * Returns the maximum number of friends an animal may have after a
+     * day. The default implementation puts no limit.
+     *
+     * @param  animal the animal
+     * @return the maximum number of friends, non-negative
+     */
+    default int maxFriends(ReadOnlyAnimal animal) {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns a policy like this one where no animal has more than the
+     * given number of friends after a day.
+     *
+     * @param  maxFriends the maximum number of friends of every animal
+     * @return a policy limiting the number of friends
+     * @throws IllegalArgumentException if the number is negative
+     */
+    default FriendshipPolicy withMaxFriends(int maxFriends) {
+        return FriendshipPolicies.capped(this, maxFriends);
+    }
+
+    /**
+     * Returns a policy combining this one with another: the groups are
+     * the pairs of groups of both policies, the affinities are
+     * multiplied and the lowest maximum number of friends applies.
+     *
+     * @param  other the other policy
+     * @return the combined policy
+     * @throws NullPointerException if the other policy is null
+     */
+    default FriendshipPolicy and(FriendshipPolicy other) {
+        return FriendshipPolicies.combined(this, other);
+    }
+
+    /**
+     * Returns the policy of a zoo by default: every animal which is not
+     * a friend is equally likely to be the new friend, and the number of
+     * friends is not limited.
+     *
+     * @return the uniform policy
+     */
+    static FriendshipPolicy uniform() {
+        return FriendshipPolicies.UNIFORM;
+    }
+
+    /**
+     * Returns a policy where the animals prefer the animals of their own
+     * species. The species are animals, birds, parrots and chickens, and
+     * the dogs of every dog type. The affinity between the same species
+     * is the given one, and 1 between different species.
+     *
+     * @param  sameSpeciesAffinity the affinity of an animal for the
+     *         animals of its species
+     * @return a policy weighted by species
+     * @throws IllegalArgumentException if the affinity is negative or
+     *         not finite
+     */
+    static FriendshipPolicy bySpecies(double sameSpeciesAffinity) {
+        return new FriendshipPolicies.BySpecies(sameSpeciesAffinity);
+    }
+
+    /**
+     * Returns a policy where the animals prefer the animals with their
+     * favourite food. The affinity between animals with the same known
+     * favourite food is the given one, and 1 otherwise.
+     *
+     * @param  sameFoodAffinity the affinity of an animal for the animals
+     *         with its favourite food
+     * @return a policy weighted by favourite food
+     * @throws IllegalArgumentException if the affinity is negative or
+     *         not finite
+     */
+    static FriendshipPolicy byFavouriteFood(double sameFoodAffinity) {
+        return new FriendshipPolicies.ByFavouriteFood(sameFoodAffinity);
+    }
+}
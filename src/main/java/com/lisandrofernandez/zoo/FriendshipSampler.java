@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Draws the new friends of the animals of a graph according to a
+ * {@link FriendshipPolicy}.
+ *
+ * <p>
+ * The animals are kept in arrays by group, and every group has the
+ * cumulative weights of the groups it is drawn to: the affinity for a
+ * group times the number of animals in it. A new friend is drawn by
+ * picking a group with a binary search over those weights and then an
+ * animal of the group uniformly at random. Candidates which are the
+ * animal itself, a friend or an animal with too many friends are
+ * rejected; after too many candidates in a row are rejected, the
+ * eligible animals are weighed one by one. Both ways give the same
+ * distribution, as in {@link FriendshipGraph#randomNotFriend}.
+ *
+ * <p>
+ * Adding or removing an animal updates the arrays of its group in
+ * constant time and marks the weights stale; they are computed again,
+ * in time quadratic in the number of groups, by {@link #prepare()}
+ * before the next day. Removing several animals at once rebuilds the
+ * groups instead.
+ *
+ * <p>
+ * This class is not thread-safe, but once prepared several threads can
+ * draw new friends at once as long as no thread modifies the graph.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class FriendshipSampler {
+    private static final int[] EMPTY = {};
+
+    /**
+     * The maximum number of candidates drawn before weighing every
+     * animal.
+     */
+    private static final int MAX_ATTEMPTS = 32;
+
+    private final FriendshipGraph graph;
+    private final FriendshipPolicy policy;
+
+    private final HashMap<Object, Integer> groupIds = new HashMap<>();
+    private Object[] groups = new Object[0];
+    private int groupCount;
+    private int[][] members = new int[0][];
+    private int[] memberCounts = EMPTY;
+    private double[][] affinities = new double[0][];
+    private double[][] cumulative = new double[0][];
+
+    // by animal id
+    private int[] groupOf = EMPTY;
+    private int[] positions = EMPTY;
+    private int[] caps = EMPTY;
+    private int cappedAnimals;
+
+    private boolean stale;
+    private boolean rebuild;
+
+    /**
+     * Constructs a sampler of the animals of a graph.
+     *
+     * @throws IllegalArgumentException if the policy gives an illegal
+     *         affinity or maximum number of friends
+     */
+    FriendshipSampler(FriendshipGraph graph, FriendshipPolicy policy) {
+        this.graph = graph;
+        this.policy = policy;
+        rebuild();
+    }
+
+    /**
+     * Returns {@code true} if the number of friends of some animal is
+     * limited.
+     */
+    boolean hasCaps() {
+        if (rebuild) rebuild();
+        return cappedAnimals > 0;
+    }
+
+    /**
+     * Adds the animal with the given id, the highest one.
+     */
+    void added(int id) {
+        if (rebuild) return;
+        if (id >= groupOf.length) {
+            int capacity = Math.max(16, id + (id >> 1));
+            groupOf = Arrays.copyOf(groupOf, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            caps = Arrays.copyOf(caps, capacity);
+        }
+        attach(id);
+    }
+
+    /**
+     * Removes the animal which had the given id, after the graph gave
+     * that id to the animal which had the id {@code last}.
+     */
+    void removed(int id, int last) {
+        if (rebuild) return;
+        detach(id);
+        if (id != last) {
+            int g = groupOf[last], p = positions[last];
+            members[g][p] = id;
+            groupOf[id] = g;
+            positions[id] = p;
+            caps[id] = caps[last];
+        }
+    }
+
+    /**
+     * Reads again the group and maximum number of friends of an animal.
+     */
+    void update(int id) {
+        if (rebuild) return;
+        detach(id);
+        attach(id);
+    }
+
+    /**
+     * Marks the groups for rebuilding, after several animals were
+     * removed at once.
+     */
+    void invalidate() {
+        rebuild = true;
+    }
+
+    /**
+     * Computes again the stale weights. Must be called before drawing
+     * friends.
+     */
+    void prepare() {
+        if (rebuild) rebuild();
+        if (!stale) return;
+        if (cumulative.length < groupCount) {
+            cumulative = Arrays.copyOf(cumulative, affinities.length);
+        }
+        for (int g = 0; g < groupCount; g++) {
+            double[] row = cumulative[g];
+            if (row == null || row.length < groupCount) {
+                row = cumulative[g] = new double[affinities.length];
+            }
+            double sum = 0;
+            for (int h = 0; h < groupCount; h++) {
+                sum += affinities[g][h] * memberCounts[h];
+                row[h] = sum;
+            }
+        }
+        stale = false;
+    }
+
+    /**
+     * Returns {@code true} if two animals can make friends without
+     * exceeding their maximum numbers of friends.
+     */
+    boolean canLink(int a, int b) {
+        return graph.degree(a) < caps[a] && graph.degree(b) < caps[b];
+    }
+
+    /**
+     * Returns the id of a new friend for the given animal drawn
+     * according to the policy, or -1 if there is no eligible animal. The
+     * friend {@code lost}, if not -1, is treated as a non-friend, as if
+     * the friendship was already broken.
+     *
+     * @param  id the id of the animal looking for a new friend
+     * @param  lost the id of a friend to treat as a non-friend, or -1
+     * @param  random the source of randomness
+     * @return the id of the new friend or -1 if there is none
+     */
+    int randomFriend(int id, int lost, RandomSource random) {
+        if (graph.degree(id) - (lost < 0 ? 0 : 1) >= caps[id]) return -1;
+        double[] row = cumulative[groupOf[id]];
+        double total = row[groupCount - 1];
+        if (!(total > 0)) return -1;
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            double u = nextDouble(random) * total;
+            int lo = 0, hi = groupCount - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (row[mid] > u) hi = mid; else lo = mid + 1;
+            }
+            if (!(row[lo] > u)) continue; // rounded up to the total
+            int candidate = members[lo][random.nextInt(memberCounts[lo])];
+            if (isEligible(id, candidate, lost)) return candidate;
+        }
+        // weigh every eligible animal
+        double[] weights = affinities[groupOf[id]];
+        double sum = 0;
+        for (int c = 0, n = graph.size(); c < n; c++) {
+            if (isEligible(id, c, lost)) sum += weights[groupOf[c]];
+        }
+        if (!(sum > 0)) return -1;
+        double u = nextDouble(random) * sum;
+        int last = -1;
+        for (int c = 0, n = graph.size(); c < n; c++) {
+            if (!isEligible(id, c, lost) || weights[groupOf[c]] == 0) continue;
+            u -= weights[groupOf[c]];
+            last = c;
+            if (u < 0) break;
+        }
+        return last;
+    }
+
+    private boolean isEligible(int id, int candidate, int lost) {
+        if (candidate == id) return false;
+        if (candidate == lost) return graph.degree(candidate) - 1 < caps[candidate];
+        return graph.degree(candidate) < caps[candidate] &&
+               !graph.areFriends(id, candidate);
+    }
+
+    private void rebuild() {
+        rebuild = false;
+        groupIds.clear();
+        groupCount = 0;
+        Arrays.fill(memberCounts, 0);
+        cappedAnimals = 0;
+        int n = graph.size();
+        groupOf = new int[n];
+        positions = new int[n];
+        caps = new int[n];
+        for (int id = 0; id < n; id++) attach(id);
+    }
+
+    /**
+     * Puts an animal in its group.
+     */
+    private void attach(int id) {
+        ReadOnlyAnimal animal = graph.animal(id);
+        int cap = policy.maxFriends(animal);
+        if (cap < 0) {
+            throw new IllegalArgumentException("Illegal maximum number of friends: " +
+                                               cap);
+        }
+        int g = groupId(policy.group(animal));
+        int count = memberCounts[g];
+        if (count == members[g].length) {
+            members[g] = Arrays.copyOf(members[g], Math.max(4, count + (count >> 1)));
+        }
+        members[g][count] = id;
+        memberCounts[g] = count + 1;
+        groupOf[id] = g;
+        positions[id] = count;
+        caps[id] = cap;
+        if (cap != Integer.MAX_VALUE) cappedAnimals++;
+        stale = true;
+    }
+
+    /**
+     * Takes an animal out of its group, moving the last animal of the
+     * group to its place.
+     */
+    private void detach(int id) {
+        int g = groupOf[id];
+        int last = members[g][--memberCounts[g]];
+        members[g][positions[id]] = last;
+        positions[last] = positions[id];
+        if (caps[id] != Integer.MAX_VALUE) cappedAnimals--;
+        stale = true;
+    }
+
+    /**
+     * Returns the id of a group, adding the group and its affinities
+     * with the other groups if new.
+     */
+    private int groupId(Object group) {
+        Integer known = groupIds.get(group);
+        if (known != null) return known;
+        int g = groupCount;
+        if (g == groups.length) {
+            int capacity = Math.max(4, g << 1);
+            groups = Arrays.copyOf(groups, capacity);
+            members = Arrays.copyOf(members, capacity);
+            memberCounts = Arrays.copyOf(memberCounts, capacity);
+            affinities = Arrays.copyOf(affinities, capacity);
+            for (int h = 0; h < g; h++) {
+                affinities[h] = Arrays.copyOf(affinities[h], capacity);
+            }
+        }
+        groups[g] = group;
+        members[g] = EMPTY;
+        memberCounts[g] = 0;
+        affinities[g] = new double[groups.length];
+        for (int h = 0; h <= g; h++) {
+            affinities[g][h] = FriendshipPolicies.checkAffinity(
+                    policy.affinity(group, groups[h]));
+            affinities[h][g] = FriendshipPolicies.checkAffinity(
+                    policy.affinity(groups[h], group));
+        }
+        groupIds.put(group, g);
+        groupCount++;
+        return g;
+    }
+
+    /**
+     * Returns a pseudorandom {@code double} in {@code [0, 1)} with 53
+     * random bits.
+     */
+    private static double nextDouble(RandomSource random) {
+        long bits = (long) random.nextInt(1 << 26) << 27 | random.nextInt(1 << 27);
+        return bits * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.nio.file.Path;
+
+/**
+ * Where a {@link Zoo} keeps the friends of its animals. The animals
+ * themselves are always kept on the heap.
+ *
+ * <p>
+ * By default the friends of every animal are an {@code int[]} on the
+ * heap, which is the fastest storage for most zoos. With hundreds of
+ * millions of friendships those arrays make up most of the heap, and
+ * every full collection has to go through them. The storages outside
+ * the heap keep the friends in a few large buffers instead, direct or
+ * mapped from temporary files, so the heap holds a few bytes per animal
+ * whatever the number of friendships. Reading and writing the friends is
+ * somewhat slower, and a {@linkplain Zoo#snapshot() snapshot} copies all
+ * the friendships to the heap instead of sharing them.
+ *
+ * <p>
+ * The memory outside the heap is reserved in slabs of the given size
+ * and never given back to the system while the zoo is in use; the
+ * blocks freed as friends are lost are reused. The slabs are released
+ * when the zoo is garbage collected. The direct slabs count against
+ * {@code -XX:MaxDirectMemorySize}.
+ *
+ * @author Lisandro Fernandez
+ * @see    Zoo#Zoo(java.util.Collection, FriendshipStorage)
+ */
+
+public final class FriendshipStorage {
+    private static final int DEFAULT_SLAB_BYTES = 64 << 20;
+    private static final FriendshipStorage HEAP = new FriendshipStorage(0, null);
+
+    private final int slabBytes;
+    private final Path directory;
+
+    private FriendshipStorage(int slabBytes, Path directory) {
+        this.slabBytes = slabBytes;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the storage of the friends in arrays on the heap.
+     *
+     * @return the storage on the heap
+     */
+    public static FriendshipStorage heap() {
+        return HEAP;
+    }
+
+    /**
+     * Returns a storage of the friends in direct buffers of 64 MiB.
+     *
+     * @return a storage outside the heap
+     */
+    public static FriendshipStorage offHeap() {
+        return offHeap(DEFAULT_SLAB_BYTES);
+    }
+
+    /**
+     * Returns a storage of the friends in direct buffers of the given
+     * size.
+     *
+     * @param  slabBytes the size of every buffer, a power of two from
+     *         4 KiB to 1 GiB
+     * @return a storage outside the heap
+     * @throws IllegalArgumentException if the size is illegal
+     */
+    public static FriendshipStorage offHeap(int slabBytes) {
+        return new FriendshipStorage(checkSlabBytes(slabBytes), null);
+    }
+
+    /**
+     * Returns a storage of the friends in buffers of 64 MiB mapped from
+     * temporary files in the given directory, so the operating system
+     * can page them out. The files are deleted as soon as they are
+     * mapped where the platform allows it, and on exit otherwise.
+     *
+     * @param  directory the directory of the temporary files
+     * @return a storage in mapped files
+     * @throws NullPointerException if the directory is null
+     */
+    public static FriendshipStorage mapped(Path directory) {
+        return mapped(directory, DEFAULT_SLAB_BYTES);
+    }
+
+    /**
+     * Returns a storage of the friends in buffers of the given size
+     * mapped from temporary files in the given directory, as in
+     * {@link #mapped(Path)}.
+     *
+     * @param  directory the directory of the temporary files
+     * @param  slabBytes the size of every buffer, a power of two from
+     *         4 KiB to 1 GiB
+     * @return a storage in mapped files
+     * @throws NullPointerException if the directory is null
+     * @throws IllegalArgumentException if the size is illegal
+     */
+    public static FriendshipStorage mapped(Path directory, int slabBytes) {
+        if (directory == null) throw new NullPointerException();
+        return new FriendshipStorage(checkSlabBytes(slabBytes), directory);
+    }
+
+    /**
+     * Returns {@code true} if the friends are kept outside the heap.
+     *
+     * @return {@code true} if the friends are kept outside the heap
+     */
+    public boolean isOffHeap() {
+        return slabBytes != 0;
+    }
+
+    /**
+     * Returns new empty rows for the given number of animals, with
+     * their own allocator outside the heap.
+     */
+    FriendRows newRows(int capacity) {
+        if (slabBytes == 0) return new HeapFriendRows(capacity);
+        return new OffHeapFriendRows(capacity, new SlabAllocator(slabBytes, directory));
+    }
+
+    private static int checkSlabBytes(int slabBytes) {
+        if (slabBytes < 4 << 10 || slabBytes > 1 << 30 || Integer.bitCount(slabBytes) != 1) {
+            throw new IllegalArgumentException("Illegal slab size: " + slabBytes);
+        }
+        return slabBytes;
+    }
+}
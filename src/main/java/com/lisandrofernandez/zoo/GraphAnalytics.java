@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Analytics of the friendships of a zoo: the distribution of the number
+ * of friends, the groups of animals connected by friendships and the
+ * triangles of animals which are friends of each other, from which the
+ * clustering coefficients follow.
+ *
+ * <p>
+ * The analytics read the arrays of friends of a {@link ZooSnapshot}
+ * directly, without copying them, so they can run in another thread
+ * while the zoo lives its days. The connected components are found by
+ * union-find over the friendships. The triangles are counted by
+ * intersecting the sorted arrays of friends of both animals of every
+ * friendship, looking only at friends with higher ids so every triangle
+ * is found once, in parallel if a pool is given.
+ *
+ * <p>
+ * The components and the triangles are computed the first time they are
+ * needed and kept for the following calls.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public final class GraphAnalytics {
+    private final ZooSnapshot snapshot;
+    private final ForkJoinPool pool;
+
+    /**
+     * The component of every animal, numbered from 0, or null.
+     */
+    private int[] components;
+
+    /**
+     * The number of animals of every component.
+     */
+    private int[] componentSizes;
+
+    /**
+     * The number of triangles of every animal, or null.
+     */
+    private long[] triangles;
+
+    private long triangleCount;
+
+    /**
+     * Constructs the analytics of a snapshot, computed in the calling
+     * thread.
+     *
+     * @param  snapshot the snapshot
+     * @throws NullPointerException if the snapshot is null
+     */
+    public GraphAnalytics(ZooSnapshot snapshot) {
+        if (snapshot == null) throw new NullPointerException();
+        this.snapshot = snapshot;
+        this.pool = null;
+    }
+
+    /**
+     * Constructs the analytics of a snapshot, counting the triangles
+     * with the threads of the given pool.
+     *
+     * @param  snapshot the snapshot
+     * @param  pool the pool counting the triangles
+     * @throws NullPointerException if the snapshot or the pool is null
+     */
+    public GraphAnalytics(ZooSnapshot snapshot, ForkJoinPool pool) {
+        if (snapshot == null || pool == null) throw new NullPointerException();
+        this.snapshot = snapshot;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the number of animals with every number of friends: the
+     * element {@code d} is the number of animals with {@code d} friends.
+     *
+     * @return the histogram of the number of friends, as long as the
+     *         highest number of friends plus one
+     */
+    public long[] getDegreeHistogram() {
+        int n = snapshot.size();
+        int max = 0;
+        for (int id = 0; id < n; id++) max = Math.max(max, snapshot.degree(id));
+        long[] histogram = new long[max + 1];
+        for (int id = 0; id < n; id++) histogram[snapshot.degree(id)]++;
+        return histogram;
+    }
+
+    /**
+     * Returns the number of connected components, the groups of animals
+     * which are linked by a chain of friendships. An animal without
+     * friends is a component by itself.
+     *
+     * @return the number of connected components
+     */
+    public synchronized int getComponentCount() {
+        findComponents();
+        return componentSizes.length;
+    }
+
+    /**
+     * Returns the number of animals of every connected component, from
+     * the largest to the smallest.
+     *
+     * @return the sizes of the connected components
+     */
+    public synchronized int[] getComponentSizes() {
+        findComponents();
+        int[] sizes = componentSizes.clone();
+        Arrays.sort(sizes);
+        for (int i = 0, j = sizes.length - 1; i < j; i++, j--) {
+            int t = sizes[i];
+            sizes[i] = sizes[j];
+            sizes[j] = t;
+        }
+        return sizes;
+    }
+
+    /**
+     * Returns {@code true} if two animals are linked by a chain of
+     * friendships.
+     *
+     * @param  a the first animal
+     * @param  b the second animal
+     * @return {@code true} if the animals are in the same component
+     * @throws NullPointerException if any of the animals is null
+     * @throws IllegalArgumentException if any of the animals was not in
+     *         the zoo
+     */
+    public synchronized boolean areConnected(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        int x = snapshot.idOf(a), y = snapshot.idOf(b);
+        findComponents();
+        return components[x] == components[y];
+    }
+
+    /**
+     * Returns the animals linked to an animal by a chain of friendships,
+     * the animal included.
+     *
+     * @param  animal the animal
+     * @return a new set of the animals of the component of the animal
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal was not in the zoo
+     */
+    public synchronized Set<ReadOnlyAnimal> getComponent(ReadOnlyAnimal animal) {
+        int component = components()[snapshot.idOf(animal)];
+        Set<ReadOnlyAnimal> animals = new HashSet<>(
+            Math.max(16, (int) (componentSizes[component] / .75f) + 1)
+        );
+        for (int id = 0, n = snapshot.size(); id < n; id++) {
+            if (components[id] == component) animals.add(snapshot.animal(id));
+        }
+        return animals;
+    }
+
+    /**
+     * Returns the number of triangles, the groups of three animals
+     * which are friends of each other.
+     *
+     * @return the number of triangles
+     */
+    public synchronized long getTriangleCount() {
+        countTriangles();
+        return triangleCount;
+    }
+
+    /**
+     * Returns the number of triangles an animal is part of, which is the
+     * number of friendships between its friends.
+     *
+     * @param  animal the animal
+     * @return the number of triangles of the animal
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal was not in the zoo
+     */
+    public synchronized long getTriangleCount(ReadOnlyAnimal animal) {
+        int id = snapshot.idOf(animal);
+        countTriangles();
+        return triangles[id];
+    }
+
+    /**
+     * Returns the local clustering coefficient of an animal: the
+     * fraction of the pairs of its friends which are friends too, or 0
+     * if it has less than two friends.
+     *
+     * @param  animal the animal
+     * @return the clustering coefficient of the animal
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal was not in the zoo
+     */
+    public synchronized double getClusteringCoefficient(ReadOnlyAnimal animal) {
+        int id = snapshot.idOf(animal);
+        countTriangles();
+        return clustering(id);
+    }
+
+    /**
+     * Returns the average of the local clustering coefficients of all
+     * the animals, or 0 if the zoo has no animals.
+     *
+     * @return the average clustering coefficient
+     */
+    public synchronized double getAverageClusteringCoefficient() {
+        countTriangles();
+        int n = snapshot.size();
+        double sum = 0;
+        for (int id = 0; id < n; id++) sum += clustering(id);
+        return n == 0 ? 0 : sum / n;
+    }
+
+    /**
+     * Returns the global clustering coefficient, or transitivity: the
+     * fraction of the paths of two friendships whose ends are friends
+     * too, or 0 if there are no such paths.
+     *
+     * @return the global clustering coefficient
+     */
+    public synchronized double getTransitivity() {
+        countTriangles();
+        double paths = 0;
+        for (int id = 0, n = snapshot.size(); id < n; id++) {
+            long d = snapshot.degree(id);
+            paths += d * (d - 1) / 2;
+        }
+        return paths == 0 ? 0 : 3 * triangleCount / paths;
+    }
+
+    private double clustering(int id) {
+        long d = snapshot.degree(id);
+        return d < 2 ? 0 : triangles[id] / (d * (d - 1) / 2.0);
+    }
+
+    private int[] components() {
+        findComponents();
+        return components;
+    }
+
+    /**
+     * Finds the connected components by union-find, linking the root of
+     * the smaller tree under the root of the larger one and halving the
+     * paths while finding the roots.
+     */
+    private void findComponents() {
+        if (components != null) return;
+        int n = snapshot.size();
+        int[] parents = new int[n];
+        int[] sizes = new int[n];
+        for (int id = 0; id < n; id++) {
+            parents[id] = id;
+            sizes[id] = 1;
+        }
+        for (int x = 0; x < n; x++) {
+            int[] row = snapshot.friendIds(x);
+            // every friendship is seen from both ends, link it once
+            for (int i = snapshot.degree(x) - 1; i >= 0 && row[i] > x; i--) {
+                int rx = find(parents, x), ry = find(parents, row[i]);
+                if (rx == ry) continue;
+                if (sizes[rx] < sizes[ry]) {
+                    int t = rx;
+                    rx = ry;
+                    ry = t;
+                }
+                parents[ry] = rx;
+                sizes[rx] += sizes[ry];
+            }
+        }
+        // number the roots in id order, reusing the sizes as the numbers
+        // since only the size of a root is read, right before numbering it
+        for (int id = 0; id < n; id++) parents[id] = find(parents, id);
+        int count = 0;
+        int[] counts = new int[n];
+        for (int id = 0; id < n; id++) {
+            if (parents[id] == id) {
+                counts[count] = sizes[id];
+                sizes[id] = count++;
+            }
+        }
+        for (int id = 0; id < n; id++) parents[id] = sizes[parents[id]];
+        components = parents;
+        componentSizes = Arrays.copyOf(counts, count);
+    }
+
+    private static int find(int[] parents, int x) {
+        while (parents[x] != x) {
+            parents[x] = parents[parents[x]];
+            x = parents[x];
+        }
+        return x;
+    }
+
+    private void countTriangles() {
+        if (triangles != null) return;
+        int n = snapshot.size();
+        long[] result = new long[n];
+        if (pool == null) {
+            TriangleCounts counts = (id, found) -> result[id] += found;
+            for (int x = 0; x < n; x++) countTriangles(x, counts);
+        } else {
+            // the ends of a triangle may be in other chunks
+            AtomicLongArray shared = new AtomicLongArray(n);
+            TriangleCounts counts = shared::addAndGet;
+            int chunks = (n + ParallelDay.CHUNK_SIZE - 1) / ParallelDay.CHUNK_SIZE;
+            pool.invoke(new ChunkTask(0, chunks, c -> {
+                for (int x = c * ParallelDay.CHUNK_SIZE,
+                         end = Math.min(n, x + ParallelDay.CHUNK_SIZE); x < end; x++) {
+                    countTriangles(x, counts);
+                }
+            }));
+            for (int id = 0; id < n; id++) result[id] = shared.get(id);
+        }
+        long ends = 0;
+        for (int id = 0; id < n; id++) ends += result[id];
+        triangles = result;
+        triangleCount = ends / 3;
+    }
+
+    /**
+     * Counts the triangles x &lt; y &lt; z of an animal x, intersecting
+     * the friends of x and of every friend y of x above y.
+     */
+    private void countTriangles(int x, TriangleCounts counts) {
+        int[] xs = snapshot.friendIds(x);
+        int dx = snapshot.degree(x);
+        int first = upperBound(xs, 0, dx, x);
+        long found = 0;
+        for (int i = first; i < dx - 1; i++) {
+            int y = xs[i];
+            int[] ys = snapshot.friendIds(y);
+            int dy = snapshot.degree(y);
+            int a = i + 1, b = upperBound(ys, 0, dy, y);
+            long common = 0;
+            while (a < dx && b < dy) {
+                int z = xs[a], w = ys[b];
+                if (z < w) {
+                    a++;
+                } else if (z > w) {
+                    b++;
+                } else {
+                    counts.add(z, 1);
+                    common++;
+                    a++;
+                    b++;
+                }
+            }
+            if (common > 0) {
+                counts.add(y, common);
+                found += common;
+            }
+        }
+        if (found > 0) counts.add(x, found);
+    }
+
+    /**
+     * Returns the index of the first element greater than the key in a
+     * sorted range.
+     */
+    private static int upperBound(int[] a, int from, int to, int key) {
+        int i = Arrays.binarySearch(a, from, to, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Adds to the number of triangles of an animal, through a plain
+     * array when counting sequentially and an atomic one in parallel.
+     */
+    private interface TriangleCounts {
+        void add(int id, long found);
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+
+/**
+ * Metrics of the friendships of a zoo kept up to date as they change:
+ * the number of friendships, the number of animals with every number of
+ * friends and, optionally, the number of triangles of animals which are
+ * friends of each other. Reading a metric takes constant time instead of
+ * a scan of the zoo.
+ *
+ * <p>
+ * Every friendship made or broken updates the counters of both animals
+ * in constant time, and the number of triangles by the number of common
+ * friends of both animals, found by merging their sorted arrays of
+ * friends. Removing an animal updates the counters of its friends
+ * only, without a scan of the zoo.
+ *
+ * <p>
+ * The metrics are live: they reflect every change to the zoo they were
+ * obtained from, and like the zoo they must be read by the thread
+ * changing it.
+ *
+ * @author Lisandro Fernandez
+ * @see Zoo#setTrackingMetrics(boolean)
+ */
+
+public final class GraphMetrics {
+    private final FriendshipGraph graph;
+    private long friendships;
+
+    /**
+     * The number of animals with every number of friends.
+     */
+    private long[] histogram = new long[16];
+
+    private boolean trackingTriangles;
+    private long triangles;
+
+    /**
+     * The number of removed friends of every animal which stays, zero
+     * between removals, and the animals with some.
+     */
+    private int[] lost = new int[16];
+    private int[] lostFriends = new int[16];
+
+    /**
+     * Constructs the metrics of a graph, counting them from scratch.
+     */
+    GraphMetrics(FriendshipGraph graph, boolean trackingTriangles) {
+        this.graph = graph;
+        long ends = 0;
+        for (int id = 0, n = graph.size(); id < n; id++) {
+            int degree = graph.degree(id);
+            ends += degree;
+            count(degree, 1);
+        }
+        friendships = ends / 2;
+        setTrackingTriangles(trackingTriangles);
+    }
+
+    /**
+     * Returns the number of friendships.
+     *
+     * @return the number of friendships
+     */
+    public long getFriendships() {
+        return friendships;
+    }
+
+    /**
+     * Returns the number of friends of an animal.
+     *
+     * @param  animal the animal
+     * @return the number of friends of the animal
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal is not in the zoo
+     */
+    public int getDegree(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        int id = graph.idOf(animal);
+        if (id < 0) {
+            throw new IllegalArgumentException(animal + " is not in the zoo");
+        }
+        return graph.degree(id);
+    }
+
+    /**
+     * Returns the number of animals with the given number of friends.
+     *
+     * @param  degree the number of friends
+     * @return the number of animals with that number of friends
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public long getAnimalsWithDegree(int degree) {
+        if (degree < 0) {
+            throw new IllegalArgumentException("Illegal degree: " + degree);
+        }
+        return degree < histogram.length ? histogram[degree] : 0;
+    }
+
+    /**
+     * Returns the number of animals with every number of friends: the
+     * element {@code d} is the number of animals with {@code d} friends.
+     *
+     * @return a new histogram of the number of friends, as long as the
+     *         highest number of friends plus one
+     */
+    public long[] getDegreeHistogram() {
+        int length = histogram.length;
+        while (length > 1 && histogram[length - 1] == 0) length--;
+        return Arrays.copyOf(histogram, length);
+    }
+
+    /**
+     * Returns the number of animals without friends.
+     *
+     * @return the number of animals without friends
+     */
+    public long getIsolatedAnimals() {
+        return histogram[0];
+    }
+
+    /**
+     * Returns {@code true} if the number of triangles is kept.
+     *
+     * @return {@code true} if the number of triangles is kept
+     * @see    Zoo#setTrackingTriangles(boolean)
+     */
+    public boolean isTrackingTriangles() {
+        return trackingTriangles;
+    }
+
+    /**
+     * Returns the number of triangles, the groups of three animals
+     * which are friends of each other.
+     *
+     * @return the number of triangles
+     * @throws IllegalStateException if the number of triangles is not
+     *         kept
+     * @see    Zoo#setTrackingTriangles(boolean)
+     */
+    public long getTriangles() {
+        if (!trackingTriangles) {
+            throw new IllegalStateException("Triangles are not tracked");
+        }
+        return triangles;
+    }
+
+    /**
+     * Starts or stops keeping the number of triangles, counting them from
+     * scratch when started.
+     */
+    void setTrackingTriangles(boolean tracking) {
+        if (tracking && !trackingTriangles) {
+            long ends = 0;
+            for (int x = 0, n = graph.size(); x < n; x++) {
+                int[] row = graph.friendIds(x);
+                // every friendship is seen from both ends, count it once
+                for (int i = graph.degree(x) - 1; i >= 0 && row[i] > x; i--) {
+                    ends += commonFriends(x, row[i]);
+                }
+            }
+            triangles = ends / 3;
+        }
+        trackingTriangles = tracking;
+    }
+
+    /**
+     * Counts an animal just added.
+     */
+    void added() {
+        histogram[0]++;
+    }
+
+    /**
+     * Counts a friendship just made.
+     */
+    void linked(int x, int y) {
+        friendships++;
+        moved(graph.degree(x) - 1, graph.degree(x));
+        moved(graph.degree(y) - 1, graph.degree(y));
+        if (trackingTriangles) triangles += commonFriends(x, y);
+    }
+
+    /**
+     * Counts a friendship just broken.
+     */
+    void unlinked(int x, int y) {
+        friendships--;
+        moved(graph.degree(x) + 1, graph.degree(x));
+        moved(graph.degree(y) + 1, graph.degree(y));
+        if (trackingTriangles) triangles -= commonFriends(x, y);
+    }
+
+    /**
+     * Counts an animal about to be removed with all its friendships, in
+     * the time of a walk over its friends and their common friends.
+     */
+    void removing(int x) {
+        int[] row = graph.friendIds(x);
+        int degree = graph.degree(x);
+        count(degree, -1);
+        friendships -= degree;
+        long ends = 0;
+        for (int i = 0; i < degree; i++) {
+            int f = row[i];
+            moved(graph.degree(f), graph.degree(f) - 1);
+            if (trackingTriangles) ends += commonFriends(x, f);
+        }
+        // a triangle of x is seen from both of its other animals
+        if (trackingTriangles) triangles -= ends / 2;
+    }
+
+    /**
+     * Counts the marked animals about to be removed with all their
+     * friendships. A friendship or a triangle of several removed animals
+     * is counted once, by the removed animal with the lowest id. An
+     * animal which stays loses all its removed friends at once, counted
+     * in a buffer kept between removals and cleared through the list of
+     * the animals touched, so only the friends of the removed animals
+     * are visited.
+     */
+    void removingAll(boolean[] removed) {
+        int touched = 0;
+        for (int x = 0, n = Math.min(removed.length, graph.size()); x < n; x++) {
+            if (!removed[x]) continue;
+            int[] row = graph.friendIds(x);
+            int degree = graph.degree(x);
+            count(degree, -1);
+            for (int i = 0; i < degree; i++) {
+                int f = row[i];
+                if (isRemoved(removed, f)) {
+                    if (f > x) friendships--;
+                    continue;
+                }
+                friendships--;
+                if (f >= lost.length) {
+                    lost = Arrays.copyOf(lost, Math.max(f + 1, lost.length << 1));
+                }
+                if (lost[f]++ == 0) {
+                    if (touched == lostFriends.length) {
+                        lostFriends = Arrays.copyOf(lostFriends, touched << 1);
+                    }
+                    lostFriends[touched++] = f;
+                }
+            }
+            if (trackingTriangles) triangles -= trianglesFirstRemoved(x, removed);
+        }
+        for (int i = 0; i < touched; i++) {
+            int f = lostFriends[i];
+            moved(graph.degree(f), graph.degree(f) - lost[f]);
+            lost[f] = 0;
+        }
+    }
+
+    /**
+     * Counts the triangles of a removed animal x whose other animals
+     * are not removed animals with lower ids.
+     */
+    private long trianglesFirstRemoved(int x, boolean[] removed) {
+        int[] xs = graph.friendIds(x);
+        int dx = graph.degree(x);
+        long count = 0;
+        for (int i = 0; i < dx; i++) {
+            int y = xs[i];
+            if (y < x && isRemoved(removed, y)) continue;
+            int[] ys = graph.friendIds(y);
+            int dy = graph.degree(y);
+            // the pairs y < z of friends of x, so a triangle is seen once
+            for (int a = i + 1, b = 0; a < dx && b < dy; ) {
+                int z = xs[a], w = ys[b];
+                if (z < w) {
+                    a++;
+                } else if (z > w) {
+                    b++;
+                } else {
+                    if (!(z < x && isRemoved(removed, z))) count++;
+                    a++;
+                    b++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean isRemoved(boolean[] removed, int id) {
+        return id < removed.length && removed[id];
+    }
+
+    /**
+     * Returns the number of common friends of two animals.
+     */
+    private int commonFriends(int x, int y) {
+        int[] xs = graph.friendIds(x), ys = graph.friendIds(y);
+        int dx = graph.degree(x), dy = graph.degree(y);
+        int common = 0;
+        for (int a = 0, b = 0; a < dx && b < dy; ) {
+            int z = xs[a], w = ys[b];
+            if (z < w) {
+                a++;
+            } else if (z > w) {
+                b++;
+            } else {
+                common++;
+                a++;
+                b++;
+            }
+        }
+        return common;
+    }
+
+    private void moved(int from, int to) {
+        count(from, -1);
+        count(to, 1);
+    }
+
+    private void count(int degree, int delta) {
+        if (degree >= histogram.length) {
+            histogram = Arrays.copyOf(histogram,
+                                      Math.max(degree + 1, histogram.length << 1));
+        }
+        histogram[degree] += delta;
+    }
+}
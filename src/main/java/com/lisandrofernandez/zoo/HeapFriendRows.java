@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+
+/**
+ * The rows of friends of a graph in {@code int[]} arrays on the heap.
+ *
+ * <p>
+ * Compared with a {@code HashSet} per animal, a friendship costs two
+ * {@code int}s plus the spare capacity of the arrays instead of two
+ * hash nodes. Looking for a friend is a binary search, and adding or
+ * removing a friend shifts the tail of a single array, which is cheap
+ * for the degrees found in a zoo.
+ *
+ * <p>
+ * A snapshot shares the arrays of friends instead of copying them.
+ * After a snapshot every array of friends is copied the first time it
+ * is modified (copy-on-write), so a snapshot never changes and can be
+ * read by other threads while the rows are being modified.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class HeapFriendRows extends FriendRows {
+    private static final int[] NO_FRIENDS = {};
+    private static final int MIN_CAPACITY = 4;
+
+    private int[][] friends;
+    private int[] degrees;
+
+    /**
+     * The number of snapshots taken. The array of friends of animal i
+     * can be modified in place only if {@code owners[i] == epoch},
+     * otherwise a snapshot may share it.
+     */
+    private int epoch;
+    private int[] owners;
+
+    HeapFriendRows(int capacity) {
+        friends = new int[capacity][];
+        degrees = new int[capacity];
+        owners = new int[capacity];
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity <= friends.length) return;
+        friends = Arrays.copyOf(friends, capacity);
+        degrees = Arrays.copyOf(degrees, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+    }
+
+    @Override
+    int degree(int id) {
+        return degrees[id];
+    }
+
+    @Override
+    int friend(int id, int index) {
+        return friends[id][index];
+    }
+
+    @Override
+    int indexOf(int id, int friend) {
+        return Arrays.binarySearch(friends[id], 0, degrees[id], friend);
+    }
+
+    @Override
+    int[] friendIds(int id) {
+        return friends[id];
+    }
+
+    @Override
+    boolean insert(int id, int friend) {
+        int[] row = friends[id];
+        int n = degrees[id];
+        int i = Arrays.binarySearch(row, 0, n, friend);
+        if (i >= 0) return false;
+        i = -i - 1;
+        if (n == row.length) {
+            int[] grown = new int[Math.max(MIN_CAPACITY, n + (n >> 1))];
+            System.arraycopy(row, 0, grown, 0, i);
+            System.arraycopy(row, i, grown, i + 1, n - i);
+            row = grown;
+            friends[id] = row;
+            owners[id] = epoch;
+        } else {
+            row = ownRow(id);
+            System.arraycopy(row, i, row, i + 1, n - i);
+        }
+        row[i] = friend;
+        degrees[id] = n + 1;
+        return true;
+    }
+
+    @Override
+    boolean remove(int id, int friend) {
+        int[] row = friends[id];
+        int n = degrees[id];
+        int i = Arrays.binarySearch(row, 0, n, friend);
+        if (i < 0) return false;
+        degrees[id] = --n;
+        if (n == 0) {
+            friends[id] = NO_FRIENDS;
+        } else if (row.length > MIN_CAPACITY && n < row.length >> 2) {
+            int[] shrunk = new int[n << 1];
+            System.arraycopy(row, 0, shrunk, 0, i);
+            System.arraycopy(row, i + 1, shrunk, i, n - i);
+            friends[id] = shrunk;
+            owners[id] = epoch;
+        } else {
+            row = ownRow(id);
+            System.arraycopy(row, i + 1, row, i, n - i);
+        }
+        return true;
+    }
+
+    @Override
+    void set(int id, int[] row, int degree) {
+        friends[id] = degree == 0 ? NO_FRIENDS : row;
+        degrees[id] = degree;
+        owners[id] = epoch;
+    }
+
+    @Override
+    void clear(int id) {
+        friends[id] = NO_FRIENDS;
+        degrees[id] = 0;
+        owners[id] = epoch;
+    }
+
+    @Override
+    void move(int from, int to) {
+        friends[to] = friends[from];
+        degrees[to] = degrees[from];
+        owners[to] = owners[from];
+        friends[from] = null;
+        degrees[from] = 0;
+    }
+
+    @Override
+    void dropMarked(int id, boolean[] marks) {
+        int[] row = ownRow(id);
+        int d = 0;
+        for (int i = 0, n = degrees[id]; i < n; i++) {
+            if (!marks[row[i]]) row[d++] = row[i];
+        }
+        degrees[id] = d;
+        if (d == 0) {
+            friends[id] = NO_FRIENDS;
+        } else if (row.length > MIN_CAPACITY && d < row.length >> 2) {
+            friends[id] = Arrays.copyOf(row, d << 1);
+        }
+    }
+
+    @Override
+    void renumber(int id, int[] newIds, int newSize) {
+        int[] row = ownRow(id);
+        int d = degrees[id];
+        for (int i = 0; i < d; i++) {
+            if (row[i] >= newSize) row[i] = newIds[row[i] - newSize];
+        }
+        Arrays.sort(row, 0, d);
+    }
+
+    /**
+     * Merges the new friends of an animal into a new array of friends of
+     * the exact size.
+     */
+    @Override
+    void merge(int id, int[] offsets, int[] targets) {
+        int from = offsets[id], to = offsets[id + 1];
+        if (from == to) return;
+        int[] row = friends[id];
+        int d = degrees[id];
+        int added = 0;
+        for (int a = 0, b = from; b < to; b++) {
+            int f = targets[b];
+            while (a < d && row[a] < f) a++;
+            if (a == d || row[a] != f) {
+                targets[b] = ~f;
+                added++;
+            }
+        }
+        if (added == 0) return;
+        int[] merged = new int[d + added];
+        int a = 0, b = from, k = 0;
+        while (b < to) {
+            int f = targets[b];
+            if (f >= 0) { // already a friend, copied from the row
+                b++;
+            } else if (a < d && row[a] < ~f) {
+                merged[k++] = row[a++];
+            } else {
+                merged[k++] = ~f;
+                b++;
+            }
+        }
+        while (a < d) merged[k++] = row[a++];
+        friends[id] = merged;
+        degrees[id] = k;
+        owners[id] = epoch;
+    }
+
+    /**
+     * Drops the given friends of an animal, in place if no snapshot
+     * shares its array of friends.
+     */
+    @Override
+    void drop(int id, int[] offsets, int[] targets) {
+        int from = offsets[id], to = offsets[id + 1];
+        if (from == to) return;
+        int[] row = friends[id];
+        int d = degrees[id];
+        int dropped = 0;
+        for (int a = 0, b = from; b < to; b++) {
+            int f = targets[b];
+            while (a < d && row[a] < f) a++;
+            if (a < d && row[a] == f) {
+                targets[b] = ~f;
+                dropped++;
+            }
+        }
+        if (dropped == 0) return;
+        int left = d - dropped;
+        int[] kept;
+        if (left == 0) {
+            kept = NO_FRIENDS;
+        } else if (row.length > MIN_CAPACITY && left < row.length >> 2) {
+            kept = new int[left << 1];
+            owners[id] = epoch;
+        } else {
+            kept = ownRow(id);
+        }
+        int k = 0;
+        for (int a = 0, b = from; a < d; a++) {
+            while (b < to && (targets[b] < 0 ? ~targets[b] : targets[b]) < row[a]) b++;
+            if (b < to && targets[b] == ~row[a]) continue; // dropped
+            kept[k++] = row[a];
+        }
+        friends[id] = kept;
+        degrees[id] = left;
+    }
+
+    /**
+     * Shares the arrays of friends with the snapshot, so this only
+     * copies one reference per animal.
+     */
+    @Override
+    int[][] snapshot(int size) {
+        epoch++; // from now on every array of friends is shared
+        return Arrays.copyOf(friends, size);
+    }
+
+    @Override
+    int[] degrees(int size) {
+        return Arrays.copyOf(degrees, size);
+    }
+
+    /**
+     * Returns the array of friends of the given animal, copying it
+     * first if a snapshot may share it.
+     */
+    private int[] ownRow(int id) {
+        int[] row = friends[id];
+        if (owners[id] != epoch) {
+            row = row.clone();
+            friends[id] = row;
+            owners[id] = epoch;
+        }
+        return row;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Objects;
+
+/**
+ * This class represents an immutable animal with a numeric id. Its
+ * fields are final and it has no setters, so it cannot change while it
+ * is a key of a map or an index, and it is safely published to other
+ * threads. Two immutable animals are equal if they have the same id,
+ * name and favourite food, and the hash code is computed once when the
+ * animal is created.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public final class ImmutableAnimal implements ReadOnlyAnimal {
+    private final long id;
+    private final String name;
+    private final String favouriteFood;
+    private final int hash;
+
+    /**
+     * Construct an {@code ImmutableAnimal} with the given id, name and
+     * favourite food.
+     *
+     * @param id the animal id
+     * @param name the animal name
+     * @param favouriteFood the animal favourite food
+     */
+    public ImmutableAnimal(long id, String name, String favouriteFood) {
+        this.id = id;
+        this.name = name;
+        this.favouriteFood = favouriteFood;
+        this.hash = Objects.hash(id, name, favouriteFood);
+    }
+
+    /**
+     * Returns the animal id.
+     *
+     * @return the animal id
+     */
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getFavouriteFood() {
+        return favouriteFood;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof ImmutableAnimal)) return false;
+        ImmutableAnimal animal = (ImmutableAnimal) o;
+        return id == animal.id && hash == animal.hash
+               && Objects.equals(name, animal.name)
+               && Objects.equals(favouriteFood, animal.favouriteFood);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "Animal [id = " + id + ", name = " + name +
+               ", favourite food = " + favouriteFood + "]";
+    }
+}
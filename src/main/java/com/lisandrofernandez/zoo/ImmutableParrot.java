@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Objects;
+
+/**
+ * This class represents an immutable parrot with a numeric id. Its
+ * fields are final and it has no setters, so it cannot change while it
+ * is a key of a map or an index, and it is safely published to other
+ * threads. Two immutable parrots are equal if they have the same id,
+ * name, favourite food, length of the wings and whether they can speak,
+ * and the hash code is computed once when the parrot is created.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public final class ImmutableParrot implements ReadOnlyParrot {
+    private final long id;
+    private final String name;
+    private final String favouriteFood;
+    private final float wingsLength;
+    private final boolean speak;
+    private final int hash;
+
+    /**
+     * Construct an {@code ImmutableParrot} with the given id, name,
+     * favourite food, length of the wings, and whether it can speak.
+     *
+     * @param id the parrot id
+     * @param name the parrot name
+     * @param favouriteFood the parrot favourite food
+     * @param wingsLength the length of the wings of the parrot
+     * @param speak {@code true} if the parrot can speak
+     */
+    public ImmutableParrot(long id, String name, String favouriteFood,
+                           float wingsLength, boolean speak) {
+        this.id = id;
+        this.name = name;
+        this.favouriteFood = favouriteFood;
+        this.wingsLength = wingsLength;
+        this.speak = speak;
+        this.hash = Objects.hash(id, name, favouriteFood, wingsLength, speak);
+    }
+
+    /**
+     * Returns the parrot id.
+     *
+     * @return the parrot id
+     */
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getFavouriteFood() {
+        return favouriteFood;
+    }
+
+    @Override
+    public float wingsLength() {
+        return wingsLength;
+    }
+
+    @Override
+    public Boolean canSpeak() {
+        return speak; // Boolean.TRUE or Boolean.FALSE, never a new box
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof ImmutableParrot)) return false;
+        ImmutableParrot parrot = (ImmutableParrot) o;
+        return id == parrot.id && hash == parrot.hash
+               && Float.compare(wingsLength, parrot.wingsLength) == 0
+               && speak == parrot.speak
+               && Objects.equals(name, parrot.name)
+               && Objects.equals(favouriteFood, parrot.favouriteFood);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "Parrot [id = " + id + ", name = " + name +
+               ", favourite food = " + favouriteFood + ", length of wings = " +
+               wingsLength + ", can speak = " + speak + "]";
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A shard of a {@link ShardedZoo} in this process.
+ *
+ * <p>
+ * The animals of the shard and their friendships between them are kept
+ * in a {@link FriendshipGraph}, and the halves of their friendships
+ * with animals of other shards in a sorted array of keys per animal,
+ * renumbered with the graph when an animal is removed.
+ *
+ * <p>
+ * During a day an animal loses a uniformly chosen friend, of this shard
+ * or another one, and asks for friendship to a uniformly chosen animal
+ * of the whole zoo which was not its friend at the beginning of the day,
+ * or was the friend lost, as in {@link Zoo#liveDayInParallel}. The
+ * friends in other shards are not known by index, so an animal of
+ * another shard is asked without knowing whether it is a friend: it
+ * rejects the friendship if it is, and the animal makes no friend that
+ * day. When two animals of different shards ask each other, only the
+ * request of the animal with the lowest key is accepted.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class LocalShard implements ZooShard {
+    private static final int MIN_CAPACITY = 16;
+    private static final long[] NO_KEYS = new long[0];
+
+    /**
+     * The number of animals drawn before giving up making a friend,
+     * which only happens to an animal friend of almost all the animals
+     * of its shard.
+     */
+    private static final int MAX_ATTEMPTS = 32;
+
+    private final int index;
+    private final FriendshipGraph graph = new FriendshipGraph(0);
+    private final HashMap<Long, Integer> ids = new HashMap<>();
+    private long[] keys = new long[MIN_CAPACITY];
+    private long[][] remote = new long[MIN_CAPACITY][];
+    private int[] remoteDegrees = new int[MIN_CAPACITY];
+
+    /*
+     * The changes of the day, by id: the friend lost in this shard or
+     * -1, the key of the friend lost in another shard or -1, the animal
+     * asked in this shard or -1, the shard and index of the animal asked
+     * in another shard or -1, and whether a friend lost in another shard
+     * lost the animal too.
+     */
+    private int[] lostLocal = new int[0];
+    private long[] lostRemote = new long[0];
+    private int[] gainedLocal = new int[0];
+    private long[] gainedRemote = new long[0];
+    private boolean[] lostByBoth = new boolean[0];
+    private int daySize;
+    private int shards;
+    private long dayLost;
+    private long dayEstablished;
+
+    LocalShard(int index) {
+        this.index = index;
+    }
+
+    @Override
+    public void add(long key, ReadOnlyAnimal animal) {
+        int id = graph.add(animal);
+        if (id < 0 || ids.putIfAbsent(key, id) != null) {
+            throw new IllegalStateException("Duplicate key: " + key);
+        }
+        if (id == keys.length) {
+            int capacity = Math.max(MIN_CAPACITY, id + (id >> 1));
+            keys = Arrays.copyOf(keys, capacity);
+            remote = Arrays.copyOf(remote, capacity);
+            remoteDegrees = Arrays.copyOf(remoteDegrees, capacity);
+        }
+        keys[id] = key;
+        remote[id] = null;
+        remoteDegrees[id] = 0;
+    }
+
+    @Override
+    public long[] remove(long key) {
+        int id = idOf(key);
+        long[] friends = remote[id] == null
+            ? NO_KEYS : Arrays.copyOf(remote[id], remoteDegrees[id]);
+        ids.remove(key);
+        graph.remove(graph.animal(id));
+        int last = graph.size();
+        if (id != last) {
+            // the graph renumbered the last animal as id
+            keys[id] = keys[last];
+            remote[id] = remote[last];
+            remoteDegrees[id] = remoteDegrees[last];
+            ids.put(keys[id], id);
+        }
+        remote[last] = null;
+        remoteDegrees[last] = 0;
+        return friends;
+    }
+
+    @Override
+    public boolean link(long key, long friend) {
+        int id = idOf(key);
+        if (ZooShard.shardOf(friend) != index) return addRemote(id, friend);
+        int friendId = idOf(friend);
+        return id != friendId && graph.link(id, friendId);
+    }
+
+    @Override
+    public boolean unlink(long key, long friend) {
+        int id = idOf(key);
+        if (ZooShard.shardOf(friend) != index) return removeRemote(id, friend);
+        return graph.unlink(id, idOf(friend));
+    }
+
+    @Override
+    public boolean areFriends(long key, long friend) {
+        int id = idOf(key);
+        if (ZooShard.shardOf(friend) != index) return indexOfRemote(id, friend) >= 0;
+        return graph.areFriends(id, idOf(friend));
+    }
+
+    @Override
+    public long[] friends(long key) {
+        int id = idOf(key);
+        int degree = graph.degree(id);
+        long[] friends = new long[degree + remoteDegrees[id]];
+        for (int i = 0; i < degree; i++) friends[i] = keys[graph.friend(id, i)];
+        if (remote[id] != null) {
+            System.arraycopy(remote[id], 0, friends, degree, remoteDegrees[id]);
+        }
+        return friends;
+    }
+
+    @Override
+    public long[][] friends(long[] keys) {
+        long[][] friends = new long[keys.length][];
+        for (int i = 0; i < keys.length; i++) friends[i] = friends(keys[i]);
+        return friends;
+    }
+
+    @Override
+    public int size() {
+        return graph.size();
+    }
+
+    @Override
+    public long[][] decide(long seed, int[] sizes) {
+        int n = graph.size();
+        ensureDayCapacity(n);
+        daySize = n;
+        shards = sizes.length;
+        Messages[] outbox = newOutbox(shards);
+        long total = 0;
+        for (int size : sizes) total += size;
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many animals: " + total);
+        }
+        RandomSource random = RandomSource.of(seed);
+        for (int id = 0; id < n; id++) {
+            lostLocal[id] = -1;
+            lostRemote[id] = -1;
+            gainedLocal[id] = -1;
+            gainedRemote[id] = -1;
+            lostByBoth[id] = false;
+            // lose a friend
+            int degree = graph.degree(id);
+            int friends = degree + remoteDegrees[id];
+            if (friends != 0) {
+                int i = random.nextInt(friends);
+                if (i < degree) {
+                    lostLocal[id] = graph.friend(id, i);
+                } else {
+                    long friend = remote[id][i - degree];
+                    lostRemote[id] = friend;
+                    outbox[ZooShard.shardOf(friend)].add(LOST, keys[id], friend);
+                }
+            }
+            // make a friend
+            if (total < 2) continue;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                int candidate = random.nextInt((int) total);
+                int shard = 0;
+                while (candidate >= sizes[shard]) candidate -= sizes[shard++];
+                if (shard != index) {
+                    gainedRemote[id] = (long) shard << 32 | candidate;
+                    outbox[shard].add(ASKED, keys[id], (long) id << 32 | candidate);
+                    break;
+                }
+                if (candidate == id ||
+                        candidate != lostLocal[id] && graph.areFriends(id, candidate)) {
+                    continue;
+                }
+                gainedLocal[id] = candidate;
+                break;
+            }
+        }
+        return toArrays(outbox);
+    }
+
+    @Override
+    public long[][] exchange(long[] inbox) {
+        int n = daySize;
+        // first the friendships lost, then the new ones, which may
+        // restore some of them; like a day of a zoo, a friendship chosen
+        // by both animals is counted once
+        for (int id = 0; id < n; id++) {
+            if (lostLocal[id] >= 0 && graph.unlink(id, lostLocal[id])) {
+                dayLost++;
+            }
+        }
+        for (int m = 0; m < inbox.length; m += 3) {
+            if (inbox[m] != LOST) continue;
+            long from = inbox[m + 1];
+            int id = idOf(inbox[m + 2]);
+            if (lostRemote[id] == from) lostByBoth[id] = true;
+            removeRemote(id, from);
+        }
+        for (int id = 0; id < n; id++) {
+            long friend = lostRemote[id];
+            if (friend < 0) continue;
+            boolean removed = removeRemote(id, friend);
+            // the message of the friend already removed a friendship lost
+            // by both, which the shard of the lower key counts
+            if (lostByBoth[id] ? keys[id] < friend : removed) dayLost++;
+        }
+        for (int id = 0; id < n; id++) {
+            if (gainedLocal[id] >= 0 && graph.link(id, gainedLocal[id])) {
+                dayEstablished++;
+            }
+        }
+        Messages[] outbox = newOutbox(shards);
+        for (int m = 0; m < inbox.length; m += 3) {
+            if (inbox[m] != ASKED) continue;
+            long from = inbox[m + 1];
+            int shard = ZooShard.shardOf(from);
+            int fromIndex = (int) (inbox[m + 2] >>> 32);
+            int id = (int) inbox[m + 2];
+            boolean asked = gainedRemote[id] == ((long) shard << 32 | fromIndex);
+            if (asked && keys[id] < from) continue; // accepted by the other shard
+            // a friend at the beginning of the day, other than the one
+            // lost by the asking animal, is rejected
+            if (indexOfRemote(id, from) >= 0 ||
+                    lostRemote[id] == from && !lostByBoth[id]) {
+                continue;
+            }
+            // counted by the asking shard when confirmed
+            addRemote(id, from);
+            outbox[shard].add(ACCEPTED, from, keys[id]);
+        }
+        return toArrays(outbox);
+    }
+
+    @Override
+    public long[] confirm(long[] inbox) {
+        for (int m = 0; m < inbox.length; m += 3) {
+            if (inbox[m] != ACCEPTED) continue;
+            int id = idOf(inbox[m + 1]);
+            if (addRemote(id, inbox[m + 2])) dayEstablished++;
+        }
+        long[] counts = { dayLost, dayEstablished };
+        dayLost = 0;
+        dayEstablished = 0;
+        daySize = 0;
+        return counts;
+    }
+
+    @Override
+    public long[] degreeHistogram() {
+        int n = graph.size();
+        int maxDegree = 0;
+        for (int id = 0; id < n; id++) {
+            maxDegree = Math.max(maxDegree, graph.degree(id) + remoteDegrees[id]);
+        }
+        long[] histogram = new long[maxDegree + 1];
+        for (int id = 0; id < n; id++) {
+            histogram[graph.degree(id) + remoteDegrees[id]]++;
+        }
+        return histogram;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private int idOf(long key) {
+        Integer id = ids.get(key);
+        if (id == null) throw new IllegalArgumentException("No such animal: " + key);
+        return id;
+    }
+
+    private int indexOfRemote(int id, long friend) {
+        long[] row = remote[id];
+        return row == null ? -1 : Arrays.binarySearch(row, 0, remoteDegrees[id], friend);
+    }
+
+    private boolean addRemote(int id, long friend) {
+        long[] row = remote[id];
+        int degree = remoteDegrees[id];
+        int i = row == null ? -1 : Arrays.binarySearch(row, 0, degree, friend);
+        if (i >= 0) return false;
+        i = -i - 1;
+        if (row == null) {
+            row = remote[id] = new long[4];
+        } else if (degree == row.length) {
+            row = remote[id] = Arrays.copyOf(row, degree + (degree >> 1));
+        }
+        System.arraycopy(row, i, row, i + 1, degree - i);
+        row[i] = friend;
+        remoteDegrees[id] = degree + 1;
+        return true;
+    }
+
+    private boolean removeRemote(int id, long friend) {
+        int i = indexOfRemote(id, friend);
+        if (i < 0) return false;
+        int degree = --remoteDegrees[id];
+        System.arraycopy(remote[id], i + 1, remote[id], i, degree - i);
+        return true;
+    }
+
+    private void ensureDayCapacity(int n) {
+        if (lostLocal.length >= n) return;
+        int capacity = Math.max(n, lostLocal.length + (lostLocal.length >> 1));
+        lostLocal = new int[capacity];
+        lostRemote = new long[capacity];
+        gainedLocal = new int[capacity];
+        gainedRemote = new long[capacity];
+        lostByBoth = new boolean[capacity];
+    }
+
+    private static Messages[] newOutbox(int shards) {
+        Messages[] outbox = new Messages[shards];
+        for (int s = 0; s < shards; s++) outbox[s] = new Messages();
+        return outbox;
+    }
+
+    private static long[][] toArrays(Messages[] outbox) {
+        long[][] arrays = new long[outbox.length][];
+        for (int s = 0; s < outbox.length; s++) arrays[s] = outbox[s].toArray();
+        return arrays;
+    }
+
+    /**
+     * A growing array of messages.
+     */
+    private static final class Messages {
+        private long[] values = NO_KEYS;
+        private int size;
+
+        void add(long kind, long first, long second) {
+            if (size + 3 > values.length) {
+                values = Arrays.copyOf(values, Math.max(48, values.length * 2));
+            }
+            values[size++] = kind;
+            values[size++] = first;
+            values[size++] = second;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static com.lisandrofernandez.zoo.SlabAllocator.NONE;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The rows of friends of a graph in blocks of a {@link SlabAllocator},
+ * outside the heap. The heap only holds a {@code long} handle and an
+ * {@code int} degree per animal, so the number of friendships does not
+ * add to the work of the garbage collector.
+ *
+ * <p>
+ * The rows grow by half and shrink to twice their degree when a quarter
+ * full, as on the heap, except that the blocks are powers of two and
+ * are given back to the allocator for reuse. A snapshot copies the rows
+ * to the heap.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class OffHeapFriendRows extends FriendRows {
+    private static final int MIN_CAPACITY = 4;
+
+    private final SlabAllocator allocator;
+    private long[] handles;
+    private int[] degrees;
+
+    OffHeapFriendRows(int capacity, SlabAllocator allocator) {
+        this.allocator = allocator;
+        handles = new long[capacity];
+        degrees = new int[capacity];
+        Arrays.fill(handles, NONE);
+    }
+
+    /**
+     * Returns the number of bytes reserved outside the heap.
+     */
+    long reservedBytes() {
+        return allocator.reservedBytes();
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        int old = handles.length;
+        if (capacity <= old) return;
+        handles = Arrays.copyOf(handles, capacity);
+        degrees = Arrays.copyOf(degrees, capacity);
+        Arrays.fill(handles, old, capacity, NONE);
+    }
+
+    @Override
+    int degree(int id) {
+        return degrees[id];
+    }
+
+    @Override
+    int friend(int id, int index) {
+        long handle = handles[id];
+        return allocator.buffer(handle).get(SlabAllocator.offset(handle) + index);
+    }
+
+    @Override
+    int indexOf(int id, int friend) {
+        int d = degrees[id];
+        if (d == 0) return -1;
+        long handle = handles[id];
+        return search(allocator.buffer(handle), SlabAllocator.offset(handle), d, friend);
+    }
+
+    @Override
+    int[] friendIds(int id) {
+        int d = degrees[id];
+        int[] row = new int[d];
+        if (d == 0) return row;
+        long handle = handles[id];
+        IntBuffer slab = allocator.buffer(handle).duplicate();
+        ((Buffer) slab).position(SlabAllocator.offset(handle));
+        slab.get(row);
+        return row;
+    }
+
+    @Override
+    boolean insert(int id, int friend) {
+        int n = degrees[id];
+        long handle = handles[id];
+        if (n == 0) {
+            handle = allocator.allocate(MIN_CAPACITY);
+            allocator.buffer(handle).put(SlabAllocator.offset(handle), friend);
+            handles[id] = handle;
+            degrees[id] = 1;
+            return true;
+        }
+        IntBuffer slab = allocator.buffer(handle);
+        int base = SlabAllocator.offset(handle);
+        int i = search(slab, base, n, friend);
+        if (i >= 0) return false;
+        i = -i - 1;
+        if (n == SlabAllocator.capacity(handle)) {
+            long grown = allocator.allocate(n + (n >> 1));
+            IntBuffer to = allocator.buffer(grown);
+            int toBase = SlabAllocator.offset(grown);
+            copy(slab, base, to, toBase, i);
+            copy(slab, base + i, to, toBase + i + 1, n - i);
+            to.put(toBase + i, friend);
+            allocator.free(handle);
+            handles[id] = grown;
+        } else {
+            for (int k = base + n; k > base + i; k--) slab.put(k, slab.get(k - 1));
+            slab.put(base + i, friend);
+        }
+        degrees[id] = n + 1;
+        return true;
+    }
+
+    @Override
+    boolean remove(int id, int friend) {
+        int n = degrees[id];
+        if (n == 0) return false;
+        long handle = handles[id];
+        IntBuffer slab = allocator.buffer(handle);
+        int base = SlabAllocator.offset(handle);
+        int i = search(slab, base, n, friend);
+        if (i < 0) return false;
+        degrees[id] = --n;
+        if (n == 0) {
+            allocator.free(handle);
+            handles[id] = NONE;
+        } else if (SlabAllocator.capacity(handle) > MIN_CAPACITY &&
+                   n < SlabAllocator.capacity(handle) >> 2) {
+            long shrunk = allocator.allocate(n << 1);
+            IntBuffer to = allocator.buffer(shrunk);
+            int toBase = SlabAllocator.offset(shrunk);
+            copy(slab, base, to, toBase, i);
+            copy(slab, base + i + 1, to, toBase + i, n - i);
+            allocator.free(handle);
+            handles[id] = shrunk;
+        } else {
+            for (int k = base + i; k < base + n; k++) slab.put(k, slab.get(k + 1));
+        }
+        return true;
+    }
+
+    @Override
+    void set(int id, int[] row, int degree) {
+        clear(id);
+        if (degree == 0) return;
+        long handle = allocator.allocate(degree);
+        IntBuffer slab = allocator.buffer(handle).duplicate();
+        ((Buffer) slab).position(SlabAllocator.offset(handle));
+        slab.put(row, 0, degree);
+        handles[id] = handle;
+        degrees[id] = degree;
+    }
+
+    @Override
+    void clear(int id) {
+        if (handles[id] != NONE) allocator.free(handles[id]);
+        handles[id] = NONE;
+        degrees[id] = 0;
+    }
+
+    @Override
+    void move(int from, int to) {
+        handles[to] = handles[from];
+        degrees[to] = degrees[from];
+        handles[from] = NONE;
+        degrees[from] = 0;
+    }
+
+    @Override
+    void dropMarked(int id, boolean[] marks) {
+        int n = degrees[id];
+        if (n == 0) return;
+        long handle = handles[id];
+        IntBuffer slab = allocator.buffer(handle);
+        int base = SlabAllocator.offset(handle);
+        int d = 0;
+        for (int i = 0; i < n; i++) {
+            int f = slab.get(base + i);
+            if (!marks[f]) slab.put(base + d++, f);
+        }
+        degrees[id] = d;
+        fit(id);
+    }
+
+    @Override
+    void renumber(int id, int[] newIds, int newSize) {
+        int[] row = friendIds(id);
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] >= newSize) row[i] = newIds[row[i] - newSize];
+        }
+        Arrays.sort(row);
+        write(handles[id], row, row.length);
+    }
+
+    @Override
+    void merge(int id, int[] offsets, int[] targets) {
+        int from = offsets[id], to = offsets[id + 1];
+        if (from == to) return;
+        int[] row = friendIds(id);
+        int d = row.length;
+        int added = 0;
+        for (int a = 0, b = from; b < to; b++) {
+            int f = targets[b];
+            while (a < d && row[a] < f) a++;
+            if (a == d || row[a] != f) {
+                targets[b] = ~f;
+                added++;
+            }
+        }
+        if (added == 0) return;
+        int[] merged = new int[d + added];
+        int a = 0, b = from, k = 0;
+        while (b < to) {
+            int f = targets[b];
+            if (f >= 0) { // already a friend, copied from the row
+                b++;
+            } else if (a < d && row[a] < ~f) {
+                merged[k++] = row[a++];
+            } else {
+                merged[k++] = ~f;
+                b++;
+            }
+        }
+        while (a < d) merged[k++] = row[a++];
+        set(id, merged, k);
+    }
+
+    @Override
+    void drop(int id, int[] offsets, int[] targets) {
+        int from = offsets[id], to = offsets[id + 1];
+        if (from == to) return;
+        int[] row = friendIds(id);
+        int d = row.length;
+        int dropped = 0;
+        for (int a = 0, b = from; b < to; b++) {
+            int f = targets[b];
+            while (a < d && row[a] < f) a++;
+            if (a < d && row[a] == f) {
+                targets[b] = ~f;
+                dropped++;
+            }
+        }
+        if (dropped == 0) return;
+        int k = 0;
+        for (int a = 0, b = from; a < d; a++) {
+            while (b < to && (targets[b] < 0 ? ~targets[b] : targets[b]) < row[a]) b++;
+            if (b < to && targets[b] == ~row[a]) continue; // dropped
+            row[k++] = row[a];
+        }
+        write(handles[id], row, k);
+        degrees[id] = k;
+        fit(id);
+    }
+
+    @Override
+    int[][] snapshot(int size) {
+        int[][] rows = new int[size][];
+        for (int id = 0; id < size; id++) rows[id] = friendIds(id);
+        return rows;
+    }
+
+    @Override
+    int[] degrees(int size) {
+        return Arrays.copyOf(degrees, size);
+    }
+
+    /**
+     * Frees the row of an animal if empty, or moves it to a smaller
+     * block if a quarter full.
+     */
+    private void fit(int id) {
+        int d = degrees[id];
+        long handle = handles[id];
+        if (d == 0) {
+            clear(id);
+        } else if (SlabAllocator.capacity(handle) > MIN_CAPACITY &&
+                   d < SlabAllocator.capacity(handle) >> 2) {
+            long shrunk = allocator.allocate(d << 1);
+            copy(allocator.buffer(handle), SlabAllocator.offset(handle),
+                 allocator.buffer(shrunk), SlabAllocator.offset(shrunk), d);
+            allocator.free(handle);
+            handles[id] = shrunk;
+        }
+    }
+
+    private void write(long handle, int[] row, int length) {
+        if (length == 0) return;
+        IntBuffer slab = allocator.buffer(handle).duplicate();
+        ((Buffer) slab).position(SlabAllocator.offset(handle));
+        slab.put(row, 0, length);
+    }
+
+    private static int search(IntBuffer slab, int base, int n, int key) {
+        int lo = 0, hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = slab.get(base + mid);
+            if (v < key) {
+                lo = mid + 1;
+            } else if (v > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private static void copy(IntBuffer from, int fromIndex, IntBuffer to,
+                             int toIndex, int length) {
+        for (int i = 0; i < length; i++) to.put(toIndex + i, from.get(fromIndex + i));
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The days of a {@link FriendshipGraph} computed by several threads.
+ * The buffers of a day are kept for the next one, so living many days
+ * in a row does not allocate them again.
+ *
+ * <p>
+ * The day runs in two phases. First every animal decides, against the
+ * friendships at the beginning of the day, which friend it loses and
+ * which animal it makes friend with. Then the decisions are applied:
+ * every broken or new friendship is routed to both animals and the
+ * friends of each animal are updated by a single task, so no locking
+ * is needed and the friendships stay symmetric.
+ *
+ * <p>
+ * The animals are split in chunks of a fixed size and each chunk draws
+ * from its own source, split from the given one in chunk order. The
+ * result of a day therefore depends only on the graph and the state of
+ * the source, not on the number of threads or how the tasks were
+ * scheduled.
+ *
+ * <p>
+ * Since the decisions are taken at the beginning of the day, two
+ * animals may decide to break or to make the same friendship. Such a
+ * change is applied, and reported, once. When a friendship is both
+ * broken and made (an animal loses a friend and makes friends with it
+ * again), it is made, as it would be if that animal lived its day
+ * alone.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class ParallelDay {
+    /**
+     * The number of animals handled by a single task.
+     */
+    static final int CHUNK_SIZE = 1024;
+
+    private final FriendshipGraph graph;
+    private int size;
+
+    // scratch buffers, kept between days and grown when the zoo grows
+    private int[] lost = new int[0];
+    private int[] gained = new int[0];
+    private int[] offsets = new int[1];
+    private int[] next = new int[0];
+    private int[] targets = new int[0];
+
+    /**
+     * Constructs the days of the given graph.
+     *
+     * @param graph the graph
+     */
+    ParallelDay(FriendshipGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Lives a day. The results of the previous day are discarded.
+     *
+     * @param pool the pool running the tasks
+     * @param random the source of randomness of this day
+     * @param sampler the prepared sampler of new friends, or null to
+     *        draw them uniformly
+     */
+    void live(ForkJoinPool pool, RandomSource random, FriendshipSampler sampler) {
+        decide(pool, random, sampler);
+        if (size < 2) return;
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        groupChangesByAnimal();
+        pool.invoke(new ChunkTask(0, chunks, this::applyChunk));
+        graph.modified();
+        if (graph.isHashingFriendships()) {
+            for (int id = 0; id < size; id++) {
+                graph.rehash(id, lost[id]);
+                graph.rehash(id, gained[id]);
+            }
+        }
+    }
+
+    /**
+     * Decides the changes of a day without applying them, so that the
+     * caller applies the friendships lost and then the friendships made
+     * reported by {@link #lostBy(int)} and {@link #gainedBy(int)}. The
+     * results of the previous day are discarded.
+     *
+     * @param pool the pool running the tasks
+     * @param random the source of randomness of this day
+     * @param sampler the prepared sampler of new friends, or null to
+     *        draw them uniformly
+     */
+    void decide(ForkJoinPool pool, RandomSource random, FriendshipSampler sampler) {
+        size = graph.size();
+        if (lost.length < size) {
+            lost = new int[size];
+            gained = new int[size];
+            offsets = new int[size + 1];
+            next = new int[size];
+        }
+        if (size < 2) {
+            Arrays.fill(lost, 0, size, -1);
+            Arrays.fill(gained, 0, size, -1);
+            return;
+        }
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        RandomSource[] randoms = new RandomSource[chunks];
+        for (int c = 0; c < chunks; c++) randoms[c] = random.split();
+        pool.invoke(new ChunkTask(0, chunks,
+                                  c -> decideChunk(c, randoms[c], sampler)));
+    }
+
+    /**
+     * Returns the id of the friend the given animal lost, or -1 if it
+     * did not lose any friend or another animal already reported that
+     * friendship as lost.
+     */
+    int lostBy(int id) {
+        int friend = lost[id];
+        if (friend < 0 || friend < id && lost[friend] == id) return -1;
+        return friend;
+    }
+
+    /**
+     * Returns the id of the animal the given one made friends with, or
+     * -1 if it did not make any friend or another animal already
+     * reported that friendship as established.
+     */
+    int gainedBy(int id) {
+        int friend = gained[id];
+        if (friend < 0 || friend < id && gained[friend] == id) return -1;
+        return friend;
+    }
+
+    /**
+     * Drops the friendship made by the given animal, which the caller
+     * did not apply, so that neither animal reports it.
+     */
+    void dropGained(int id) {
+        int friend = gained[id];
+        gained[id] = -1;
+        if (friend >= 0 && gained[friend] == id) gained[friend] = -1;
+    }
+
+    /**
+     * Decides the friend lost and the friend made by every animal in a
+     * chunk. The graph is only read.
+     */
+    private void decideChunk(int chunk, RandomSource random,
+                             FriendshipSampler sampler) {
+        int to = Math.min(size, (chunk + 1) * CHUNK_SIZE);
+        for (int id = chunk * CHUNK_SIZE; id < to; id++) {
+            int degree = graph.degree(id);
+            int friendToLose = degree == 0
+                ? -1 : graph.friend(id, random.nextInt(degree));
+            lost[id] = friendToLose;
+            gained[id] = sampler == null
+                ? graph.randomNotFriend(id, friendToLose, random)
+                : sampler.randomFriend(id, friendToLose, random);
+        }
+    }
+
+    /**
+     * Groups the changes by the animal whose friends they modify, in
+     * compressed rows: the changes of animal i are in
+     * {@code targets[offsets[i]..offsets[i + 1])}. A lost friend f is
+     * stored as {@code ~f} and a new friend f as {@code f}.
+     */
+    private void groupChangesByAnimal() {
+        Arrays.fill(offsets, 0, size + 1, 0);
+        for (int id = 0; id < size; id++) {
+            if (lost[id] >= 0) {
+                offsets[id + 1]++;
+                offsets[lost[id] + 1]++;
+            }
+            if (gained[id] >= 0) {
+                offsets[id + 1]++;
+                offsets[gained[id] + 1]++;
+            }
+        }
+        for (int id = 0; id < size; id++) offsets[id + 1] += offsets[id];
+        if (targets.length < offsets[size]) targets = new int[4 * size];
+        System.arraycopy(offsets, 0, next, 0, size);
+        for (int id = 0; id < size; id++) {
+            int f = lost[id];
+            if (f >= 0) {
+                targets[next[id]++] = ~f;
+                targets[next[f]++] = ~id;
+            }
+            f = gained[id];
+            if (f >= 0) {
+                targets[next[id]++] = f;
+                targets[next[f]++] = id;
+            }
+        }
+    }
+
+    /**
+     * Applies the changes of every animal in a chunk: first the lost
+     * friends, then the new ones. Only the friends of the animals in
+     * the chunk are modified.
+     */
+    private void applyChunk(int chunk) {
+        int to = Math.min(size, (chunk + 1) * CHUNK_SIZE);
+        for (int id = chunk * CHUNK_SIZE; id < to; id++) {
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                if (targets[i] < 0) graph.removeHalf(id, ~targets[i]);
+            }
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                if (targets[i] >= 0) graph.addHalf(id, targets[i]);
+            }
+        }
+    }
+}
@@ -27,7 +27,7 @@ package com.lisandrofernandez.zoo;
  * @author Lisandro Fernandez
  */
 
-public class Parrot extends Bird {
+public class Parrot extends Bird implements ReadOnlyParrot {
     Boolean speak;
 
     /**
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+/**
+ * A source of random numbers for the days of a {@link Zoo}.
+ *
+ * <p>
+ * A source can be split into a new, independent source, so that every
+ * thread of a parallel day draws from its own source without any
+ * contention. Two sources created with the same seed and split in the
+ * same order produce the same numbers, which makes the days of a zoo
+ * reproducible.
+ *
+ * <p>
+ * Implementations are not required to be thread-safe.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public interface RandomSource {
+
+    /**
+     * Returns a pseudorandom {@code int} in {@code [0, bound)}.
+     *
+     * @param  bound the upper bound (exclusive)
+     * @return a pseudorandom {@code int} in {@code [0, bound)}
+     * @throws IllegalArgumentException if the bound is not positive
+     */
+    int nextInt(int bound);
+
+    /**
+     * Returns a new source which shares no state with this one. The
+     * numbers of the new source depend only on the state of this one.
+     *
+     * @return a new source
+     */
+    RandomSource split();
+
+    /**
+     * Returns a source seeded from the current time and the sources
+     * created before.
+     *
+     * @return a new source
+     */
+    static RandomSource create() {
+        return new SplittableRandomSource();
+    }
+
+    /**
+     * Returns a source with the given seed.
+     *
+     * @param  seed the seed
+     * @return a new source
+     */
+    static RandomSource of(long seed) {
+        return new SplittableRandomSource(seed);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+/**
+ * This interface represents an animal which can be read but not
+ * changed through it. The zoo accepts any {@code ReadOnlyAnimal}: the
+ * {@link Animal} beans, which can be changed through their setters, and
+ * the immutable animals, such as {@link ImmutableAnimal}, whose fields
+ * are final.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public interface ReadOnlyAnimal {
+
+    /**
+     * Returns the animal name.
+     *
+     * @return the animal name
+     */
+    String getName();
+
+    /**
+     * Returns the animal favourite food.
+     *
+     * @return the animal favourite food
+     */
+    String getFavouriteFood();
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static com.lisandrofernandez.zoo.ShardServer.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * A shard of a {@link ShardedZoo} served by a {@link ShardServer} in
+ * another process. Every call sends a request over the connection to
+ * the server and waits for its response.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class RemoteShard implements ZooShard {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Connects to the server of a shard, which creates the shard empty.
+     */
+    RemoteShard(InetSocketAddress address, int index) throws IOException {
+        socket = new Socket();
+        try {
+            socket.connect(address);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream(), BUFFER_SIZE));
+            out = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream(), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(index);
+            call();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void add(long key, ReadOnlyAnimal animal) throws IOException {
+        byte[] bytes = toBytes(animal);
+        out.writeByte(ADD);
+        out.writeLong(key);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        call();
+    }
+
+    @Override
+    public long[] remove(long key) throws IOException {
+        out.writeByte(REMOVE);
+        out.writeLong(key);
+        call();
+        return readLongs(in);
+    }
+
+    @Override
+    public boolean link(long key, long friend) throws IOException {
+        return call(LINK, key, friend);
+    }
+
+    @Override
+    public boolean unlink(long key, long friend) throws IOException {
+        return call(UNLINK, key, friend);
+    }
+
+    @Override
+    public boolean areFriends(long key, long friend) throws IOException {
+        return call(ARE_FRIENDS, key, friend);
+    }
+
+    @Override
+    public long[] friends(long key) throws IOException {
+        out.writeByte(FRIENDS);
+        out.writeLong(key);
+        call();
+        return readLongs(in);
+    }
+
+    @Override
+    public long[][] friends(long[] keys) throws IOException {
+        out.writeByte(FRIENDS_OF_ALL);
+        writeLongs(out, keys);
+        call();
+        return readLongArrays(in);
+    }
+
+    @Override
+    public int size() throws IOException {
+        out.writeByte(SIZE);
+        call();
+        return in.readInt();
+    }
+
+    @Override
+    public long[][] decide(long seed, int[] sizes) throws IOException {
+        out.writeByte(DECIDE);
+        out.writeLong(seed);
+        out.writeInt(sizes.length);
+        for (int size : sizes) out.writeInt(size);
+        call();
+        return readLongArrays(in);
+    }
+
+    @Override
+    public long[][] exchange(long[] inbox) throws IOException {
+        out.writeByte(EXCHANGE);
+        writeLongs(out, inbox);
+        call();
+        return readLongArrays(in);
+    }
+
+    @Override
+    public long[] confirm(long[] inbox) throws IOException {
+        out.writeByte(CONFIRM);
+        writeLongs(out, inbox);
+        call();
+        return readLongs(in);
+    }
+
+    @Override
+    public long[] degreeHistogram() throws IOException {
+        out.writeByte(DEGREE_HISTOGRAM);
+        call();
+        return readLongs(in);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private boolean call(byte request, long key, long friend)
+            throws IOException {
+        out.writeByte(request);
+        out.writeLong(key);
+        out.writeLong(friend);
+        call();
+        return in.readBoolean();
+    }
+
+    /**
+     * Sends the request written and reads the status of the response.
+     */
+    private void call() throws IOException {
+        out.flush();
+        byte status = in.readByte();
+        if (status == FAILED) {
+            throw new IOException("Shard failed: " + in.readUTF());
+        } else if (status != OK) {
+            throw new IOException("Not a shard server");
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A server of a shard of a {@link ShardedZoo} in another process of the
+ * same machine.
+ *
+ * <p>
+ * The server listens on a port of the loopback address and serves one
+ * sharded zoo at a time, which connects with
+ * {@link ShardedZoo#connect(java.util.List)}. The shard is created
+ * empty when the zoo connects and dropped when it disconnects, so the
+ * animals and friendships of the shard live only in the heap of the
+ * server.
+ *
+ * <p>
+ * Run a shard in its own process with:
+ *
+ * <pre>
+ * $ java -cp target/zoo.jar com.lisandrofernandez.zoo.ShardServer 7001
+ * </pre>
+ *
+ * @author Lisandro Fernandez
+ */
+
+public final class ShardServer implements Closeable {
+    static final int MAGIC = 0x5A534844; // "ZSHD"
+    static final int VERSION = 1;
+    static final int BUFFER_SIZE = 1 << 16;
+
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte LINK = 3;
+    static final byte UNLINK = 4;
+    static final byte ARE_FRIENDS = 5;
+    static final byte FRIENDS = 6;
+    static final byte SIZE = 7;
+    static final byte DECIDE = 8;
+    static final byte EXCHANGE = 9;
+    static final byte CONFIRM = 10;
+    static final byte DEGREE_HISTOGRAM = 11;
+    static final byte FRIENDS_OF_ALL = 12;
+
+    static final byte OK = 0;
+    static final byte FAILED = 1;
+
+    private final ServerSocket socket;
+
+    /**
+     * Constructs a server listening on the given port of the loopback
+     * address.
+     *
+     * @param  port the port, or 0 for any free port
+     * @throws IllegalArgumentException if the port is out of range
+     * @throws IOException if the port cannot be bound
+     */
+    public ShardServer(int port) throws IOException {
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("Illegal port: " + port);
+        }
+        socket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Serves the sharded zoos which connect, one at a time, until the
+     * server is closed.
+     *
+     * @throws IOException if an I/O error occurs listening
+     */
+    public void run() throws IOException {
+        while (true) {
+            Socket connection;
+            try {
+                connection = socket.accept();
+            } catch (SocketException e) {
+                if (socket.isClosed()) return;
+                throw e;
+            }
+            try (Socket c = connection) {
+                c.setTcpNoDelay(true);
+                serve(c);
+            } catch (IOException e) {
+                // the zoo is gone, along with its shard
+                if (socket.isClosed()) return;
+            }
+        }
+    }
+
+    /**
+     * Stops listening. The zoo being served, if any, is disconnected.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Serves a shard on the given port until the process is killed.
+     *
+     * @param  args the port
+     * @throws IOException if an I/O error occurs listening
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: ShardServer <port>");
+            System.exit(1);
+        }
+        try (ShardServer server = new ShardServer(Integer.parseInt(args[0]))) {
+            System.out.println("Shard listening on port " + server.getPort());
+            server.run();
+        }
+    }
+
+    private static void serve(Socket connection) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                connection.getInputStream(), BUFFER_SIZE));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                connection.getOutputStream(), BUFFER_SIZE));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a sharded zoo");
+        }
+        LocalShard shard = new LocalShard(in.readInt());
+        out.writeByte(OK);
+        out.flush();
+        while (true) {
+            int request = in.read();
+            if (request < 0) return;
+            try {
+                // the whole request is read before the shard may fail
+                switch (request) {
+                case ADD:
+                    long key = in.readLong();
+                    ReadOnlyAnimal animal = readAnimal(in);
+                    shard.add(key, animal);
+                    out.writeByte(OK);
+                    break;
+                case REMOVE:
+                    key = in.readLong();
+                    long[] friends = shard.remove(key);
+                    out.writeByte(OK);
+                    writeLongs(out, friends);
+                    break;
+                case LINK:
+                case UNLINK:
+                case ARE_FRIENDS:
+                    key = in.readLong();
+                    long friend = in.readLong();
+                    boolean result = request == LINK ? shard.link(key, friend)
+                        : request == UNLINK ? shard.unlink(key, friend)
+                        : shard.areFriends(key, friend);
+                    out.writeByte(OK);
+                    out.writeBoolean(result);
+                    break;
+                case FRIENDS:
+                    key = in.readLong();
+                    friends = shard.friends(key);
+                    out.writeByte(OK);
+                    writeLongs(out, friends);
+                    break;
+                case FRIENDS_OF_ALL:
+                    long[] keys = readLongs(in);
+                    long[][] friendsOfAll = shard.friends(keys);
+                    out.writeByte(OK);
+                    writeLongArrays(out, friendsOfAll);
+                    break;
+                case SIZE:
+                    int size = shard.size();
+                    out.writeByte(OK);
+                    out.writeInt(size);
+                    break;
+                case DECIDE:
+                    long seed = in.readLong();
+                    int[] sizes = new int[in.readInt()];
+                    for (int s = 0; s < sizes.length; s++) sizes[s] = in.readInt();
+                    long[][] outbox = shard.decide(seed, sizes);
+                    out.writeByte(OK);
+                    writeLongArrays(out, outbox);
+                    break;
+                case EXCHANGE:
+                    long[] inbox = readLongs(in);
+                    outbox = shard.exchange(inbox);
+                    out.writeByte(OK);
+                    writeLongArrays(out, outbox);
+                    break;
+                case CONFIRM:
+                    inbox = readLongs(in);
+                    long[] counts = shard.confirm(inbox);
+                    out.writeByte(OK);
+                    writeLongs(out, counts);
+                    break;
+                case DEGREE_HISTOGRAM:
+                    long[] histogram = shard.degreeHistogram();
+                    out.writeByte(OK);
+                    writeLongs(out, histogram);
+                    break;
+                default:
+                    throw new IOException("Unknown request: " + request);
+                }
+            } catch (RuntimeException e) {
+                out.writeByte(FAILED);
+                out.writeUTF(String.valueOf(e));
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Returns the record of an animal, as saved in a zoo file.
+     *
+     * @throws IllegalArgumentException if the class of the animal is
+     *         unknown to the format
+     */
+    static byte[] toBytes(ReadOnlyAnimal animal) {
+        ByteBuffer buffer = ByteBuffer.allocate(ZooFile.maxAnimalBytes(animal))
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        ZooFile.putAnimal(buffer, animal);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    static ReadOnlyAnimal readAnimal(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            return ZooFile.getAnimal(buffer, null);
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Corrupt animal", e);
+        }
+    }
+
+    static void writeLongs(DataOutputStream out, long[] values)
+            throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) out.writeLong(value);
+    }
+
+    static long[] readLongs(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Illegal length: " + length);
+        long[] values = new long[length];
+        for (int i = 0; i < length; i++) values[i] = in.readLong();
+        return values;
+    }
+
+    static void writeLongArrays(DataOutputStream out, long[][] arrays)
+            throws IOException {
+        out.writeInt(arrays.length);
+        for (long[] values : arrays) writeLongs(out, values);
+    }
+
+    static long[][] readLongArrays(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Illegal length: " + length);
+        long[][] arrays = new long[length][];
+        for (int i = 0; i < length; i++) arrays[i] = readLongs(in);
+        return arrays;
+    }
+}
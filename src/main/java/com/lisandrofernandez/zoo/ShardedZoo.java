@@ -0,0 +1,574 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A zoo whose animals are partitioned into shards, each one holding its
+ * animals, their friendships and the halves of their friendships with
+ * the animals of other shards. The shards live in this process or in
+ * {@linkplain ShardServer servers} in other processes of the machine, so
+ * the friendships of a zoo are not bounded by a single heap.
+ *
+ * <p>
+ * An animal goes to the shard chosen by its hash code. A friendship
+ * between animals of different shards is kept by both shards, each with
+ * the key of the animal of the other one, so the friends of an animal
+ * are found in its shard alone. This zoo only keeps the keys of the
+ * animals.
+ *
+ * <p>
+ * The shards live a day at the same time, as in
+ * {@link Zoo#liveDayInParallel}: every shard decides which friend its
+ * animals lose and which animals they ask for friendship looking at the
+ * friendships at the beginning of the day, then the shards exchange the
+ * changes involving other shards, and finally complete the friendships
+ * accepted by the other shards. An animal does not know which animals
+ * of other shards are its friends, so it may ask one which already is
+ * and then make no friend that day. The changes are not reported to an
+ * event sink.
+ *
+ * <p>
+ * A failure of a shard leaves the zoo in an undefined state, which
+ * should be closed.
+ *
+ * <p>
+ * This class is not thread-safe, like {@link Zoo}.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public class ShardedZoo implements Closeable {
+    private static final int MAX_SHARDS = 1 << 16;
+
+    private final ZooShard[] shards;
+    private final Map<ReadOnlyAnimal, Long> keys = new HashMap<>();
+    private final Map<Long, ReadOnlyAnimal> animals = new HashMap<>();
+    private final long[] nextKeys;
+    private final int[] sizes;
+    private final ExecutorService executor;
+    private RandomSource random = RandomSource.create();
+
+    /**
+     * Constructs an empty {@code ShardedZoo} with the given number of
+     * shards in this process.
+     *
+     * @param  shards the number of shards
+     * @throws IllegalArgumentException if the number of shards is not
+     *         positive or too large
+     */
+    public ShardedZoo(int shards) {
+        this(localShards(shards));
+    }
+
+    private ShardedZoo(ZooShard[] shards) {
+        this.shards = shards;
+        this.nextKeys = new long[shards.length];
+        this.sizes = new int[shards.length];
+        this.executor = Executors.newFixedThreadPool(shards.length, r -> {
+            Thread thread = new Thread(r, "zoo-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Connects an empty {@code ShardedZoo} to the servers of its shards,
+     * one shard per server. The shards are created empty in the servers
+     * and dropped when the zoo is closed.
+     *
+     * <p>
+     * The animals are sent to the servers as saved by
+     * {@link Zoo#save(java.nio.file.Path)}, so only the animals of the
+     * classes of this package can be added to the zoo.
+     *
+     * @param  addresses the addresses of the servers
+     * @return the zoo
+     * @throws NullPointerException if the list or any address in it is
+     *         null
+     * @throws IllegalArgumentException if the list is empty or too large
+     * @throws IOException if a server cannot be connected
+     * @see    ShardServer
+     */
+    public static ShardedZoo connect(List<InetSocketAddress> addresses)
+            throws IOException {
+        for (InetSocketAddress a : addresses) if (a == null) throw new NullPointerException();
+        checkShards(addresses.size());
+        ZooShard[] shards = new ZooShard[addresses.size()];
+        try {
+            for (int s = 0; s < shards.length; s++) {
+                shards[s] = new RemoteShard(addresses.get(s), s);
+            }
+        } catch (IOException e) {
+            for (ZooShard shard : shards) {
+                if (shard == null) break;
+                try {
+                    shard.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        return new ShardedZoo(shards);
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the index of the shard holding an animal.
+     *
+     * @param  animal the animal
+     * @return the index of the shard, or -1 if the animal is not in the
+     *         zoo
+     * @throws NullPointerException if the animal is null
+     */
+    public int getShardOf(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        Long key = keys.get(animal);
+        return key == null ? -1 : ZooShard.shardOf(key);
+    }
+
+    /**
+     * Returns the source of randomness of the days in this zoo.
+     *
+     * @return the source of randomness
+     */
+    public RandomSource getRandomSource() {
+        return random;
+    }
+
+    /**
+     * Sets the source of randomness of the days in this zoo. The seeds of
+     * the shards are drawn from it, so a source with the same seed gives
+     * the same days, whether the shards live in this process or not.
+     *
+     * @param  random the source of randomness
+     * @throws NullPointerException if the source is null
+     */
+    public void setRandomSource(RandomSource random) {
+        if (random == null) throw new NullPointerException();
+        this.random = random;
+    }
+
+    /**
+     * Adds an animal to the zoo if it is not present.
+     *
+     * @param  animal the animal to add
+     * @return {@code true} if the animal was not in the zoo
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the shards are in other
+     *         processes and the class of the animal cannot be sent to
+     *         them
+     * @throws UncheckedIOException if an I/O error occurs in a shard
+     */
+    public boolean addAnimal(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        if (keys.containsKey(animal)) return false;
+        int shard = Math.floorMod(spread(animal.hashCode()), shards.length);
+        long key = (long) shard << ZooShard.SHARD_SHIFT | nextKeys[shard];
+        try {
+            shards[shard].add(key, animal);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nextKeys[shard]++;
+        sizes[shard]++;
+        keys.put(animal, key);
+        animals.put(key, animal);
+        return true;
+    }
+
+    /**
+     * Removes an animal from the zoo if it is present, breaking all its
+     * friendships.
+     *
+     * @param  animal the animal to remove
+     * @return {@code true} if the animal was in the zoo
+     * @throws NullPointerException if the animal is null
+     * @throws UncheckedIOException if an I/O error occurs in a shard
+     */
+    public boolean removeAnimal(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        Long key = keys.get(animal);
+        if (key == null) return false;
+        int shard = ZooShard.shardOf(key);
+        try {
+            long[] friends = shards[shard].remove(key);
+            // the animal is gone from its shard, whatever happens to the
+            // halves of its friendships in other shards
+            keys.remove(animal);
+            animals.remove(key);
+            sizes[shard]--;
+            for (long friend : friends) {
+                shards[ZooShard.shardOf(friend)].unlink(friend, key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if an animal is in the zoo.
+     *
+     * @param  animal the whose presence in this zoo is to be tested
+     * @return {@code true} if the animal is in the zoo
+     * @throws NullPointerException if the animal is null
+     */
+    public boolean isAnimalPresent(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        return keys.containsKey(animal);
+    }
+
+    /**
+     * Returns the set of animals in the zoo. Changes to the set are not
+     * reflected in the zoo, and vice-versa.
+     *
+     * @return the set of animals in the zoo
+     */
+    public Set<ReadOnlyAnimal> getAnimals() {
+        return new HashSet<>(keys.keySet());
+    }
+
+    /**
+     * Returns the set of friends of an animal. Changes to the set are not
+     * reflected in the zoo, and vice-versa.
+     *
+     * @param  animal the animal
+     * @return the set of friends of the animal
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal is not in the zoo
+     * @throws UncheckedIOException if an I/O error occurs in a shard
+     */
+    public Set<ReadOnlyAnimal> getFriends(ReadOnlyAnimal animal) {
+        long key = keyOf(animal);
+        try {
+            return animalsOf(shards[ZooShard.shardOf(key)].friends(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the list of animals and their friends in the zoo. Changes
+     * to the list are not reflected in the zoo, and vice-versa.
+     *
+     * @return the list of animals and their friends in the zoo
+     * @throws UncheckedIOException if an I/O error occurs in a shard
+     */
+    public List<Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>>> getAnimalsAndFriends() {
+        // one call per shard, with the keys of all its animals
+        long[][] shardKeys = new long[shards.length][];
+        for (int s = 0; s < shards.length; s++) shardKeys[s] = new long[sizes[s]];
+        int[] counts = new int[shards.length];
+        for (long key : animals.keySet()) {
+            int shard = ZooShard.shardOf(key);
+            shardKeys[shard][counts[shard]++] = key;
+        }
+        List<long[][]> friends = onEveryShard(
+                (shard, s) -> shard.friends(shardKeys[s]));
+        List<Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>>> list = new ArrayList<>(keys.size());
+        for (int s = 0; s < shards.length; s++) {
+            for (int i = 0; i < shardKeys[s].length; i++) {
+                list.add(new Pair<>(animals.get(shardKeys[s][i]),
+                                    animalsOf(friends.get(s)[i])));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns {@code true} if the given animals are friends. If A is
+     * friend of B then B is friend of A.
+     *
+     * @param a the first animal
+     * @param b the second animal
+     * @return {@code true} if the animals are friends
+     * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals is
+     *         not in the zoo
+     * @throws UncheckedIOException if an I/O error occurs in a shard
+     */
+    public boolean areFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        long x = keyOf(a), y = keyOf(b);
+        try {
+            return shards[ZooShard.shardOf(x)].areFriends(x, y);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Establishes a friendship between two animals which are not
+     * friends. If A is friend of B then B is friend of A.
+     *
+     * <p>
+     * Note: an animal cannot be friend of itself.
+     *
+     * @param a the first animal to be friend
+     * @param b the second animal to be friend
+     * @return {@code true} if the animals were not friends and are
+     *         not equals
+     * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals is
+     *         not in the zoo
+     * @throws UncheckedIOException if an I/O error occurs in a shard
+     */
+    public boolean makeFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        long x = keyOf(a), y = keyOf(b);
+        if (x == y) return false; // cannot be friend of itself
+        try {
+            int shard = ZooShard.shardOf(x), other = ZooShard.shardOf(y);
+            if (!shards[shard].link(x, y)) return false;
+            if (other != shard) shards[other].link(y, x);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Breaks a friendship between two animals which are friends.
+     *
+     * @param a the first animal to break the friendship
+     * @param b the second animal to break the friendship
+     * @return {@code true} if the animals were friends
+     * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals is
+     *         not in the zoo
+     * @throws UncheckedIOException if an I/O error occurs in a shard
+     */
+    public boolean unmakeFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        long x = keyOf(a), y = keyOf(b);
+        try {
+            int shard = ZooShard.shardOf(x), other = ZooShard.shardOf(y);
+            if (!shards[shard].unlink(x, y)) return false;
+            if (other != shard) shards[other].unlink(y, x);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A day goes by in the zoo: every animal loses a friend, if it has
+     * any, and establishes friendship with another animal, computed by
+     * all the shards at the same time.
+     *
+     * @throws UncheckedIOException if an I/O error occurs in a shard
+     */
+    public void liveDay() {
+        liveDay(null);
+    }
+
+    /**
+     * Several days go by in the zoo, as in {@link #liveDay()}.
+     *
+     * @param  days the number of days
+     * @return the statistics of the days
+     * @throws IllegalArgumentException if the number of days is negative
+     * @throws UncheckedIOException if an I/O error occurs in a shard
+     */
+    public SimulationStats liveDays(int days) {
+        if (days < 0) throw new IllegalArgumentException("Illegal days: " + days);
+        SimulationStats stats = new SimulationStats(days);
+        for (int day = 0; day < days; day++) {
+            long start = System.nanoTime();
+            liveDay(stats);
+            stats.endDay(System.nanoTime() - start);
+        }
+        long[] histogram = new long[0];
+        for (long[] shardHistogram : onEveryShard((shard, s) -> shard.degreeHistogram())) {
+            if (shardHistogram.length > histogram.length) {
+                histogram = Arrays.copyOf(histogram, shardHistogram.length);
+            }
+            for (int d = 0; d < shardHistogram.length; d++) {
+                histogram[d] += shardHistogram[d];
+            }
+        }
+        stats.end(histogram);
+        return stats;
+    }
+
+    /**
+     * Disconnects the shards in other processes, which drop their
+     * animals, or drops the shards in this process. The zoo must not be
+     * used afterwards.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        IOException failure = null;
+        for (ZooShard shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Lives a day in all the shards, counting the changes in the given
+     * statistics if not null.
+     */
+    private void liveDay(SimulationStats stats) {
+        int[] shardSizes = sizes.clone();
+        long[] seeds = new long[shards.length];
+        for (int s = 0; s < seeds.length; s++) {
+            seeds[s] = (long) random.nextInt(Integer.MAX_VALUE) << 31
+                       ^ random.nextInt(Integer.MAX_VALUE);
+        }
+        List<long[][]> asked = onEveryShard((shard, s) -> shard.decide(seeds[s], shardSizes));
+        List<long[][]> accepted = onEveryShard(
+                (shard, s) -> shard.exchange(inbox(asked, s)));
+        List<long[]> counts = onEveryShard(
+                (shard, s) -> shard.confirm(inbox(accepted, s)));
+        if (stats != null) {
+            for (long[] c : counts) stats.changed(c[0], c[1]);
+        }
+    }
+
+    /**
+     * Calls every shard with its index in the threads of the zoo and
+     * returns the results by index.
+     */
+    private <T> List<T> onEveryShard(ShardCall<T> call) {
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (int s = 0; s < shards.length; s++) {
+            int index = s;
+            futures.add(executor.submit(() -> call.call(shards[index], index)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        try {
+            for (Future<T> future : futures) results.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the messages of the given outboxes to a shard.
+     */
+    private static long[] inbox(List<long[][]> outboxes, int shard) {
+        int length = 0;
+        for (long[][] outbox : outboxes) length += outbox[shard].length;
+        long[] inbox = new long[length];
+        int i = 0;
+        for (long[][] outbox : outboxes) {
+            System.arraycopy(outbox[shard], 0, inbox, i, outbox[shard].length);
+            i += outbox[shard].length;
+        }
+        return inbox;
+    }
+
+    private Set<ReadOnlyAnimal> animalsOf(long[] keys) {
+        Set<ReadOnlyAnimal> set = new HashSet<>();
+        for (long key : keys) set.add(animals.get(key));
+        return set;
+    }
+
+    /**
+     * Returns the key of the given animal.
+     *
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal is not in the zoo
+     */
+    private long keyOf(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        Long key = keys.get(animal);
+        if (key == null) {
+            throw new IllegalArgumentException(animal + " is not in the zoo");
+        }
+        return key;
+    }
+
+    /**
+     * Spreads the bits of a hash code, so that animals with close hash
+     * codes go to different shards.
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ h >>> 16;
+    }
+
+    private static ZooShard[] localShards(int shards) {
+        checkShards(shards);
+        ZooShard[] local = new ZooShard[shards];
+        for (int s = 0; s < shards; s++) local[s] = new LocalShard(s);
+        return local;
+    }
+
+    private static void checkShards(int shards) {
+        if (shards <= 0 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("Illegal shards: " + shards);
+        }
+    }
+
+    /**
+     * A call to a shard.
+     */
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T call(ZooShard shard, int index) throws IOException;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.util.Arrays;
+
+/**
+ * The aggregated statistics of several days lived in a {@link Zoo}.
+ *
+ * @author Lisandro Fernandez
+ * @see Zoo#liveDays(int)
+ */
+
+public class SimulationStats {
+    private final long[] dayNanos;
+    private int days;
+    private long friendshipsLost;
+    private long friendshipsEstablished;
+    private long[] degreeHistogram;
+
+    /**
+     * Constructs the statistics of the given number of days.
+     */
+    SimulationStats(int days) {
+        this.dayNanos = new long[days];
+    }
+
+    /**
+     * Records a friendship lost.
+     */
+    void lost() {
+        friendshipsLost++;
+    }
+
+    /**
+     * Records a friendship established.
+     */
+    void established() {
+        friendshipsEstablished++;
+    }
+
+    /**
+     * Records the friendships lost and established by several animals.
+     */
+    void changed(long lost, long established) {
+        friendshipsLost += lost;
+        friendshipsEstablished += established;
+    }
+
+    /**
+     * Records the end of a day which took the given time.
+     */
+    void endDay(long nanos) {
+        dayNanos[days++] = nanos;
+    }
+
+    /**
+     * Records the friendships at the end of the last day.
+     */
+    void end(FriendshipGraph graph) {
+        int maxDegree = 0;
+        for (int id = 0, n = graph.size(); id < n; id++) {
+            maxDegree = Math.max(maxDegree, graph.degree(id));
+        }
+        long[] histogram = new long[maxDegree + 1];
+        for (int id = 0, n = graph.size(); id < n; id++) {
+            histogram[graph.degree(id)]++;
+        }
+        end(histogram);
+    }
+
+    /**
+     * Records the degree distribution at the end of the last day.
+     */
+    void end(long[] degreeHistogram) {
+        this.degreeHistogram = degreeHistogram;
+    }
+
+    /**
+     * Returns the number of days.
+     *
+     * @return the number of days
+     */
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * Returns the number of friendships lost during all the days.
+     *
+     * @return the number of friendships lost
+     */
+    public long getFriendshipsLost() {
+        return friendshipsLost;
+    }
+
+    /**
+     * Returns the number of friendships established during all the
+     * days.
+     *
+     * @return the number of friendships established
+     */
+    public long getFriendshipsEstablished() {
+        return friendshipsEstablished;
+    }
+
+    /**
+     * Returns the number of friendships at the end of the last day.
+     *
+     * @return the number of friendships at the end of the last day
+     */
+    public long getFriendships() {
+        long ends = 0;
+        for (int degree = 0; degree < degreeHistogram.length; degree++) {
+            ends += degree * degreeHistogram[degree];
+        }
+        return ends / 2;
+    }
+
+    /**
+     * Returns the degree distribution at the end of the last day: the
+     * element at index d is the number of animals with d friends.
+     * Changes to the array are not reflected in the statistics.
+     *
+     * @return the degree distribution at the end of the last day
+     */
+    public long[] getDegreeHistogram() {
+        return degreeHistogram.clone();
+    }
+
+    /**
+     * Returns the time taken by a day, in nanoseconds.
+     *
+     * @param  day the day, starting from 0
+     * @return the time taken by the day, in nanoseconds
+     * @throws IndexOutOfBoundsException if the day is out of range
+     */
+    public long getDayNanos(int day) {
+        if (day < 0 || day >= days) {
+            throw new IndexOutOfBoundsException("Day: " + day +
+                                                ", Days: " + days);
+        }
+        return dayNanos[day];
+    }
+
+    /**
+     * Returns the time taken by all the days, in nanoseconds.
+     *
+     * @return the time taken by all the days, in nanoseconds
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (int day = 0; day < days; day++) total += dayNanos[day];
+        return total;
+    }
+
+    /**
+     * Returns the longest time taken by a day, in nanoseconds, or 0 if
+     * there are no days.
+     *
+     * @return the longest time taken by a day, in nanoseconds
+     */
+    public long getMaxDayNanos() {
+        long max = 0;
+        for (int day = 0; day < days; day++) max = Math.max(max, dayNanos[day]);
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationStats [days = " + days +
+               ", friendships lost = " + friendshipsLost +
+               ", friendships established = " + friendshipsEstablished +
+               ", friendships = " + getFriendships() +
+               ", total time = " + getTotalNanos() / 1_000_000 + " ms" +
+               ", longest day = " + getMaxDayNanos() / 1_000_000 + " ms" +
+               ", degree histogram = " + Arrays.toString(degreeHistogram) +
+               "]";
+    }
+}
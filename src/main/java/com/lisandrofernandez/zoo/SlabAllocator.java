@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Allocates blocks of {@code int}s in large buffers outside the heap,
+ * either direct or mapped from temporary files.
+ *
+ * <p>
+ * The buffers, or slabs, are split into blocks whose sizes are powers
+ * of two, from 4 {@code int}s up to a whole slab. A freed block is kept
+ * in a list of free blocks of its size, linked through the block itself,
+ * and reused by the next allocation of that size; otherwise blocks are
+ * carved from the end of the current slab. A block is identified by a
+ * {@code long} handle holding its slab, its size and its offset, so the
+ * heap only holds the slabs and one {@code long} per block in use.
+ *
+ * <p>
+ * Allocating and freeing are synchronized, so several threads can
+ * allocate at once. A block may be read by any thread which got its
+ * handle through the thread that allocated it.
+ *
+ * @author Lisandro Fernandez
+ */
+
+final class SlabAllocator {
+
+    /**
+     * The handle of no block.
+     */
+    static final long NONE = -1L;
+
+    private static final int MIN_SIZE_CLASS = 2; // 4 ints
+    private static final int MAX_SIZE_CLASS = 28; // 1 GiB
+    private static final int MAX_SLABS = 1 << 14;
+
+    private final int slabSizeClass;
+    private final Path directory;
+
+    /**
+     * The slabs; never replaced, so reading a slab needs no lock.
+     */
+    private final IntBuffer[] slabs = new IntBuffer[MAX_SLABS];
+    private int slabCount;
+    private int current = -1;
+    private int top;
+    private long reservedBytes;
+    private final long[] free = new long[MAX_SIZE_CLASS + 1];
+
+    /**
+     * Constructs an allocator of slabs of the given number of bytes, a
+     * power of two, mapped from temporary files in the given directory
+     * or direct if null.
+     */
+    SlabAllocator(int slabBytes, Path directory) {
+        this.slabSizeClass = Integer.numberOfTrailingZeros(slabBytes >> 2);
+        this.directory = directory;
+        Arrays.fill(free, NONE);
+    }
+
+    /**
+     * Returns the slab of a block.
+     */
+    IntBuffer buffer(long handle) {
+        return slabs[(int) (handle >>> 40)];
+    }
+
+    /**
+     * Returns the index of the first {@code int} of a block in its slab.
+     */
+    static int offset(long handle) {
+        return (int) handle;
+    }
+
+    /**
+     * Returns the number of {@code int}s of a block.
+     */
+    static int capacity(long handle) {
+        return 1 << ((int) (handle >>> 32) & 0xff);
+    }
+
+    /**
+     * Returns the number of bytes of the slabs.
+     */
+    synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Allocates a block of at least the given number of {@code int}s.
+     *
+     * @throws IllegalStateException if the block is larger than a
+     *         gigabyte or there are too many slabs
+     * @throws UncheckedIOException if a slab cannot be mapped
+     */
+    synchronized long allocate(int ints) {
+        int sizeClass = Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(ints - 1));
+        if (sizeClass > MAX_SIZE_CLASS) {
+            throw new IllegalStateException("Block too large: " + ints);
+        }
+        long handle = free[sizeClass];
+        if (handle != NONE) {
+            IntBuffer slab = buffer(handle);
+            int offset = offset(handle);
+            free[sizeClass] = (long) slab.get(offset) << 32 | slab.get(offset + 1) & 0xffffffffL;
+            return handle;
+        }
+        if (sizeClass > slabSizeClass) {
+            // a slab of its own
+            int slab = newSlab(sizeClass);
+            return handle(slab, sizeClass, 0);
+        }
+        int size = 1 << sizeClass;
+        if (current < 0 || top + size > 1 << slabSizeClass) {
+            if (current >= 0) freeTail();
+            current = newSlab(slabSizeClass);
+            top = 0;
+        }
+        handle = handle(current, sizeClass, top);
+        top += size;
+        return handle;
+    }
+
+    /**
+     * Frees a block, which must not be used afterwards.
+     */
+    synchronized void free(long handle) {
+        int sizeClass = (int) (handle >>> 32) & 0xff;
+        IntBuffer slab = buffer(handle);
+        int offset = offset(handle);
+        long next = free[sizeClass];
+        slab.put(offset, (int) (next >>> 32));
+        slab.put(offset + 1, (int) next);
+        free[sizeClass] = handle;
+    }
+
+    /**
+     * Frees the rest of the current slab in the largest blocks that fit.
+     */
+    private void freeTail() {
+        int end = 1 << slabSizeClass;
+        while (end - top >= 1 << MIN_SIZE_CLASS) {
+            int sizeClass = 31 - Integer.numberOfLeadingZeros(end - top);
+            free(handle(current, sizeClass, top));
+            top += 1 << sizeClass;
+        }
+    }
+
+    private int newSlab(int sizeClass) {
+        if (slabCount == MAX_SLABS) throw new IllegalStateException("Too many slabs");
+        int bytes = 4 << sizeClass;
+        ByteBuffer buffer = directory == null
+            ? ByteBuffer.allocateDirect(bytes) : map(bytes);
+        slabs[slabCount] = buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+        reservedBytes += bytes;
+        return slabCount++;
+    }
+
+    /**
+     * Maps a new temporary file, which is deleted right away where the
+     * platform allows it; the mapping stays valid until the buffer is
+     * collected.
+     */
+    private ByteBuffer map(int bytes) {
+        try {
+            Path file = Files.createTempFile(directory, "zoo-", ".slab");
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long handle(int slab, int sizeClass, int offset) {
+        return (long) slab << 40 | (long) sizeClass << 32 | offset & 0xffffffffL;
+    }
+}
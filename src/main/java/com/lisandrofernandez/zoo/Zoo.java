@@ -21,15 +21,20 @@
  */
 package com.lisandrofernandez.zoo;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractSet;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 
 /**
  * This class represents a zoo with animals and the relations between them.
@@ -39,23 +44,77 @@ import java.util.Set;
 
 public class Zoo {
     /**
-     * The HashMap which backs this Zoo. The keys are the animals in
-     * this zoo and the values are the sets of their friends.
+     * The graph which backs this Zoo. Every animal in this zoo is
+     * interned to a dense int id and its friends are stored as a sorted
+     * array of ids.
      *
      * Given two animals x and y in the zoo which are friends, then
-     * map.get(x).contains(y) and map.get(y).contains(x).
+     * graph.areFriends(idOf(x), idOf(y)) and
+     * graph.areFriends(idOf(y), idOf(x)).
      *
-     * A HashMap permits null keys so every attempt to put an Animal
-     * must prevent null keys. The same applies for the friends as they
-     * are stored in HashSets.
+     * The graph permits a null animal so every attempt to add an
+     * animal must prevent null animals.
      */
-    private HashMap<Animal, HashSet<Animal>> map;
+    private final FriendshipGraph graph;
+
+    /**
+     * The source of randomness of the days in this zoo.
+     */
+    private RandomSource random = RandomSource.create();
+
+    /**
+     * The sink of the friendship changes made during the days in this
+     * zoo.
+     */
+    private FriendshipEventSink sink = new ConsoleEventSink();
+
+    /**
+     * The buffers of the parallel days, created by the first one.
+     */
+    private ParallelDay parallelDay;
+
+    /**
+     * The number of days lived in this zoo.
+     */
+    private long day;
+
+    /**
+     * Whether a snapshot is published at the end of every day.
+     */
+    private boolean publishing;
+
+    /**
+     * The last published snapshot, read by other threads.
+     */
+    private volatile ZooSnapshot published;
+
+    /**
+     * The journal logging the changes, or null.
+     */
+    private ZooJournal journal;
+
+    /**
+     * The secondary indexes of the animals, or null.
+     */
+    private AnimalIndex index;
+
+    /**
+     * The metrics kept up to date, or null.
+     */
+    private GraphMetrics metrics;
+
+    /**
+     * The policy of the friendships made during a day, and its sampler
+     * or null if uniform.
+     */
+    private FriendshipPolicy policy = FriendshipPolicy.uniform();
+    private FriendshipSampler sampler;
 
     /**
      * Constructs an empty {@code Zoo}.
      */
     public Zoo() {
-        map = new HashMap<>();
+        graph = new FriendshipGraph(0);
     }
 
     /**
@@ -65,13 +124,10 @@ public class Zoo {
      * @throws NullPointerException if the array is null or any animal
      *         in it is null
      */
-    public Zoo(Animal... animals) {
-        for (Animal a : animals) if (a == null) throw new NullPointerException();
-        HashSet<Animal> animalsSet = new HashSet<>(Arrays.asList(animals));
-        map = new HashMap<>(animalsSet.size());
-        for (Animal animal : animalsSet) {
-            map.put(animal, new HashSet<>());
-        }
+    public Zoo(ReadOnlyAnimal... animals) {
+        for (ReadOnlyAnimal a : animals) if (a == null) throw new NullPointerException();
+        graph = new FriendshipGraph(animals.length);
+        for (ReadOnlyAnimal animal : animals) graph.add(animal);
     }
 
     /**
@@ -81,25 +137,384 @@ public class Zoo {
      * @throws NullPointerException if the collection is null or any
      *         animal in it is null
      */
-    public Zoo(Collection<? extends Animal> animals) {
-        for (Animal a : animals) if (a == null) throw new NullPointerException();
-        HashSet<Animal> animalsSet = new HashSet<>(animals);
-        map = new HashMap<>(animalsSet.size());
-        for (Animal animal : animalsSet) {
-            map.put(animal, new HashSet<>());
+    public Zoo(Collection<? extends ReadOnlyAnimal> animals) {
+        this(animals, FriendshipStorage.heap());
+    }
+
+    /**
+     * Constructs an empty {@code Zoo} keeping the friends of its animals
+     * in the given storage.
+     *
+     * @param  storage the storage of the friends
+     * @throws NullPointerException if the storage is null
+     */
+    public Zoo(FriendshipStorage storage) {
+        this(Collections.emptyList(), storage);
+    }
+
+    /**
+     * Constructs a {@code Zoo} with the specified animals, keeping their
+     * friends in the given storage.
+     *
+     * @param  animals the collection of animals
+     * @param  storage the storage of the friends
+     * @throws NullPointerException if the collection, any animal in it
+     *         or the storage is null
+     * @see    FriendshipStorage#offHeap()
+     */
+    public Zoo(Collection<? extends ReadOnlyAnimal> animals,
+               FriendshipStorage storage) {
+        for (ReadOnlyAnimal a : animals) if (a == null) throw new NullPointerException();
+        if (storage == null) throw new NullPointerException();
+        graph = new FriendshipGraph(animals.size(), storage);
+        for (ReadOnlyAnimal animal : animals) graph.add(animal);
+    }
+
+    /**
+     * Constructs a {@code Zoo} with the given graph, which has lived the
+     * given number of days.
+     */
+    Zoo(FriendshipGraph graph, long day) {
+        this.graph = graph;
+        this.day = day;
+    }
+
+    /**
+     * Loads a zoo saved by {@link #save(Path)}. The file is memory
+     * mapped and the friendships are read in bulk, so loading a large
+     * zoo is much faster than making all its friendships again.
+     *
+     * <p>
+     * The loaded zoo has new animals equal to the saved ones, with the
+     * same friendships and the same day, and the default source of
+     * randomness and sink of events.
+     *
+     * @param  path the file to load
+     * @return the loaded zoo
+     * @throws NullPointerException if the path is null
+     * @throws IOException if an I/O error occurs or the file is not a
+     *         valid zoo file
+     */
+    public static Zoo load(Path path) throws IOException {
+        if (path == null) throw new NullPointerException();
+        return ZooFile.read(path);
+    }
+
+    /**
+     * Saves the zoo to a file in a compact binary format, replacing it
+     * if it exists. Equivalent to {@code snapshot().save(path)}.
+     *
+     * @param  path the file to save to
+     * @throws NullPointerException if the path is null
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the zoo has an animal of a
+     *         subclass unknown to the format
+     * @see    #load(Path)
+     * @see    ZooSnapshot#save(Path)
+     */
+    public void save(Path path) throws IOException {
+        snapshot().save(path);
+    }
+
+    /**
+     * Returns the source of randomness of the days in the zoo.
+     *
+     * @return the source of randomness
+     */
+    public RandomSource getRandomSource() {
+        return random;
+    }
+
+    /**
+     * Sets the source of randomness of the days in the zoo. Two zoos
+     * with the same animals, added in the same order, and the same
+     * friendships live the same days when given sources with the same
+     * seed.
+     *
+     * @param  random the source of randomness
+     * @throws NullPointerException if the source is null
+     */
+    public void setRandomSource(RandomSource random) {
+        if (random == null) throw new NullPointerException();
+        this.random = random;
+    }
+
+    /**
+     * Returns the sink of the friendship changes made during the days
+     * in the zoo.
+     *
+     * @return the sink of the friendship changes
+     */
+    public FriendshipEventSink getEventSink() {
+        return sink;
+    }
+
+    /**
+     * Sets the sink of the friendship changes made during the days in
+     * the zoo. By default the changes are printed to the standard
+     * output by a {@link ConsoleEventSink}; use
+     * {@link FriendshipEventSink#none()} to ignore them.
+     *
+     * @param  sink the sink of the friendship changes
+     * @throws NullPointerException if the sink is null
+     */
+    public void setEventSink(FriendshipEventSink sink) {
+        if (sink == null) throw new NullPointerException();
+        this.sink = sink;
+    }
+
+    /**
+     * Returns the number of days lived in the zoo.
+     *
+     * @return the number of days lived in the zoo
+     */
+    public long getDay() {
+        return day;
+    }
+
+    /**
+     * Sets whether a snapshot of the zoo is published at the end of
+     * every day. When enabled, a snapshot is published right away.
+     *
+     * @param publishing {@code true} to publish a snapshot every day
+     * @see   #getPublishedSnapshot()
+     */
+    public void setPublishingSnapshots(boolean publishing) {
+        this.publishing = publishing;
+        if (publishing) publishSnapshot();
+    }
+
+    /**
+     * Sets whether the animals of the zoo are indexed by class, dog
+     * type, favourite food, whether a parrot can speak and whether a
+     * chicken is a broiler. When enabled, the indexes are built right
+     * away and kept up to date as animals are added and removed, so
+     * {@link #getAnimals(Class)}, {@link #getDogs(DogType)},
+     * {@link #getParrots(Boolean)}, {@link #getChickens(Boolean)} and
+     * {@link #getAnimalsByFavouriteFood(String)} take time proportional
+     * to the number of animals found instead of the size of the zoo.
+     *
+     * <p>
+     * An animal is indexed by its attributes when it is added. If an
+     * indexed attribute of an animal in the zoo changes, the animal must
+     * be {@linkplain #reindexAnimal(ReadOnlyAnimal) indexed again}.
+     *
+     * @param indexing {@code true} to index the animals
+     */
+    public void setIndexingAnimals(boolean indexing) {
+        if (!indexing) {
+            index = null;
+        } else if (index == null) {
+            index = new AnimalIndex();
+            for (int id = 0, n = graph.size(); id < n; id++) {
+                index.add(graph.animal(id));
+            }
         }
     }
 
+    /**
+     * Returns {@code true} if the animals of the zoo are indexed.
+     *
+     * @return {@code true} if the animals of the zoo are indexed
+     * @see    #setIndexingAnimals(boolean)
+     */
+    public boolean isIndexingAnimals() {
+        return index != null;
+    }
+
+    /**
+     * Indexes again an animal of the zoo whose class, dog type,
+     * favourite food, speak or broiler attribute changed, and reads
+     * again its group and maximum number of friends in the
+     * {@linkplain #setFriendshipPolicy(FriendshipPolicy) friendship policy}.
+     * Does nothing if the animals are not indexed and the policy is
+     * uniform.
+     *
+     * @param  animal the changed animal
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal is not in the zoo
+     */
+    public void reindexAnimal(ReadOnlyAnimal animal) {
+        int id = idOf(animal);
+        if (index != null) index.update(animal);
+        if (sampler != null) sampler.update(id);
+    }
+
+    /**
+     * Returns the policy of the friendships made during a day.
+     *
+     * @return the policy of the friendships
+     */
+    public FriendshipPolicy getFriendshipPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the policy of the friendships made during a day, which may
+     * weigh the new friends by their groups and limit the number of
+     * friends of every animal. The groups of the animals are read right
+     * away; if the group or the maximum number of friends of an animal
+     * in the zoo changes, the animal must be
+     * {@linkplain #reindexAnimal(ReadOnlyAnimal) reindexed}.
+     *
+     * <p>
+     * If some animal has a maximum number of friends, the friendships of
+     * a {@linkplain #liveDayInParallel(ForkJoinPool) parallel day} are
+     * still chosen in parallel, but made one by one, dropping those
+     * which would give an animal too many friends.
+     *
+     * @param  policy the policy
+     * @throws NullPointerException if the policy is null
+     * @throws IllegalArgumentException if the policy gives an illegal
+     *         affinity or maximum number of friends for the animals of
+     *         the zoo
+     * @see    FriendshipPolicy#uniform()
+     */
+    public void setFriendshipPolicy(FriendshipPolicy policy) {
+        if (policy == null) throw new NullPointerException();
+        sampler = policy == FriendshipPolicy.uniform()
+            ? null : new FriendshipSampler(graph, policy);
+        this.policy = policy;
+    }
+
+    /**
+     * Sets whether metrics of the friendships are kept up to date as they
+     * change: the number of friendships, the number of animals with every
+     * number of friends and the number of animals without friends. When
+     * enabled, the metrics are counted right away.
+     *
+     * <p>
+     * Making or breaking a friendship updates the metrics in constant
+     * time, and removing an animal in time proportional to its number of
+     * friends. The friendships of a
+     * {@linkplain #liveDayInParallel(ForkJoinPool) parallel day} are
+     * still chosen in parallel, but made and broken one by one.
+     *
+     * @param tracking {@code true} to keep the metrics
+     * @see   #getMetrics()
+     * @see   #setTrackingTriangles(boolean)
+     */
+    public void setTrackingMetrics(boolean tracking) {
+        if (!tracking) {
+            metrics = null;
+        } else if (metrics == null) {
+            metrics = new GraphMetrics(graph, false);
+        }
+    }
+
+    /**
+     * Sets whether the number of triangles, the groups of three animals
+     * which are friends of each other, is kept up to date with the other
+     * metrics. Every friendship made or broken then costs time
+     * proportional to the number of friends of both animals. Enabling it
+     * enables the metrics and counts the triangles right away.
+     *
+     * @param tracking {@code true} to keep the number of triangles
+     * @see   #setTrackingMetrics(boolean)
+     */
+    public void setTrackingTriangles(boolean tracking) {
+        if (metrics != null) {
+            metrics.setTrackingTriangles(tracking);
+        } else if (tracking) {
+            metrics = new GraphMetrics(graph, true);
+        }
+    }
+
+    /**
+     * Returns the live metrics of the friendships, or {@code null} if
+     * they are not kept.
+     *
+     * @return the metrics of the friendships, or {@code null}
+     * @see    #setTrackingMetrics(boolean)
+     */
+    public GraphMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets whether every friendship is also kept in a single hash set,
+     * so that {@link #areFriends(ReadOnlyAnimal, ReadOnlyAnimal)} and
+     * the search of new friends during a day check a friendship with a
+     * single probe instead of a binary search over the friends of an
+     * animal. When enabled, the set is built right away.
+     *
+     * <p>
+     * The set costs about 16 bytes per friendship, and making or
+     * breaking a friendship updates it too. A Bloom filter of about two
+     * bytes per friendship, which is more likely to stay in cache, can
+     * be put in front of the set to answer most checks of animals which
+     * are not friends.
+     *
+     * @param hashing {@code true} to hash the friendships
+     * @param bloomFilter {@code true} to put a Bloom filter in front of
+     *        the set, ignored if not hashing
+     */
+    public void setHashingFriendships(boolean hashing, boolean bloomFilter) {
+        graph.setHashingFriendships(hashing, bloomFilter);
+    }
+
+    /**
+     * Returns {@code true} if the friendships are kept in a hash set.
+     *
+     * @return {@code true} if the friendships are hashed
+     * @see    #setHashingFriendships(boolean, boolean)
+     */
+    public boolean isHashingFriendships() {
+        return graph.isHashingFriendships();
+    }
+
+    /**
+     * Takes a snapshot of the zoo and publishes it, so that other
+     * threads get it from {@link #getPublishedSnapshot()}.
+     *
+     * @return the published snapshot
+     */
+    public ZooSnapshot publishSnapshot() {
+        ZooSnapshot snapshot = snapshot();
+        published = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Returns the last published snapshot of the zoo, or {@code null} if
+     * none was published.
+     *
+     * <p>
+     * Unlike the other methods of this class, this method can be called
+     * from any thread, also while the zoo lives a day in another thread.
+     * Readers never wait for the day to end and always get a consistent
+     * zoo as it was at the end of a day.
+     *
+     * @return the last published snapshot, or {@code null}
+     * @see    #setPublishingSnapshots(boolean)
+     */
+    public ZooSnapshot getPublishedSnapshot() {
+        return published;
+    }
+
     /**
      * Adds an animal to the zoo if it is not present.
      *
      * @param  animal the animal to add
      * @return {@code true} if the animal was not in the zoo
      * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the zoo has a journal and the
+     *         animal is of a subclass unknown to the file format
      */
-    public boolean addAnimal(Animal animal) {
+    public boolean addAnimal(ReadOnlyAnimal animal) {
         if (animal == null) throw new NullPointerException();
-        return map.putIfAbsent(animal, new HashSet<>()) == null;
+        int id;
+        if (journal == null) {
+            if ((id = graph.add(animal)) < 0) return false;
+        } else {
+            if (graph.idOf(animal) >= 0) return false;
+            journal.added(animal); // write-ahead, may reject the animal
+            id = graph.add(animal);
+        }
+        if (index != null) index.add(animal);
+        if (sampler != null) sampler.added(id);
+        if (metrics != null) metrics.added();
+        return true;
     }
 
     /**
@@ -109,14 +524,105 @@ public class Zoo {
      * @return {@code true} if the animal was in the zoo
      * @throws NullPointerException if the animal is null
      */
-    public boolean removeAnimal(Animal animal) {
+    public boolean removeAnimal(ReadOnlyAnimal animal) {
         if (animal == null) throw new NullPointerException();
-        HashSet<Animal> friends = map.remove(animal); 
-        if (friends == null) return false;
-        for (Animal f : friends) map.get(f).remove(animal);
+        if (metrics != null) {
+            int id = graph.idOf(animal);
+            if (id < 0) return false;
+            metrics.removing(id);
+        }
+        int id = graph.remove(animal);
+        if (id < 0) return false;
+        if (index != null) index.remove(animal);
+        if (sampler != null) sampler.removed(id, graph.size());
+        if (journal != null) journal.removed(id);
         return true;
     }
 
+    /**
+     * Removes the given animals from the zoo, breaking all their
+     * friendships. Unlike removing them one by one, the friends of every
+     * remaining animal are updated once whatever the number of removed
+     * friends.
+     *
+     * <p>
+     * The remaining animals with the highest ids take the ids left free
+     * by the removed ones, so the ids are the same as if the animals
+     * were removed one by one by {@link #removeAnimal(ReadOnlyAnimal)} in
+     * decreasing id order.
+     *
+     * @param  animals the animals to remove
+     * @return the number of animals removed
+     * @throws NullPointerException if the collection or any animal in it
+     *         is null
+     */
+    public int removeAnimals(Collection<? extends ReadOnlyAnimal> animals) {
+        for (ReadOnlyAnimal a : animals) if (a == null) throw new NullPointerException();
+        boolean[] removed = new boolean[graph.size()];
+        int count = 0;
+        for (ReadOnlyAnimal animal : animals) {
+            int id = graph.idOf(animal);
+            if (id >= 0 && !removed[id]) {
+                removed[id] = true;
+                count++;
+            }
+        }
+        removeAll(removed, count, null);
+        return count;
+    }
+
+    /**
+     * Removes the animals of the zoo matching the given filter, as in
+     * {@link #removeAnimals(Collection)}.
+     *
+     * @param  filter the filter of the animals to remove
+     * @return the number of animals removed
+     * @throws NullPointerException if the filter is null
+     */
+    public int removeAnimals(Predicate<? super ReadOnlyAnimal> filter) {
+        if (filter == null) throw new NullPointerException();
+        int n = graph.size();
+        boolean[] removed = new boolean[n];
+        int count = 0;
+        for (int id = 0; id < n; id++) {
+            if (filter.test(graph.animal(id))) {
+                removed[id] = true;
+                count++;
+            }
+        }
+        removeAll(removed, count, null);
+        return count;
+    }
+
+    /**
+     * Removes the animals of the zoo matching the given filter, as in
+     * {@link #removeAnimals(Collection)}, testing the animals and
+     * updating their friends with the threads of the given pool. The
+     * filter must be safe to call from several threads.
+     *
+     * @param  filter the filter of the animals to remove
+     * @param  pool the pool removing the animals
+     * @return the number of animals removed
+     * @throws NullPointerException if the filter or the pool is null
+     */
+    public int removeAnimals(Predicate<? super ReadOnlyAnimal> filter,
+                             ForkJoinPool pool) {
+        if (filter == null || pool == null) throw new NullPointerException();
+        int n = graph.size();
+        boolean[] removed = new boolean[n];
+        int chunks = (n + ParallelDay.CHUNK_SIZE - 1) / ParallelDay.CHUNK_SIZE;
+        pool.invoke(new ChunkTask(0, chunks, c -> {
+            for (int id = c * ParallelDay.CHUNK_SIZE,
+                     end = Math.min(n, id + ParallelDay.CHUNK_SIZE); id < end; id++) {
+                removed[id] = filter.test(graph.animal(id));
+            }
+        }));
+        int count = 0;
+        for (boolean r : removed) if (r) count++;
+        removeAll(removed, count, pool);
+        return count;
+    }
+
     /**
      * Checks if an animal is in the zoo.
      *
@@ -124,9 +630,9 @@ public class Zoo {
      * @return {@code true} if the animal is in the zoo
      * @throws NullPointerException if the animal is null
      */
-    public boolean isAnimalPresent(Animal animal) {
+    public boolean isAnimalPresent(ReadOnlyAnimal animal) {
         if (animal == null) throw new NullPointerException();
-        return map.containsKey(animal);
+        return graph.idOf(animal) >= 0;
     }
 
     /**
@@ -135,8 +641,11 @@ public class Zoo {
      *
      * @return the set of animals in the zoo
      */
-    public Set<Animal> getAnimals() {
-        return new HashSet<>(map.keySet());
+    public Set<ReadOnlyAnimal> getAnimals() {
+        int n = graph.size();
+        Set<ReadOnlyAnimal> animals = new HashSet<>(Math.max(16, (int) (n / .75f) + 1));
+        for (int id = 0; id < n; id++) animals.add(graph.animal(id));
+        return animals;
     }
 
     /**
@@ -145,19 +654,264 @@ public class Zoo {
      *
      * @return the list of animals and their friends in the zoo
      */
-    public List<Pair<Animal, Set<Animal>>> getAnimalsAndFriends() {
-        List<Pair<Animal, Set<Animal>>> list = new ArrayList<>();
-        for (Map.Entry<Animal, HashSet<Animal>> kv : map.entrySet()) {
-            Animal animal = kv.getKey();
-            HashSet<Animal> friends = kv.getValue();
-            Pair<Animal, Set<Animal>> pair = new Pair<>(
-                animal, new HashSet<>(friends)
+    public List<Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>>> getAnimalsAndFriends() {
+        int n = graph.size();
+        List<Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>>> list = new ArrayList<>(n);
+        for (int id = 0; id < n; id++) {
+            int degree = graph.degree(id);
+            Set<ReadOnlyAnimal> friends = new HashSet<>(
+                Math.max(16, (int) (degree / .75f) + 1)
             );
-            list.add(pair);
+            for (int i = 0; i < degree; i++) {
+                friends.add(graph.animal(graph.friend(id, i)));
+            }
+            list.add(new Pair<>(graph.animal(id), friends));
         }
         return list;
     }
 
+    /**
+     * Returns the set of animals in the zoo whose class is exactly the
+     * given one, e.g. the parrots but not the chickens for
+     * {@code Parrot.class}, and no animal for {@code Bird.class} unless
+     * some was created as a plain bird. Changes to the set are not
+     * reflected in the zoo, and vice-versa.
+     *
+     * @param  <T> the class of the animals
+     * @param  type the class of the animals
+     * @return the set of animals in the zoo of the given class
+     * @throws NullPointerException if the class is null
+     * @see    #setIndexingAnimals(boolean)
+     */
+    public <T extends ReadOnlyAnimal> Set<T> getAnimals(Class<T> type) {
+        if (type == null) throw new NullPointerException();
+        return find(AnimalIndex.CLASS, type);
+    }
+
+    /**
+     * Returns the set of dogs in the zoo of the given type. Changes to
+     * the set are not reflected in the zoo, and vice-versa.
+     *
+     * @param  type the dog type, or null for the dogs without a type
+     * @return the set of dogs in the zoo of the given type
+     * @see    #setIndexingAnimals(boolean)
+     */
+    public Set<ReadOnlyDog> getDogs(DogType type) {
+        return find(AnimalIndex.DOG_TYPE, type);
+    }
+
+    /**
+     * Returns the set of parrots in the zoo which can or cannot speak.
+     * Changes to the set are not reflected in the zoo, and vice-versa.
+     *
+     * @param  speak whether the parrots can speak, or null for the
+     *         parrots for which it is unknown
+     * @return the set of parrots in the zoo which can or cannot speak
+     * @see    #setIndexingAnimals(boolean)
+     */
+    public Set<ReadOnlyParrot> getParrots(Boolean speak) {
+        return find(AnimalIndex.SPEAK, speak);
+    }
+
+    /**
+     * Returns the set of chickens in the zoo which are or are not
+     * broilers. Changes to the set are not reflected in the zoo, and
+     * vice-versa.
+     *
+     * @param  boiler whether the chickens are broilers, or null for the
+     *         chickens for which it is unknown
+     * @return the set of chickens in the zoo which are or are not
+     *         broilers
+     * @see    #setIndexingAnimals(boolean)
+     */
+    public Set<ReadOnlyChicken> getChickens(Boolean boiler) {
+        return find(AnimalIndex.BOILER, boiler);
+    }
+
+    /**
+     * Returns the set of animals in the zoo with the given favourite
+     * food. Changes to the set are not reflected in the zoo, and
+     * vice-versa.
+     *
+     * @param  favouriteFood the favourite food, or null for the animals
+     *         without one
+     * @return the set of animals in the zoo with the given favourite
+     *         food
+     * @see    #setIndexingAnimals(boolean)
+     */
+    public Set<ReadOnlyAnimal> getAnimalsByFavouriteFood(String favouriteFood) {
+        return find(AnimalIndex.FAVOURITE_FOOD, favouriteFood);
+    }
+
+    /**
+     * Returns a copy of the attributes of the animals in the zoo stored
+     * by column, one row per animal in the order of
+     * {@link #getAnimalsView()}, for fast scans over many animals.
+     *
+     * @return the attributes of the animals by column
+     */
+    public AnimalColumns columns() {
+        return new AnimalColumns(graph);
+    }
+
+    /**
+     * Returns a read-only set view of the animals in the zoo. The set
+     * is backed by the zoo, so changes to the zoo are reflected in the
+     * set, and it is not copied. If the zoo is modified while an
+     * iteration over the set is in progress the iteration fails with a
+     * {@link ConcurrentModificationException}.
+     *
+     * @return a read-only view of the animals in the zoo
+     */
+    public Set<ReadOnlyAnimal> getAnimalsView() {
+        return new AbstractSet<ReadOnlyAnimal>() {
+            @Override
+            public boolean contains(Object o) {
+                return o != null && graph.idOf(o) >= 0;
+            }
+
+            @Override
+            public Iterator<ReadOnlyAnimal> iterator() {
+                return new Iterator<ReadOnlyAnimal>() {
+                    private final int expectedModCount = graph.modCount();
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < graph.size();
+                    }
+
+                    @Override
+                    public ReadOnlyAnimal next() {
+                        checkForComodification(expectedModCount);
+                        if (next >= graph.size()) throw new NoSuchElementException();
+                        return graph.animal(next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return graph.size();
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only set view of the friends of an animal in the
+     * zoo. The set is backed by the zoo, so changes to the zoo are
+     * reflected in the set, and it is not copied. If the animal is
+     * removed from the zoo the set becomes empty. If the zoo is modified
+     * while an iteration over the set is in progress the iteration fails
+     * with a {@link ConcurrentModificationException}.
+     *
+     * @param  animal the animal
+     * @return a read-only view of the friends of the animal
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal is not in the zoo
+     */
+    public Set<ReadOnlyAnimal> getFriendsView(ReadOnlyAnimal animal) {
+        idOf(animal);
+        return new AbstractSet<ReadOnlyAnimal>() {
+            @Override
+            public boolean contains(Object o) {
+                int id = graph.idOf(animal);
+                int friend = o == null ? -1 : graph.idOf(o);
+                return id >= 0 && friend >= 0 && graph.areFriends(id, friend);
+            }
+
+            @Override
+            public Iterator<ReadOnlyAnimal> iterator() {
+                int id = graph.idOf(animal);
+                return new Iterator<ReadOnlyAnimal>() {
+                    private final int expectedModCount = graph.modCount();
+                    private final int size = id < 0 ? 0 : graph.degree(id);
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public ReadOnlyAnimal next() {
+                        checkForComodification(expectedModCount);
+                        if (next >= size) throw new NoSuchElementException();
+                        return graph.animal(graph.friend(id, next++));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int id = graph.idOf(animal);
+                return id < 0 ? 0 : graph.degree(id);
+            }
+        };
+    }
+
+    /**
+     * Returns a cursor over the animals in the zoo and their friends.
+     * The cursor reads the zoo directly, without copying it. If the zoo
+     * is modified while the cursor is in use it fails with a
+     * {@link ConcurrentModificationException}.
+     *
+     * @return a cursor over the animals and their friends
+     */
+    public AnimalCursor cursor() {
+        return new AnimalCursor() {
+            private final int expectedModCount = graph.modCount();
+            private int id = -1;
+
+            @Override
+            public boolean next() {
+                checkForComodification(expectedModCount);
+                if (id < graph.size()) id++;
+                return id < graph.size();
+            }
+
+            @Override
+            public ReadOnlyAnimal animal() {
+                checkPosition();
+                return graph.animal(id);
+            }
+
+            @Override
+            public int friendCount() {
+                checkPosition();
+                return graph.degree(id);
+            }
+
+            @Override
+            public ReadOnlyAnimal friend(int index) {
+                if (index < 0 || index >= friendCount()) {
+                    throw new IndexOutOfBoundsException("Index: " + index +
+                                                        ", Size: " + friendCount());
+                }
+                return graph.animal(graph.friend(id, index));
+            }
+
+            private void checkPosition() {
+                checkForComodification(expectedModCount);
+                if (id < 0 || id >= graph.size()) {
+                    throw new IllegalStateException();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns an immutable snapshot of the animals in the zoo and their
+     * friends. The snapshot shares the friendships with the zoo, which
+     * copies them on write, so taking it costs a few references per
+     * animal, much less than {@link #getAnimalsAndFriends()}.
+     *
+     * @return a snapshot of the zoo
+     */
+    public ZooSnapshot snapshot() {
+        return graph.snapshot(day);
+    }
+
     /**
      * Returns {@code true} if the given animals are friends. If A is
      * friend of B then B is friend of A.
@@ -166,10 +920,11 @@ public class Zoo {
      * @param b the second animal
      * @return {@code true} if the animals are friends
      * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals is
+     *         not in the zoo
      */
-    public boolean areFriends(Animal a, Animal b) {
-        if (a == null || b == null) throw new NullPointerException();
-        return map.get(a).contains(b);
+    public boolean areFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        return graph.areFriends(idOf(a), idOf(b));
     }
 
     /**
@@ -184,12 +939,16 @@ public class Zoo {
      * @return {@code true} if the animals were not friends and are
      *         not equals
      * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals is
+     *         not in the zoo
      */
-    public boolean makeFriends(Animal a, Animal b) {
-        if (a == null || b == null) throw new NullPointerException();
-        if (a.equals(b)) return false; // cannot be friend of itself
-        return map.get(a).add(b) // false if were already friends
-               && map.get(b).add(a); // true if reached
+    public boolean makeFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        int x = idOf(a), y = idOf(b);
+        if (x == y) return false; // cannot be friend of itself
+        if (!graph.link(x, y)) return false;
+        if (metrics != null) metrics.linked(x, y);
+        if (journal != null) journal.linked(x, y);
+        return true;
     }
 
     /**
@@ -199,49 +958,419 @@ public class Zoo {
      * @param b the second animal to break the friendship
      * @return {@code true} if the animals were friends
      * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals is
+     *         not in the zoo
+     */
+    public boolean unmakeFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        int x = idOf(a), y = idOf(b);
+        if (!graph.unlink(x, y)) return false;
+        if (metrics != null) metrics.unlinked(x, y);
+        if (journal != null) journal.unlinked(x, y);
+        return true;
+    }
+
+    /**
+     * Returns the index of an animal in the zoo: its position in
+     * {@link #getAnimalsView()} and in a {@linkplain #cursor() cursor},
+     * from 0 to the number of animals minus one. The index of an animal
+     * stays the same until an animal is removed.
+     *
+     * @param  animal the animal
+     * @return the index of the animal, or -1 if it is not in the zoo
+     * @throws NullPointerException if the animal is null
+     * @see    EdgeBatch
+     */
+    public int indexOf(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        return graph.idOf(animal);
+    }
+
+    /**
+     * Establishes all the friendships of a batch which are not
+     * established yet. The array of friends of every animal is replaced
+     * once by the merge of its friends and its new friends.
+     *
+     * @param  batch the friendships to establish
+     * @return the number of friendships established
+     * @throws NullPointerException if the batch is null
+     * @throws IllegalArgumentException if an index of the batch is not
+     *         the index of an animal in the zoo
+     * @see    #indexOf(ReadOnlyAnimal)
+     */
+    public long makeFriends(EdgeBatch batch) {
+        return applyBatch(batch, true, null);
+    }
+
+    /**
+     * Establishes all the friendships of a batch which are not
+     * established yet, as in {@link #makeFriends(EdgeBatch)}, updating
+     * the arrays of friends with the threads of the given pool. If the
+     * metrics are kept the friendships are established one by one.
+     *
+     * @param  batch the friendships to establish
+     * @param  pool the pool establishing the friendships
+     * @return the number of friendships established
+     * @throws NullPointerException if the batch or the pool is null
+     * @throws IllegalArgumentException if an index of the batch is not
+     *         the index of an animal in the zoo
+     */
+    public long makeFriends(EdgeBatch batch, ForkJoinPool pool) {
+        if (pool == null) throw new NullPointerException();
+        return applyBatch(batch, true, pool);
+    }
+
+    /**
+     * Breaks all the friendships of a batch which are established. The
+     * array of friends of every animal is updated once.
+     *
+     * @param  batch the friendships to break
+     * @return the number of friendships broken
+     * @throws NullPointerException if the batch is null
+     * @throws IllegalArgumentException if an index of the batch is not
+     *         the index of an animal in the zoo
+     * @see    #indexOf(ReadOnlyAnimal)
+     */
+    public long unmakeFriends(EdgeBatch batch) {
+        return applyBatch(batch, false, null);
+    }
+
+    /**
+     * Breaks all the friendships of a batch which are established, as in
+     * {@link #unmakeFriends(EdgeBatch)}, updating the arrays of friends
+     * with the threads of the given pool. If the metrics are kept the
+     * friendships are broken one by one.
+     *
+     * @param  batch the friendships to break
+     * @param  pool the pool breaking the friendships
+     * @return the number of friendships broken
+     * @throws NullPointerException if the batch or the pool is null
+     * @throws IllegalArgumentException if an index of the batch is not
+     *         the index of an animal in the zoo
      */
-    public boolean unmakeFriends(Animal a, Animal b) {
-        if (a == null || b == null) throw new NullPointerException();
-        return map.get(a).remove(b) // false if were not friends
-               && map.get(b).remove(a); // true if reached
+    public long unmakeFriends(EdgeBatch batch, ForkJoinPool pool) {
+        if (pool == null) throw new NullPointerException();
+        return applyBatch(batch, false, pool);
     }
 
     /**
      * A day goes by in the zoo in which each animal loses randomly one
      * friend (if there are any) and establishes friendship randomly
-     * with another animal.
+     * with another animal, drawn according to the
+     * {@linkplain #setFriendshipPolicy(FriendshipPolicy) friendship policy}.
      *
      * <p>
      * During a day, an animal could lose and establish friendship with
      * the same animal and the latter could even break friendship with
      * the first.
+     *
+     * <p>
+     * Every change is reported to the event sink of the zoo, which is
+     * flushed at the end of the day.
+     *
+     * @see #setEventSink(FriendshipEventSink)
      */
     public void liveDay() {
-        if (map.size() < 2) return;
-        Set<Animal> as = map.keySet();
-        Animal[] animals = as.toArray(new Animal[as.size()]);
-        for (Map.Entry<Animal, HashSet<Animal>> kv : map.entrySet()) {
-            Animal animal = kv.getKey();
+        liveDay(sink, null);
+        endDay();
+    }
+
+    /**
+     * A day goes by in the zoo, as in {@link #liveDay()}, computed by
+     * the threads of the given pool.
+     *
+     * <p>
+     * Every animal decides which friend it loses and which animal it
+     * makes friends with looking at the friendships at the beginning of
+     * the day, so unlike {@link #liveDay()} an animal does not see the
+     * changes made by other animals during the same day. The changes are
+     * then applied keeping the friendships symmetric, and reported to
+     * the sink in the order of the animals once all of them are applied.
+     *
+     * <p>
+     * The source of randomness of the zoo is split once per chunk of
+     * animals, so every thread draws from its own source. A source with
+     * the same seed gives the same days whatever the parallelism of the
+     * pool.
+     *
+     * @param  pool the pool running the day
+     * @throws NullPointerException if the pool is null
+     * @see    #setRandomSource(RandomSource)
+     */
+    public void liveDayInParallel(ForkJoinPool pool) {
+        if (pool == null) throw new NullPointerException();
+        liveDayInParallel(pool, sink, null);
+        endDay();
+    }
+
+    /**
+     * Several days go by in the zoo, as in {@link #liveDay()}.
+     *
+     * <p>
+     * The changes are not reported to the event sink of the zoo, only
+     * counted, and the days reuse the same buffers, so long simulations
+     * are bounded by computation rather than by output or garbage
+     * collection.
+     *
+     * @param  days the number of days
+     * @return the statistics of the days
+     * @throws IllegalArgumentException if the number of days is negative
+     */
+    public SimulationStats liveDays(int days) {
+        if (days < 0) throw new IllegalArgumentException("Illegal days: " + days);
+        SimulationStats stats = new SimulationStats(days);
+        FriendshipEventSink none = FriendshipEventSink.none();
+        for (int day = 0; day < days; day++) {
+            long start = System.nanoTime();
+            liveDay(none, stats);
+            endDay();
+            stats.endDay(System.nanoTime() - start);
+        }
+        stats.end(graph);
+        return stats;
+    }
+
+    /**
+     * Several days go by in the zoo, as in
+     * {@link #liveDayInParallel(ForkJoinPool)}.
+     *
+     * <p>
+     * The changes are not reported to the event sink of the zoo, only
+     * counted, and the days reuse the same buffers, so long simulations
+     * are bounded by computation rather than by output or garbage
+     * collection.
+     *
+     * @param  days the number of days
+     * @param  pool the pool running the days
+     * @return the statistics of the days
+     * @throws IllegalArgumentException if the number of days is negative
+     * @throws NullPointerException if the pool is null
+     */
+    public SimulationStats liveDays(int days, ForkJoinPool pool) {
+        if (days < 0) throw new IllegalArgumentException("Illegal days: " + days);
+        if (pool == null) throw new NullPointerException();
+        SimulationStats stats = new SimulationStats(days);
+        FriendshipEventSink none = FriendshipEventSink.none();
+        for (int day = 0; day < days; day++) {
+            long start = System.nanoTime();
+            liveDayInParallel(pool, none, stats);
+            endDay();
+            stats.endDay(System.nanoTime() - start);
+        }
+        stats.end(graph);
+        return stats;
+    }
+
+    /**
+     * Lives a day in this thread, reporting the changes to the given
+     * sink and, if not null, counting them in the given statistics.
+     */
+    private void liveDay(FriendshipEventSink sink, SimulationStats stats) {
+        int n = graph.size();
+        if (n < 2) return;
+        if (sampler != null) sampler.prepare();
+        for (int id = 0; id < n; id++) {
+            ReadOnlyAnimal animal = graph.animal(id);
             // lose a friend
-            HashSet<Animal> friends = kv.getValue();
-            if (!friends.isEmpty()) {
-                Animal[] friendsArray = friends.toArray(new Animal[friends.size()]);
-                int i = new Random().nextInt(friendsArray.length);
-                Animal friendToLose = friendsArray[i];
-                unmakeFriends(animal, friendToLose);
-                System.out.println(animal.getName() +
-                    " has lost friendship with " + friendToLose.getName());
+            int degree = graph.degree(id);
+            if (degree != 0) {
+                int friendToLose = graph.friend(id, random.nextInt(degree));
+                graph.unlink(id, friendToLose);
+                if (metrics != null) metrics.unlinked(id, friendToLose);
+                if (journal != null) journal.unlinked(id, friendToLose);
+                sink.friendshipLost(animal, graph.animal(friendToLose));
+                if (stats != null) stats.lost();
             }
             // make a friend
-            Animal[] notFriends = Arrays.stream(animals)
-                    .filter(x -> !areFriends(animal, x) && !animal.equals(x))
-                    .toArray(Animal[]::new);
-            // notFriends.length != 0
-            int i = new Random().nextInt(notFriends.length);
-            Animal newFriend = notFriends[i];
-            makeFriends(animal, newFriend);
-            System.out.println(animal.getName() +
-                " has established friendship with " + newFriend.getName());
+            int newFriend = sampler == null
+                ? graph.randomNotFriend(id, -1, random)
+                : sampler.randomFriend(id, -1, random);
+            if (newFriend < 0) continue; // friend of every animal
+            graph.link(id, newFriend);
+            if (metrics != null) metrics.linked(id, newFriend);
+            if (journal != null) journal.linked(id, newFriend);
+            sink.friendshipEstablished(animal, graph.animal(newFriend));
+            if (stats != null) stats.established();
+        }
+        sink.flush();
+    }
+
+    /**
+     * Lives a day in the given pool, reporting the changes to the given
+     * sink and, if not null, counting them in the given statistics.
+     */
+    private void liveDayInParallel(ForkJoinPool pool, FriendshipEventSink sink,
+                                   SimulationStats stats) {
+        if (parallelDay == null) parallelDay = new ParallelDay(graph);
+        ParallelDay day = parallelDay;
+        if (sampler != null) sampler.prepare();
+        boolean capped = sampler != null && sampler.hasCaps();
+        if (metrics == null && !capped) {
+            day.live(pool, random, sampler);
+        } else {
+            // the metrics follow every change, in the same order as the
+            // journal: first the friendships lost, then the new ones,
+            // dropping those beyond the maximum numbers of friends
+            day.decide(pool, random, sampler);
+            for (int id = 0, n = graph.size(); id < n; id++) {
+                int friend = day.lostBy(id);
+                if (friend >= 0 && graph.unlink(id, friend) && metrics != null) {
+                    metrics.unlinked(id, friend);
+                }
+            }
+            for (int id = 0, n = graph.size(); id < n; id++) {
+                int friend = day.gainedBy(id);
+                if (friend < 0) continue;
+                if (capped && !sampler.canLink(id, friend)) {
+                    day.dropGained(id);
+                } else if (graph.link(id, friend) && metrics != null) {
+                    metrics.linked(id, friend);
+                }
+            }
+        }
+        if (journal != null) {
+            // the day removed all the lost friendships, then added the
+            // new ones, which may restore some of them
+            for (int id = 0, n = graph.size(); id < n; id++) {
+                int friend = day.lostBy(id);
+                if (friend >= 0) journal.unlinked(id, friend);
+            }
+            for (int id = 0, n = graph.size(); id < n; id++) {
+                int friend = day.gainedBy(id);
+                if (friend >= 0) journal.linked(id, friend);
+            }
+        }
+        for (int id = 0, n = graph.size(); id < n; id++) {
+            int friend = day.lostBy(id);
+            if (friend >= 0) {
+                sink.friendshipLost(graph.animal(id), graph.animal(friend));
+                if (stats != null) stats.lost();
+            }
+            friend = day.gainedBy(id);
+            if (friend >= 0) {
+                sink.friendshipEstablished(graph.animal(id),
+                                           graph.animal(friend));
+                if (stats != null) stats.established();
+            }
+        }
+        sink.flush();
+    }
+
+    /**
+     * Makes or breaks the friendships of a batch, logging the ones which
+     * changed.
+     */
+    private long applyBatch(EdgeBatch batch, boolean link, ForkJoinPool pool) {
+        if (batch == null) throw new NullPointerException();
+        int n = graph.size();
+        int[][] grouped = batch.group(n, pool);
+        int[] offsets = grouped[0], targets = grouped[1];
+        long changed = 0;
+        if (metrics == null) {
+            changed = link ? graph.linkAll(offsets, targets, pool)
+                           : graph.unlinkAll(offsets, targets, pool);
+        } else {
+            // the metrics follow every change; mark the changes as the
+            // graph does, once per friendship
+            for (int x = 0; x < n; x++) {
+                for (int i = offsets[x]; i < offsets[x + 1]; i++) {
+                    int y = targets[i];
+                    if (x > y) continue;
+                    if (link ? graph.link(x, y) : graph.unlink(x, y)) {
+                        if (link) metrics.linked(x, y); else metrics.unlinked(x, y);
+                        targets[i] = ~y;
+                        changed++;
+                    }
+                }
+            }
+        }
+        if (journal != null) {
+            for (int x = 0; x < n; x++) {
+                for (int i = offsets[x]; i < offsets[x + 1]; i++) {
+                    int y = ~targets[i];
+                    if (y < 0 || x > y) continue; // unchanged or seen from y
+                    if (link) journal.linked(x, y); else journal.unlinked(x, y);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Removes the marked animals, logging their removal in decreasing id
+     * order, which gives the same ids when replayed one by one.
+     */
+    private void removeAll(boolean[] removed, int count, ForkJoinPool pool) {
+        if (index != null) {
+            for (int id = 0; id < removed.length; id++) {
+                if (removed[id]) index.remove(graph.animal(id));
+            }
+        }
+        if (metrics != null) metrics.removingAll(removed);
+        graph.removeAll(removed, count, pool);
+        if (sampler != null && count > 0) sampler.invalidate();
+        if (journal == null) return;
+        for (int id = removed.length - 1; id >= 0; id--) {
+            if (removed[id]) journal.removed(id);
+        }
+    }
+
+    /**
+     * Finds the animals with the given value of an attribute in the
+     * indexes, or testing every animal if not indexed.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends ReadOnlyAnimal> Set<T> find(int attribute, Object value) {
+        if (index != null) return index.get(attribute, value);
+        Set<T> found = new HashSet<>();
+        for (int id = 0, n = graph.size(); id < n; id++) {
+            ReadOnlyAnimal animal = graph.animal(id);
+            if (AnimalIndex.matches(animal, attribute, value)) found.add((T) animal);
+        }
+        return found;
+    }
+
+    /**
+     * Ends a day, committing the journal and publishing a snapshot if
+     * enabled.
+     */
+    private void endDay() {
+        day++;
+        if (journal != null) journal.endDay();
+        if (publishing) publishSnapshot();
+    }
+
+    /**
+     * Returns the graph of the zoo.
+     */
+    FriendshipGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Sets the journal logging the changes of the zoo, or null.
+     */
+    void setJournal(ZooJournal journal) {
+        this.journal = journal;
+    }
+
+    private void checkForComodification(int expectedModCount) {
+        if (graph.modCount() != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns the id of the given animal.
+     *
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal is not in the zoo
+     */
+    private int idOf(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        int id = graph.idOf(animal);
+        if (id < 0) {
+            throw new IllegalArgumentException(animal + " is not in the zoo");
         }
+        return id;
     }
 }
@@ -0,0 +1,538 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The binary file format of a zoo.
+ *
+ * <p>
+ * A file has four sections, all little-endian:
+ * <ol>
+ * <li>a header of {@value #HEADER_SIZE} bytes: the magic number, the
+ *     version, the number of animals, the CRC-32 of the rest of the
+ *     file, the day, the number of friendships and the offset of the
+ *     third section.</li>
+ * <li>a record per animal, in id order: its kind and its fields, the
+ *     id first for the immutable animals. A string is its length in
+ *     UTF-8 bytes followed by the bytes, and a nullable value is
+ *     preceded by a flag.</li>
+ * <li>the number of friends of every animal, as {@code int}s.</li>
+ * <li>the sorted ids of the friends of every animal, as {@code int}s.</li>
+ * </ol>
+ * The last two sections are the friendships in compressed sparse row
+ * (CSR) format, exactly as the arrays of friends of the graph. A file is
+ * written in a single streaming pass through a small buffer, and read
+ * through memory-mapped windows of the file by copying every array of
+ * friends in bulk, without inserting the friendships one by one.
+ * Storing both halves of every friendship doubles the size of the
+ * friendships but makes loading a sequential read instead of scattered
+ * writes into the arrays of friends, which is several times faster.
+ * The checksum catches corrupted files, whose friendships could be
+ * asymmetric otherwise.
+ *
+ * <p>
+ * A file is written to a temporary file first, which then replaces the
+ * target, so a crash never leaves a partially written file in its place.
+ *
+ * @author Lisandro Fernandez
+ */
+final class ZooFile {
+    private static final int MAGIC = 0x214F4F5A; // "ZOO!"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private static final byte NULL = -1;
+    private static final byte ANIMAL = 0;
+    private static final byte BIRD = 1;
+    private static final byte DOG = 2;
+    private static final byte PARROT = 3;
+    private static final byte CHICKEN = 4;
+    private static final byte IMMUTABLE_DOG = 5;
+    private static final byte IMMUTABLE_PARROT = 6;
+    private static final byte IMMUTABLE_CHICKEN = 7;
+    private static final byte IMMUTABLE_ANIMAL = 8;
+    private static final byte IMMUTABLE_BIRD = 9;
+
+    /**
+     * The bytes of the record of an animal besides its strings.
+     */
+    private static final int MAX_FIXED_BYTES = 24;
+
+    private ZooFile() { }
+
+    /**
+     * Writes a snapshot of a zoo to a file, replacing it if it exists.
+     *
+     * @param  snapshot the snapshot to write
+     * @param  path the file to write
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if an animal is of a class other
+     *         than {@code Animal}, {@code Bird}, {@code Dog},
+     *         {@code Parrot}, {@code Chicken} and their immutable
+     *         variants
+     */
+    static void write(ZooSnapshot snapshot, Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(snapshot, channel);
+                channel.force(false);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private static void write(ZooSnapshot snapshot, FileChannel channel)
+            throws IOException {
+        int n = snapshot.size();
+        channel.position(HEADER_SIZE);
+        Output out = new Output(channel, HEADER_SIZE);
+        for (int id = 0; id < n; id++) out.putAnimal(snapshot.animal(id));
+        long degreesOffset = out.position();
+        long ends = 0;
+        for (int id = 0; id < n; id++) {
+            out.putInt(snapshot.degree(id));
+            ends += snapshot.degree(id);
+        }
+        for (int id = 0; id < n; id++) {
+            out.putInts(snapshot.friendIds(id), snapshot.degree(id));
+        }
+        out.flush();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(n)
+              .putInt((int) out.crc.getValue())
+              .putLong(snapshot.getDay()).putLong(ends / 2)
+              .putLong(degreesOffset);
+        ((Buffer) header).flip();
+        for (long p = 0; header.hasRemaining(); ) p += channel.write(header, p);
+    }
+
+    /**
+     * Reads a zoo from a file.
+     *
+     * @param  path the file to read
+     * @return the zoo in the file
+     * @throws IOException if an I/O error occurs or the file is not a
+     *         valid zoo file
+     */
+    static Zoo read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) throw new IOException("Not a zoo file: " + path);
+            Input in = new Input(channel, size);
+            if (in.getInt() != MAGIC) throw new IOException("Not a zoo file: " + path);
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported zoo file version: " + version);
+            }
+            int n = in.getInt();
+            int crc = in.getInt();
+            long day = in.getLong();
+            long friendships = in.getLong();
+            long degreesOffset = in.getLong();
+            if (n < 0 || friendships < 0 || degreesOffset < HEADER_SIZE
+                    || degreesOffset + 4L * n + 8L * friendships != size
+                    || crc != checksum(channel, size)) {
+                throw corrupt(path);
+            }
+
+            FriendshipGraph graph = new FriendshipGraph(n);
+            for (int id = 0; id < n; id++) graph.add(in.getAnimal(path));
+            if (in.position() != degreesOffset) throw corrupt(path);
+
+            int[] degrees = new int[n];
+            long ends = 0;
+            for (int id = 0; id < n; id++) {
+                int d = in.getInt();
+                if (d < 0 || d >= n) throw corrupt(path);
+                degrees[id] = d;
+                ends += d;
+            }
+            if (ends != 2 * friendships) throw corrupt(path);
+
+            for (int id = 0; id < n; id++) {
+                int d = degrees[id];
+                if (d == 0) continue;
+                int[] row = new int[d];
+                in.getInts(row, d);
+                for (int i = 0, previous = -1; i < d; i++) {
+                    int f = row[i];
+                    if (f <= previous || f >= n || f == id) throw corrupt(path);
+                    previous = f;
+                }
+                graph.setFriends(id, row, d);
+            }
+            return new Zoo(graph, day);
+        }
+    }
+
+    /**
+     * Returns an upper bound of the bytes of the record of an animal.
+     *
+     * @throws IllegalArgumentException if the class of the animal is
+     *         unknown to the format
+     */
+    static int maxAnimalBytes(ReadOnlyAnimal animal) {
+        kindOf(animal);
+        return MAX_FIXED_BYTES + maxStringBytes(animal.getName())
+               + maxStringBytes(animal.getFavouriteFood());
+    }
+
+    private static int maxStringBytes(String s) {
+        // a char takes at most 3 bytes in UTF-8, a surrogate pair 4
+        return s == null ? 0 : 3 * s.length();
+    }
+
+    /**
+     * Puts the record of an animal into a little-endian buffer with at
+     * least {@link #maxAnimalBytes(ReadOnlyAnimal)} bytes remaining.
+     *
+     * @throws IllegalArgumentException if the class of the animal is
+     *         unknown to the format
+     */
+    static void putAnimal(ByteBuffer buffer, ReadOnlyAnimal animal) {
+        byte kind = kindOf(animal);
+        buffer.put(kind);
+        if (kind >= IMMUTABLE_DOG) buffer.putLong(idOf(kind, animal));
+        putString(buffer, animal.getName());
+        putString(buffer, animal.getFavouriteFood());
+        if (animal instanceof ReadOnlyDog) {
+            DogType type = ((ReadOnlyDog) animal).getType();
+            buffer.put(type == null ? NULL : (byte) type.ordinal());
+        } else if (animal instanceof ReadOnlyBird) {
+            if (animal instanceof Bird
+                && ((Bird) animal).getWingsLength() == null) {
+                buffer.put(NULL);
+            } else {
+                buffer.put((byte) 1);
+                buffer.putFloat(((ReadOnlyBird) animal).wingsLength());
+            }
+            if (animal instanceof ReadOnlyParrot) {
+                putBoolean(buffer, ((ReadOnlyParrot) animal).canSpeak());
+            }
+            if (animal instanceof ReadOnlyChicken) {
+                putBoolean(buffer, ((ReadOnlyChicken) animal).isBoiler());
+            }
+        }
+    }
+
+    /**
+     * Gets the record of an animal from a little-endian buffer.
+     *
+     * @param  buffer the buffer
+     * @param  path the file being read, for the error messages
+     * @return a new animal
+     * @throws BufferUnderflowException if the record does not fit in the
+     *         remaining bytes
+     * @throws IOException if the record is not valid
+     */
+    static ReadOnlyAnimal getAnimal(ByteBuffer buffer, Path path)
+            throws IOException {
+        byte kind = buffer.get();
+        long id = kind >= IMMUTABLE_DOG ? buffer.getLong() : 0;
+        String name = getString(buffer, path);
+        String favouriteFood = getString(buffer, path);
+        switch (kind) {
+        case ANIMAL:
+            return new Animal(name, favouriteFood);
+        case DOG:
+            byte type = buffer.get();
+            if (type < NULL || type >= DogType.values().length) throw corrupt(path);
+            return new Dog(name, favouriteFood,
+                           type == NULL ? null : DogType.values()[type]);
+        case IMMUTABLE_DOG:
+            type = buffer.get();
+            if (type < NULL || type >= DogType.values().length) throw corrupt(path);
+            return new ImmutableDog(id, name, favouriteFood,
+                                    type == NULL ? null : DogType.values()[type]);
+        case IMMUTABLE_ANIMAL:
+            return new ImmutableAnimal(id, name, favouriteFood);
+        case IMMUTABLE_BIRD:
+        case IMMUTABLE_PARROT:
+        case IMMUTABLE_CHICKEN:
+            if (buffer.get() != 1) throw corrupt(path);
+            float wings = buffer.getFloat();
+            if (kind == IMMUTABLE_BIRD) {
+                return new ImmutableBird(id, name, favouriteFood, wings);
+            }
+            byte b = buffer.get();
+            if (b != 0 && b != 1) throw corrupt(path);
+            if (kind == IMMUTABLE_PARROT) {
+                return new ImmutableParrot(id, name, favouriteFood, wings, b == 1);
+            }
+            return new ImmutableChicken(id, name, favouriteFood, wings, b == 1);
+        case BIRD:
+        case PARROT:
+        case CHICKEN:
+            Float wingsLength = buffer.get() == NULL ? null : buffer.getFloat();
+            if (kind == PARROT) {
+                return new Parrot(name, favouriteFood, wingsLength,
+                                  getBoolean(buffer));
+            }
+            if (kind == CHICKEN) {
+                return new Chicken(name, favouriteFood, wingsLength,
+                                   getBoolean(buffer));
+            }
+            return new Bird(name, favouriteFood, wingsLength);
+        default:
+            throw corrupt(path);
+        }
+    }
+
+    private static long idOf(byte kind, ReadOnlyAnimal animal) {
+        switch (kind) {
+        case IMMUTABLE_DOG:
+            return ((ImmutableDog) animal).getId();
+        case IMMUTABLE_PARROT:
+            return ((ImmutableParrot) animal).getId();
+        case IMMUTABLE_CHICKEN:
+            return ((ImmutableChicken) animal).getId();
+        case IMMUTABLE_ANIMAL:
+            return ((ImmutableAnimal) animal).getId();
+        case IMMUTABLE_BIRD:
+            return ((ImmutableBird) animal).getId();
+        default:
+            throw new AssertionError(kind);
+        }
+    }
+
+    private static byte kindOf(ReadOnlyAnimal animal) {
+        Class<?> type = animal.getClass();
+        if (type == Animal.class) return ANIMAL;
+        if (type == Bird.class) return BIRD;
+        if (type == Dog.class) return DOG;
+        if (type == Parrot.class) return PARROT;
+        if (type == Chicken.class) return CHICKEN;
+        if (type == ImmutableDog.class) return IMMUTABLE_DOG;
+        if (type == ImmutableParrot.class) return IMMUTABLE_PARROT;
+        if (type == ImmutableChicken.class) return IMMUTABLE_CHICKEN;
+        if (type == ImmutableAnimal.class) return IMMUTABLE_ANIMAL;
+        if (type == ImmutableBird.class) return IMMUTABLE_BIRD;
+        throw new IllegalArgumentException("Unsupported animal: " +
+                                           type.getName());
+    }
+
+    private static void putString(ByteBuffer buffer, String s) {
+        if (s == null) {
+            buffer.putInt(NULL);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer, Path path)
+            throws IOException {
+        int length = buffer.getInt();
+        if (length == NULL) return null;
+        if (length < 0) throw corrupt(path);
+        if (length > buffer.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putBoolean(ByteBuffer buffer, Boolean b) {
+        buffer.put(b == null ? NULL : b ? (byte) 1 : (byte) 0);
+    }
+
+    private static Boolean getBoolean(ByteBuffer buffer) {
+        byte b = buffer.get();
+        return b == NULL ? null : b != 0;
+    }
+
+    /**
+     * Returns the CRC-32 of a file after the header.
+     */
+    private static int checksum(FileChannel channel, long size)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        for (long p = HEADER_SIZE; p < size; p += WINDOW_SIZE) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, p,
+                                   Math.min(WINDOW_SIZE, size - p)));
+        }
+        return (int) crc.getValue();
+    }
+
+    static IOException corrupt(Path path) {
+        return new IOException("Corrupt zoo file: " + path);
+    }
+
+    /**
+     * A buffered writer of the values of a file.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+                                              .order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private long flushed;
+
+        Output(FileChannel channel, long position) {
+            this.channel = channel;
+            this.flushed = position;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void putInt(int i) throws IOException {
+            ensure(4);
+            buffer.putInt(i);
+        }
+
+        void putInts(int[] ints, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                ensure(4);
+                IntBuffer view = buffer.asIntBuffer();
+                int n = Math.min(length - i, view.remaining());
+                view.put(ints, i, n);
+                ((Buffer) buffer).position(buffer.position() + 4 * n);
+                i += n;
+            }
+        }
+
+        void putAnimal(ReadOnlyAnimal animal) throws IOException {
+            int bytes = maxAnimalBytes(animal);
+            ensure(bytes);
+            if (bytes > buffer.capacity()) {
+                // only for huge strings
+                buffer = ByteBuffer.allocateDirect(bytes)
+                                   .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            ZooFile.putAnimal(buffer, animal);
+        }
+
+        void flush() throws IOException {
+            ((Buffer) buffer).flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) channel.write(buffer);
+            flushed += buffer.limit();
+            ((Buffer) buffer).clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+    }
+
+    /**
+     * A reader of the values of a file through a memory-mapped window,
+     * which moves forward as the file is read. Files larger than a
+     * single {@code MappedByteBuffer} are read through several windows.
+     */
+    private static final class Input {
+        private final FileChannel channel;
+        private final long size;
+        private long base;
+        private MappedByteBuffer buffer;
+
+        Input(FileChannel channel, long size) throws IOException {
+            this.channel = channel;
+            this.size = size;
+            seek(0);
+        }
+
+        long position() {
+            return base + buffer.position();
+        }
+
+        void seek(long position) throws IOException {
+            base = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                 Math.min(WINDOW_SIZE, size - position));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        void getInts(int[] ints, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                ensure(4);
+                IntBuffer view = buffer.asIntBuffer();
+                int n = Math.min(length - i, view.remaining());
+                view.get(ints, i, n);
+                ((Buffer) buffer).position(buffer.position() + 4 * n);
+                i += n;
+            }
+        }
+
+        /**
+         * Gets an animal, moving the window to the start of the record
+         * if the record crosses the end of the window.
+         */
+        ReadOnlyAnimal getAnimal(Path path) throws IOException {
+            long start = position();
+            try {
+                return ZooFile.getAnimal(buffer, path);
+            } catch (BufferUnderflowException e) {
+                if (start == base) throw corrupt(path);
+                seek(start);
+                return getAnimal(path);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                long position = position();
+                if (size - position < bytes) {
+                    throw new IOException("Unexpected end of zoo file");
+                }
+                seek(position);
+            }
+        }
+    }
+}
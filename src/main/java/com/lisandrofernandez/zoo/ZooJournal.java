@@ -0,0 +1,557 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of the changes of a zoo, which makes the zoo
+ * durable without saving all of it after every change.
+ *
+ * <p>
+ * A journal lives in a directory with a snapshot of the zoo, written
+ * by {@link Zoo#save(Path)}, and a log of the changes made since the
+ * snapshot: animals added and removed and friendships made and broken,
+ * by the days or by the methods of the zoo. Animals are logged by id,
+ * so a friendship costs 9 bytes. Opening a journal loads the snapshot
+ * and replays the log, which gives the zoo with the same animals, ids,
+ * friendships and day as when the log was last committed.
+ *
+ * <p>
+ * The changes are buffered and written in checksummed frames. The log
+ * is committed, i.e. written and forced to the disk, once at the end of
+ * every day and on {@link #sync()}, so a single {@code fsync} covers
+ * all the changes of a day (group commit). A crash loses the changes
+ * made since the last commit, and a frame torn by a crash is dropped
+ * when the journal is opened.
+ *
+ * <p>
+ * When the log grows beyond the compaction threshold, the journal is
+ * compacted at the end of the next day: a new snapshot is written and
+ * the changes before it are deleted. A crash during the compaction
+ * leaves the previous snapshot and logs, which are still replayed.
+ *
+ * <p>
+ * This class is not thread-safe, like {@link Zoo}.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public final class ZooJournal implements Closeable {
+    private static final int MAGIC = 0x474F4C5A; // "ZLOG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 64L << 20;
+
+    private static final String SNAPSHOT = "snapshot.";
+    private static final String LOG = "log.";
+    private static final String TMP = ".tmp";
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte LINK = 3;
+    private static final byte UNLINK = 4;
+    private static final byte DAY = 5;
+
+    private final Path directory;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = newBuffer(BUFFER_SIZE);
+    private Zoo zoo;
+    private FileChannel log;
+    private long segment;
+    private long logSize;
+    private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    private ZooJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the journal in a directory, creating the directory and an
+     * empty zoo if they do not exist. The zoo of the journal is
+     * returned by {@link #getZoo()} and all its changes are logged until
+     * the journal is closed.
+     *
+     * @param  directory the directory of the journal
+     * @return the journal
+     * @throws NullPointerException if the directory is null
+     * @throws IOException if an I/O error occurs or a file of the
+     *         journal is corrupt
+     */
+    public static ZooJournal open(Path directory) throws IOException {
+        if (directory == null) throw new NullPointerException();
+        Files.createDirectories(directory);
+        ZooJournal journal = new ZooJournal(directory);
+        journal.recover();
+        return journal;
+    }
+
+    /**
+     * Returns the zoo of the journal.
+     *
+     * @return the zoo
+     */
+    public Zoo getZoo() {
+        return zoo;
+    }
+
+    /**
+     * Returns the size in bytes of the log since the last snapshot.
+     *
+     * @return the size of the log
+     */
+    public long getLogSize() {
+        return logSize + buffer.position() - FRAME_HEADER_SIZE;
+    }
+
+    /**
+     * Returns the size of the log beyond which the journal is compacted
+     * at the end of a day.
+     *
+     * @return the compaction threshold in bytes
+     */
+    public long getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * Sets the size of the log beyond which the journal is compacted at
+     * the end of a day. The default is 64 MB; {@code Long.MAX_VALUE}
+     * disables the automatic compaction.
+     *
+     * @param  bytes the compaction threshold in bytes
+     * @throws IllegalArgumentException if the threshold is not positive
+     */
+    public void setCompactionThreshold(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Illegal compaction threshold: " +
+                                               bytes);
+        }
+        compactionThreshold = bytes;
+    }
+
+    /**
+     * Commits the changes logged so far, writing them and forcing them
+     * to the disk.
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalStateException if the journal is closed
+     */
+    public void sync() throws IOException {
+        checkOpen();
+        commit();
+    }
+
+    /**
+     * Compacts the journal: writes a snapshot of the zoo and deletes
+     * the previous snapshot and the logged changes.
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalStateException if the journal is closed
+     */
+    public void compact() throws IOException {
+        checkOpen();
+        commit();
+        ZooSnapshot snapshot = zoo.snapshot();
+        // log the next changes to a new segment before writing the
+        // snapshot, so a crash meanwhile replays both segments
+        long next = segment + 1;
+        FileChannel nextLog = createLog(next);
+        log.close();
+        log = nextLog;
+        segment = next;
+        logSize = HEADER_SIZE;
+        ZooFile.write(snapshot, file(SNAPSHOT, next));
+        syncDirectory();
+        deleteBefore(next);
+    }
+
+    /**
+     * Commits the changes logged so far and closes the journal. Later
+     * changes of the zoo are not logged.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (log == null) return;
+        try {
+            commit();
+        } finally {
+            zoo.setJournal(null);
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Logs an animal added to the zoo. Called before adding it, so an
+     * animal the journal cannot log is not added.
+     *
+     * @throws IllegalArgumentException if the class of the animal is
+     *         unknown to the file format
+     * @throws UncheckedIOException if an I/O error occurs
+     */
+    void added(ReadOnlyAnimal animal) {
+        int bytes = 1 + ZooFile.maxAnimalBytes(animal);
+        ensure(bytes);
+        buffer.put(ADD);
+        ZooFile.putAnimal(buffer, animal);
+    }
+
+    /**
+     * Logs the removal of the animal with the given id.
+     *
+     * @throws UncheckedIOException if an I/O error occurs
+     */
+    void removed(int id) {
+        ensure(5);
+        buffer.put(REMOVE).putInt(id);
+    }
+
+    /**
+     * Logs a friendship made between the animals with the given ids.
+     *
+     * @throws UncheckedIOException if an I/O error occurs
+     */
+    void linked(int x, int y) {
+        ensure(9);
+        buffer.put(LINK).putInt(x).putInt(y);
+    }
+
+    /**
+     * Logs a friendship broken between the animals with the given ids.
+     *
+     * @throws UncheckedIOException if an I/O error occurs
+     */
+    void unlinked(int x, int y) {
+        ensure(9);
+        buffer.put(UNLINK).putInt(x).putInt(y);
+    }
+
+    /**
+     * Logs the end of a day and commits it, compacting the journal if
+     * the log is over the threshold.
+     *
+     * @throws UncheckedIOException if an I/O error occurs
+     */
+    void endDay() {
+        ensure(1);
+        buffer.put(DAY);
+        try {
+            commit();
+            if (logSize >= compactionThreshold) compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads the last snapshot and replays the logs after it, deleting
+     * the files left by an interrupted compaction.
+     */
+    private void recover() throws IOException {
+        long base = 0;
+        boolean hasSnapshot = false;
+        TreeSet<Long> logs = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TMP)) {
+                    Files.delete(file);
+                } else if (sequence(name, SNAPSHOT) >= base) {
+                    base = sequence(name, SNAPSHOT);
+                    hasSnapshot = true;
+                } else if (sequence(name, LOG) >= 0) {
+                    logs.add(sequence(name, LOG));
+                }
+            }
+        }
+        deleteBefore(base);
+        Zoo loaded = hasSnapshot ? ZooFile.read(file(SNAPSHOT, base)) : new Zoo();
+        FriendshipGraph graph = loaded.graph();
+        long day = loaded.getDay();
+        segment = base;
+        long valid = -1;
+        for (long s : logs.tailSet(base)) {
+            if (valid >= 0) {
+                // only the last log can have torn frames
+                if (valid < Files.size(file(LOG, segment))) {
+                    throw corrupt(file(LOG, segment));
+                }
+                segment++;
+            }
+            if (s != segment) {
+                throw new IOException("Missing log " + segment + " in " +
+                                      directory);
+            }
+            long[] replayed = replay(file(LOG, s), graph);
+            valid = replayed[0];
+            day += replayed[1];
+        }
+        zoo = new Zoo(graph, day);
+        if (valid < 0) {
+            log = createLog(segment);
+            logSize = HEADER_SIZE;
+        } else {
+            log = openLog(segment, valid);
+        }
+        zoo.setJournal(this);
+    }
+
+    /**
+     * Replays a log into a graph.
+     *
+     * @return the length of the valid frames and the number of days
+     */
+    private long[] replay(Path path, FriendshipGraph graph) throws IOException {
+        long days = 0;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) return new long[] { 0, 0 };
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a zoo log: " + path);
+            }
+            long position = HEADER_SIZE;
+            while (size - position >= FRAME_HEADER_SIZE) {
+                header = read(channel, position, FRAME_HEADER_SIZE);
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < 0 || length > size - position - FRAME_HEADER_SIZE) {
+                    break; // torn
+                }
+                ByteBuffer frame = read(channel, position + FRAME_HEADER_SIZE,
+                                        length);
+                crc.reset();
+                crc.update(frame.duplicate());
+                if ((int) crc.getValue() != checksum) break; // torn
+                try {
+                    days += apply(frame, graph, path);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                    throw corrupt(path);
+                }
+                position += FRAME_HEADER_SIZE + length;
+            }
+            return new long[] { position, days };
+        }
+    }
+
+    /**
+     * Applies the changes of a frame to a graph.
+     *
+     * @return the number of days in the frame
+     */
+    private static long apply(ByteBuffer frame, FriendshipGraph graph, Path path)
+            throws IOException {
+        long days = 0;
+        while (frame.hasRemaining()) {
+            byte op = frame.get();
+            switch (op) {
+            case ADD:
+                graph.add(ZooFile.getAnimal(frame, path));
+                break;
+            case REMOVE:
+                graph.remove(graph.animal(checkId(frame.getInt(), graph)));
+                break;
+            case LINK:
+            case UNLINK:
+                int x = checkId(frame.getInt(), graph);
+                int y = checkId(frame.getInt(), graph);
+                if (x == y) throw corrupt(path);
+                if (op == LINK) {
+                    graph.link(x, y);
+                } else {
+                    graph.unlink(x, y);
+                }
+                break;
+            case DAY:
+                days++;
+                break;
+            default:
+                throw corrupt(path);
+            }
+        }
+        return days;
+    }
+
+    private static int checkId(int id, FriendshipGraph graph) {
+        if (id < 0 || id >= graph.size()) throw new IndexOutOfBoundsException();
+        return id;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position,
+                                   int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of zoo log");
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    private FileChannel createLog(long segment) throws IOException {
+        FileChannel channel = FileChannel.open(file(LOG, segment),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION);
+        ((Buffer) header).flip();
+        while (header.hasRemaining()) channel.write(header);
+        channel.force(true);
+        syncDirectory();
+        return channel;
+    }
+
+    /**
+     * Opens a log to append to it, dropping the torn frames after the
+     * given valid length.
+     */
+    private FileChannel openLog(long segment, long valid) throws IOException {
+        if (valid < HEADER_SIZE) {
+            Files.delete(file(LOG, segment));
+            logSize = HEADER_SIZE;
+            return createLog(segment);
+        }
+        FileChannel channel = FileChannel.open(file(LOG, segment),
+                                               StandardOpenOption.WRITE);
+        if (channel.size() > valid) {
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+        logSize = valid;
+        return channel;
+    }
+
+    /**
+     * Makes room in the buffer for a record, writing the buffered frame
+     * if it is full.
+     */
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) return;
+        try {
+            writeFrame();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (buffer.remaining() < bytes) {
+            // only for an animal with huge strings
+            buffer = newBuffer(FRAME_HEADER_SIZE + bytes);
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        int length = buffer.position() - FRAME_HEADER_SIZE;
+        if (length == 0) return;
+        ByteBuffer frame = buffer.duplicate();
+        ((Buffer) frame).flip().position(FRAME_HEADER_SIZE);
+        crc.reset();
+        crc.update(frame);
+        buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+        ((Buffer) buffer).flip();
+        while (buffer.hasRemaining()) log.write(buffer);
+        logSize += buffer.limit();
+        ((Buffer) buffer).clear().position(FRAME_HEADER_SIZE);
+    }
+
+    private void commit() throws IOException {
+        writeFrame();
+        log.force(false);
+    }
+
+    private void checkOpen() {
+        if (log == null) throw new IllegalStateException("Journal closed");
+    }
+
+    /**
+     * Deletes the snapshots and logs before the given segment.
+     */
+    private void deleteBefore(long segment) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long s = Math.max(sequence(name, SNAPSHOT), sequence(name, LOG));
+                if (s >= 0 && s < segment) Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Forces the directory entries to the disk, where supported.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory,
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported by every platform
+        }
+    }
+
+    private Path file(String prefix, long segment) {
+        return directory.resolve(prefix + segment);
+    }
+
+    /**
+     * Returns the segment of a file with the given prefix, or -1 if the
+     * name is not the prefix followed by a segment.
+     */
+    private static long sequence(String name, String prefix) {
+        if (!name.startsWith(prefix)) return -1;
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity)
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        ((Buffer) buffer).position(FRAME_HEADER_SIZE);
+        return buffer;
+    }
+
+    private static IOException corrupt(Path path) {
+        return new IOException("Corrupt zoo log: " + path);
+    }
+}
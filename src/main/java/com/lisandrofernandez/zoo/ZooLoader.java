@@ -0,0 +1,618 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Loads a zoo from a file of animals and a file of friendships, in CSV
+ * or JSON lines format.
+ *
+ * <p>
+ * Every line of the animals file is an animal: {@code Animal},
+ * {@code Bird}, {@code Dog}, {@code Parrot} or {@code Chicken}. In CSV
+ * the columns are the kind, the name and the favourite food, followed
+ * by the type of a dog, or by the length of the wings of a bird and
+ * whether a parrot can speak or a chicken is a broiler. An empty value
+ * is null, and the first line is skipped if its first column is
+ * {@code kind}:
+ * <pre>
+ * kind,name,favourite food,type or wings length,speak or broiler
+ * Dog,Killian,Meat,Hunting
+ * Parrot,Parrot one,Grain,0.25,false
+ * </pre>
+ * In JSON lines every line is an object with the keys {@code kind},
+ * {@code name}, {@code favouriteFood}, {@code type},
+ * {@code wingsLength}, {@code speak} and {@code boiler}:
+ * <pre>
+ * {"kind": "Dog", "name": "Killian", "favouriteFood": "Meat", "type": "HUNTING"}
+ * </pre>
+ * Every line of the friendships file is a friendship between two
+ * animals, given by their (0-based) line in the animals file, not
+ * counting blank lines and the header: {@code 0,1} in CSV and
+ * {@code [0, 1]} in JSON lines. Repeated friendships and friendships of
+ * an animal with itself are ignored.
+ *
+ * <p>
+ * The files are read in chunks of {@value #CHUNK_SIZE} bytes, parsed by
+ * the threads of a pool, so memory is bounded by the chunks in flight
+ * and the zoo itself. The animals keep the order of the file. The
+ * friendships are read twice: once to count the friends of every
+ * animal and once to fill arrays of friends of the exact size, which
+ * are then sorted and installed in the zoo at once. No friendship is
+ * held in memory other than in its final place.
+ *
+ * @author Lisandro Fernandez
+ */
+
+public final class ZooLoader {
+    private static final int CHUNK_SIZE = 8 << 20;
+    private static final int LINE_SLACK = 1 << 16;
+    private static final int ANIMALS_PER_TASK = 1 << 12;
+
+    /**
+     * The format of the files.
+     */
+    public enum Format {
+        /**
+         * Comma-separated values, with double quotes around values with
+         * commas or quotes and doubled quotes inside them.
+         */
+        CSV,
+
+        /**
+         * A JSON value per line.
+         */
+        JSON_LINES
+    }
+
+    private ZooLoader() { }
+
+    /**
+     * Loads a zoo from the given files, parsed by the threads of the
+     * common pool.
+     *
+     * @param  animals the file of animals
+     * @param  friendships the file of friendships, or {@code null}
+     * @param  format the format of the files
+     * @return the loaded zoo
+     * @throws NullPointerException if the animals file or the format is
+     *         null
+     * @throws IOException if an I/O error occurs or a line is malformed
+     */
+    public static Zoo load(Path animals, Path friendships, Format format)
+            throws IOException {
+        return load(animals, friendships, format, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads a zoo from the given files, parsed by the threads of the
+     * given pool.
+     *
+     * @param  animals the file of animals
+     * @param  friendships the file of friendships, or {@code null}
+     * @param  format the format of the files
+     * @param  pool the pool parsing the files
+     * @return the loaded zoo
+     * @throws NullPointerException if the animals file, the format or
+     *         the pool is null
+     * @throws IOException if an I/O error occurs or a line is malformed
+     */
+    public static Zoo load(Path animals, Path friendships, Format format,
+                           ForkJoinPool pool) throws IOException {
+        return load(animals, friendships, format, pool, CHUNK_SIZE);
+    }
+
+    /**
+     * Loads a zoo from the given files, read in chunks of the given
+     * size.
+     */
+    static Zoo load(Path animals, Path friendships, Format format,
+                    ForkJoinPool pool, int chunkSize) throws IOException {
+        if (animals == null || format == null || pool == null) {
+            throw new NullPointerException();
+        }
+        try {
+            FriendshipGraph graph = loadAnimals(animals, format, pool, chunkSize);
+            if (friendships != null) {
+                loadFriendships(friendships, format, graph, pool, chunkSize);
+            }
+            return new Zoo(graph, 0);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static FriendshipGraph loadAnimals(Path path, Format format,
+                                               ForkJoinPool pool,
+                                               int chunkSize)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = chunks(size, chunkSize);
+            // every chunk sets its own element, so the list is not resized
+            List<List<Animal>> parsed =
+                    new ArrayList<>(Collections.nCopies(chunks, null));
+            pool.invoke(new ChunkTask(0, chunks, c -> {
+                List<Animal> animals = new ArrayList<>();
+                forEachLine(channel, size, c, chunkSize, (bytes, from, to, offset) -> {
+                    String line = new String(bytes, from, to - from,
+                                             StandardCharsets.UTF_8);
+                    try {
+                        Animal animal = format == Format.CSV
+                                        ? parseCsvAnimal(line, offset == 0)
+                                        : parseJsonAnimal(line);
+                        if (animal != null) animals.add(animal);
+                    } catch (IllegalArgumentException e) {
+                        throw malformed(path, offset, e);
+                    }
+                });
+                parsed.set(c, animals);
+            }));
+            int n = 0;
+            for (List<Animal> animals : parsed) n += animals.size();
+            FriendshipGraph graph = new FriendshipGraph(n);
+            for (int c = 0; c < chunks; c++) {
+                for (Animal animal : parsed.get(c)) graph.add(animal);
+                parsed.set(c, null);
+            }
+            return graph;
+        }
+    }
+
+    private static void loadFriendships(Path path, Format format,
+                                        FriendshipGraph graph,
+                                        ForkJoinPool pool, int chunkSize)
+            throws IOException {
+        int n = graph.size();
+        AtomicIntegerArray counts = new AtomicIntegerArray(n);
+        forEachFriendship(path, format, n, pool, chunkSize, (a, b) -> {
+            counts.incrementAndGet(a);
+            counts.incrementAndGet(b);
+        });
+        int[][] rows = new int[n][];
+        for (int id = 0; id < n; id++) {
+            int count = counts.get(id);
+            if (count > 0) rows[id] = new int[count];
+            counts.set(id, 0);
+        }
+        forEachFriendship(path, format, n, pool, chunkSize, (a, b) -> {
+            rows[a][counts.getAndIncrement(a)] = b;
+            rows[b][counts.getAndIncrement(b)] = a;
+        });
+        int[] degrees = new int[n];
+        int tasks = (n + ANIMALS_PER_TASK - 1) / ANIMALS_PER_TASK;
+        pool.invoke(new ChunkTask(0, tasks, t -> {
+            for (int id = t * ANIMALS_PER_TASK,
+                     end = Math.min(n, id + ANIMALS_PER_TASK); id < end; id++) {
+                int[] row = rows[id];
+                if (row != null) degrees[id] = sortDistinct(row);
+            }
+        }));
+        for (int id = 0; id < n; id++) graph.setFriends(id, rows[id], degrees[id]);
+    }
+
+    /**
+     * Sorts an array and moves its distinct values to the front.
+     *
+     * @return the number of distinct values
+     */
+    private static int sortDistinct(int[] a) {
+        Arrays.sort(a);
+        int n = a.length == 0 ? 0 : 1;
+        for (int i = 1; i < a.length; i++) {
+            if (a[i] != a[n - 1]) a[n++] = a[i];
+        }
+        return n;
+    }
+
+    private interface FriendshipAction {
+        void accept(int a, int b);
+    }
+
+    private static void forEachFriendship(Path path, Format format, int n,
+                                          ForkJoinPool pool, int chunkSize,
+                                          FriendshipAction action)
+            throws IOException {
+        boolean json = format == Format.JSON_LINES;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            pool.invoke(new ChunkTask(0, chunks(size, chunkSize), c -> {
+                int[] pair = new int[2];
+                forEachLine(channel, size, c, chunkSize, (bytes, from, to, offset) -> {
+                    try {
+                        if (!parseFriendship(bytes, from, to, json, pair)) {
+                            if (offset == 0 && !json) return; // header
+                            throw new IllegalArgumentException("Not a friendship");
+                        }
+                    } catch (IllegalArgumentException e) {
+                        throw malformed(path, offset, e);
+                    }
+                    int a = pair[0], b = pair[1];
+                    if (a >= n || b >= n) {
+                        throw malformed(path, offset, new IllegalArgumentException(
+                                "No such animal: " + Math.max(a, b)));
+                    }
+                    if (a != b) action.accept(a, b);
+                });
+            }));
+        }
+    }
+
+    /**
+     * Parses a friendship, {@code a,b} or {@code [a, b]}.
+     *
+     * @return {@code false} if the line does not start like a
+     *         friendship
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    private static boolean parseFriendship(byte[] b, int from, int to,
+                                           boolean json, int[] pair) {
+        int i = skipSpaces(b, from, to);
+        if (json) {
+            if (i == to || b[i] != '[') return false;
+            i = skipSpaces(b, i + 1, to);
+        }
+        if (i == to || b[i] < '0' || b[i] > '9') return false;
+        for (int k = 0; k < 2; k++) {
+            if (k == 1) {
+                if (i == to || b[i] != ',') throw new IllegalArgumentException("Expected ,");
+                i = skipSpaces(b, i + 1, to);
+            }
+            int value = 0, start = i;
+            for (; i < to && b[i] >= '0' && b[i] <= '9'; i++) {
+                int digit = b[i] - '0';
+                if (value > (Integer.MAX_VALUE - digit) / 10) {
+                    throw new IllegalArgumentException("Number too large");
+                }
+                value = value * 10 + digit;
+            }
+            if (i == start) throw new IllegalArgumentException("Expected a number");
+            pair[k] = value;
+            i = skipSpaces(b, i, to);
+        }
+        if (json) {
+            if (i == to || b[i] != ']') throw new IllegalArgumentException("Expected ]");
+            i = skipSpaces(b, i + 1, to);
+        }
+        if (i != to) throw new IllegalArgumentException("Unexpected characters");
+        return true;
+    }
+
+    private static int skipSpaces(byte[] b, int i, int to) {
+        while (i < to && (b[i] == ' ' || b[i] == '\t')) i++;
+        return i;
+    }
+
+    /**
+     * Parses a CSV line of an animal.
+     *
+     * @return the animal, or {@code null} if the line is the header
+     */
+    private static Animal parseCsvAnimal(String line, boolean first) {
+        List<String> fields = splitCsv(line);
+        if (first && "kind".equalsIgnoreCase(fields.get(0))) return null;
+        if (fields.size() > 5) throw new IllegalArgumentException("Too many values");
+        while (fields.size() < 5) fields.add(null);
+        String kind = fields.get(0);
+        boolean dog = "dog".equalsIgnoreCase(kind);
+        return newAnimal(kind, fields.get(1), fields.get(2),
+                         dog ? fields.get(3) : null,
+                         dog ? null : fields.get(3), fields.get(4));
+    }
+
+    /**
+     * Splits a CSV line into its values, the empty ones being null.
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(5);
+        int i = 0, n = line.length();
+        while (true) {
+            if (i < n && line.charAt(i) == '"') {
+                StringBuilder field = new StringBuilder();
+                for (i++; ; i++) {
+                    if (i == n) throw new IllegalArgumentException("Unterminated quote");
+                    char c = line.charAt(i);
+                    if (c == '"') {
+                        if (i + 1 < n && line.charAt(i + 1) == '"') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    field.append(c);
+                }
+                i++;
+                if (i < n && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Expected ,");
+                }
+                fields.add(field.toString());
+            } else {
+                int comma = line.indexOf(',', i);
+                if (comma < 0) comma = n;
+                String field = line.substring(i, comma).trim();
+                fields.add(field.isEmpty() ? null : field);
+                i = comma;
+            }
+            if (i >= n) return fields;
+            i++; // the comma
+        }
+    }
+
+    /**
+     * Parses a JSON line of an animal.
+     *
+     * @return the animal, or {@code null} if the line is blank
+     */
+    private static Animal parseJsonAnimal(String line) {
+        JsonObject object = new JsonObject(line);
+        if (object.isBlank()) return null;
+        object.parse();
+        String kind = object.get("kind");
+        String flag = "chicken".equalsIgnoreCase(kind) ? object.get("boiler")
+                                                       : object.get("speak");
+        return newAnimal(kind, object.get("name"), object.get("favouriteFood"),
+                         object.get("type"), object.get("wingsLength"), flag);
+    }
+
+    /**
+     * Creates an animal of the given kind from the text of its values.
+     *
+     * @param  flag whether a parrot can speak or a chicken is a broiler
+     * @throws IllegalArgumentException if a value is not valid
+     */
+    private static Animal newAnimal(String kind, String name,
+                                    String favouriteFood, String type,
+                                    String wingsLength, String flag) {
+        if (kind == null) throw new IllegalArgumentException("Missing kind");
+        switch (kind.toLowerCase(Locale.ROOT)) {
+        case "animal":
+            return new Animal(name, favouriteFood);
+        case "dog":
+            return new Dog(name, favouriteFood, dogType(type));
+        case "bird":
+            return new Bird(name, favouriteFood, floatValue(wingsLength));
+        case "parrot":
+            return new Parrot(name, favouriteFood, floatValue(wingsLength),
+                              booleanValue(flag));
+        case "chicken":
+            return new Chicken(name, favouriteFood, floatValue(wingsLength),
+                               booleanValue(flag));
+        default:
+            throw new IllegalArgumentException("Unknown kind: " + kind);
+        }
+    }
+
+    private static DogType dogType(String s) {
+        if (s == null) return null;
+        for (DogType type : DogType.values()) {
+            if (type.name().equalsIgnoreCase(s)
+                    || type.toString().equalsIgnoreCase(s)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown dog type: " + s);
+    }
+
+    private static Float floatValue(String s) {
+        return s == null ? null : Float.valueOf(s);
+    }
+
+    private static Boolean booleanValue(String s) {
+        if (s == null) return null;
+        if ("true".equalsIgnoreCase(s)) return Boolean.TRUE;
+        if ("false".equalsIgnoreCase(s)) return Boolean.FALSE;
+        throw new IllegalArgumentException("Not a boolean: " + s);
+    }
+
+    private interface LineAction {
+        void accept(byte[] bytes, int from, int to, long offset);
+    }
+
+    private static int chunks(long size, int chunkSize) {
+        return (int) ((size + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Runs an action for every non-blank line starting in the given
+     * chunk of a file, without its line terminator.
+     *
+     * @throws UncheckedIOException if an I/O error occurs
+     */
+    private static void forEachLine(FileChannel channel, long size, int chunk,
+                                    int chunkSize, LineAction action) {
+        long start = (long) chunk * chunkSize;
+        long end = Math.min(size, start + chunkSize);
+        long base = Math.max(0, start - 1);
+        try {
+            for (long slack = Math.min(LINE_SLACK, chunkSize); ; slack <<= 1) {
+                long limit = Math.min(size, end + slack);
+                byte[] bytes = read(channel, base, (int) (limit - base));
+                int from = 0;
+                if (start > 0) {
+                    // the line starting before the chunk belongs to the
+                    // previous one
+                    from = indexOf(bytes, 0, (int) (end - base), '\n') + 1;
+                    if (from == 0) return;
+                }
+                // the last line is the one with the last byte of the chunk
+                int to = indexOf(bytes, (int) (end - 1 - base), bytes.length, '\n');
+                if (to < 0 && limit < size) continue;
+                if (to < 0) to = bytes.length;
+                while (from < to) {
+                    int eol = indexOf(bytes, from, to, '\n');
+                    if (eol < 0) eol = to;
+                    int last = eol;
+                    if (last > from && bytes[last - 1] == '\r') last--;
+                    if (skipSpaces(bytes, from, last) < last) {
+                        action.accept(bytes, from, last, base + from);
+                    }
+                    from = eol + 1;
+                }
+                return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, char c) {
+        for (int i = from; i < to; i++) if (bytes[i] == c) return i;
+        return -1;
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length)
+            throws IOException {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("File truncated while reading");
+            }
+        }
+        return bytes;
+    }
+
+    private static UncheckedIOException malformed(Path path, long offset,
+                                                  IllegalArgumentException e) {
+        return new UncheckedIOException(new IOException(
+                "Malformed line at byte " + offset + " of " + path + ": " +
+                e.getMessage(), e));
+    }
+
+    /**
+     * A parser of a flat JSON object, whose values are strings, numbers,
+     * booleans or null. Every value is kept as text.
+     */
+    private static final class JsonObject {
+        private final String s;
+        private final List<String> keys = new ArrayList<>(8);
+        private final List<String> values = new ArrayList<>(8);
+        private int i;
+
+        JsonObject(String s) {
+            this.s = s;
+        }
+
+        boolean isBlank() {
+            return s.trim().isEmpty();
+        }
+
+        String get(String key) {
+            int k = keys.indexOf(key);
+            return k < 0 ? null : values.get(k);
+        }
+
+        void parse() {
+            expect('{');
+            if (peek() == '}') {
+                i++;
+            } else {
+                while (true) {
+                    keys.add(string());
+                    expect(':');
+                    values.add(value());
+                    char c = next();
+                    if (c == '}') break;
+                    if (c != ',') throw new IllegalArgumentException("Expected , or }");
+                }
+            }
+            if (peek() != 0) throw new IllegalArgumentException("Unexpected characters");
+        }
+
+        private String value() {
+            char c = peek();
+            if (c == '"') return string();
+            int start = i;
+            while (i < s.length() && ",} \t".indexOf(s.charAt(i)) < 0) i++;
+            String literal = s.substring(start, i);
+            if (literal.equals("null")) return null;
+            if (literal.isEmpty() || c == '{' || c == '[') {
+                throw new IllegalArgumentException("Unsupported value at " + start);
+            }
+            return literal;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (i >= s.length()) throw new IllegalArgumentException("Unterminated string");
+                char c = s.charAt(i++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (i >= s.length()) throw new IllegalArgumentException("Unterminated string");
+                c = s.charAt(i++);
+                switch (c) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (i + 4 > s.length()) throw new IllegalArgumentException("Bad escape");
+                    sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default:
+                    sb.append(c); // " \ /
+                }
+            }
+        }
+
+        private void expect(char c) {
+            if (next() != c) throw new IllegalArgumentException("Expected " + c);
+        }
+
+        /**
+         * Returns the next non-blank character, or 0 at the end.
+         */
+        private char next() {
+            char c = peek();
+            if (c != 0) i++;
+            return c;
+        }
+
+        private char peek() {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+            return i < s.length() ? s.charAt(i) : 0;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A shard of a {@link ShardedZoo}: a part of its animals, their
+ * friendships between them and the halves of their friendships with the
+ * animals of other shards.
+ *
+ * <p>
+ * Animals are known by the key given by the sharded zoo, whose highest
+ * bits are the index of the shard owning the animal. A friendship
+ * between two shards is kept by both, each with the key of the animal
+ * of the other.
+ *
+ * <p>
+ * A day is lived in three steps, run by every shard at the same time.
+ * {@link #decide(long, int[])} chooses the friend every animal loses
+ * and the animal it makes friends with, and returns the messages to the
+ * other shards: a friend lost in another shard, or a friendship asked
+ * to an animal of another shard by index. {@link #exchange(long[])}
+ * applies the changes within the shard and the messages received,
+ * answering the friendships accepted, and {@link #confirm(long[])}
+ * completes them. Every message is three longs: its kind and two
+ * values.
+ *
+ * @author Lisandro Fernandez
+ */
+
+interface ZooShard extends Closeable {
+    /** A friend lost: the key of the animal, the key of the friend. */
+    long LOST = 1;
+
+    /**
+     * A friendship asked: the key of the animal, its index in the high
+     * int and the index of the animal asked in the low int.
+     */
+    long ASKED = 2;
+
+    /** A friendship accepted: the key of the animal, the key of the friend. */
+    long ACCEPTED = 3;
+
+    /**
+     * The number of bits of a key below the index of the shard.
+     */
+    int SHARD_SHIFT = 40;
+
+    /**
+     * Returns the index of the shard owning the animal with the given
+     * key.
+     */
+    static int shardOf(long key) {
+        return (int) (key >>> SHARD_SHIFT);
+    }
+
+    /**
+     * Adds an animal with a new key.
+     */
+    void add(long key, ReadOnlyAnimal animal) throws IOException;
+
+    /**
+     * Removes an animal and all its friendships within the shard.
+     *
+     * @return the keys of its friends in other shards, whose halves of
+     *         the friendships must be removed
+     */
+    long[] remove(long key) throws IOException;
+
+    /**
+     * Makes friends an animal of the shard with another animal, or only
+     * adds the half of the animal of the shard if the other one is in
+     * another shard.
+     *
+     * @return {@code true} if they were not friends
+     */
+    boolean link(long key, long friend) throws IOException;
+
+    /**
+     * Breaks the friendship of an animal of the shard with another
+     * animal, as in {@link #link(long, long)}.
+     *
+     * @return {@code true} if they were friends
+     */
+    boolean unlink(long key, long friend) throws IOException;
+
+    /**
+     * Returns {@code true} if an animal of the shard and another animal
+     * are friends.
+     */
+    boolean areFriends(long key, long friend) throws IOException;
+
+    /**
+     * Returns the keys of the friends of an animal of the shard.
+     */
+    long[] friends(long key) throws IOException;
+
+    /**
+     * Returns the keys of the friends of several animals of the shard,
+     * in the order of the given keys.
+     */
+    long[][] friends(long[] keys) throws IOException;
+
+    /**
+     * Returns the number of animals of the shard.
+     */
+    int size() throws IOException;
+
+    /**
+     * Decides the changes of a day.
+     *
+     * @param  seed the seed of the randomness of the shard for the day
+     * @param  sizes the number of animals of every shard
+     * @return the messages to every shard, by index of the shard
+     */
+    long[][] decide(long seed, int[] sizes) throws IOException;
+
+    /**
+     * Applies the changes of a day decided by the shard and the messages
+     * from the other shards.
+     *
+     * @param  inbox the messages from the other shards
+     * @return the friendships accepted, to every shard by index
+     */
+    long[][] exchange(long[] inbox) throws IOException;
+
+    /**
+     * Completes the friendships accepted by other shards and ends the
+     * day.
+     *
+     * @param  inbox the friendships accepted by the other shards
+     * @return the numbers of friendships lost and established by the
+     *         animals of the shard during the day
+     */
+    long[] confirm(long[] inbox) throws IOException;
+
+    /**
+     * Returns the degree distribution of the animals of the shard,
+     * counting the friends in all the shards.
+     */
+    long[] degreeHistogram() throws IOException;
+}
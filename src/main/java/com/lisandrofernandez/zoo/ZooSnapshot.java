@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable view of the animals of a zoo and their friends at the
+ * end of some day. Later changes to the zoo are not reflected in the
+ * snapshot.
+ *
+ * <p>
+ * A snapshot does not copy the friendships: it shares the arrays of
+ * friends with the zoo, which copies an array the first time it
+ * modifies it after the snapshot was taken. Taking a snapshot only
+ * copies a reference and a couple of values per animal, and the
+ * friendships left untouched by the following days are never copied.
+ * If the zoo keeps its friends {@linkplain FriendshipStorage outside the
+ * heap}, the snapshot copies them to the heap instead.
+ *
+ * <p>
+ * A snapshot can be read by several threads at once, also while the
+ * zoo it was taken from lives its next days.
+ *
+ * @author Lisandro Fernandez
+ * @see Zoo#snapshot()
+ * @see Zoo#getPublishedSnapshot()
+ */
+
+public final class ZooSnapshot {
+    private final long day;
+    private final ReadOnlyAnimal[] animals;
+    private final int[][] friends;
+    private final int[] degrees;
+    private final HashMap<ReadOnlyAnimal, Integer> ids;
+
+    /**
+     * Constructs a snapshot. The arguments must not be modified
+     * afterwards.
+     */
+    ZooSnapshot(long day, ReadOnlyAnimal[] animals, int[][] friends, int[] degrees,
+                HashMap<ReadOnlyAnimal, Integer> ids) {
+        this.day = day;
+        this.animals = animals;
+        this.friends = friends;
+        this.degrees = degrees;
+        this.ids = ids;
+    }
+
+    /**
+     * Returns the animal with the given id.
+     */
+    ReadOnlyAnimal animal(int id) {
+        return animals[id];
+    }
+
+    /**
+     * Returns the number of friends of the animal with the given id.
+     */
+    int degree(int id) {
+        return degrees[id];
+    }
+
+    /**
+     * Returns the sorted ids of the friends of the animal with the given
+     * id in the first {@code degree(id)} elements. The array is shared
+     * and must not be modified.
+     */
+    int[] friendIds(int id) {
+        return friends[id];
+    }
+
+    /**
+     * Returns the number of days the zoo had lived when the snapshot
+     * was taken.
+     *
+     * @return the day of the snapshot
+     * @see Zoo#getDay()
+     */
+    public long getDay() {
+        return day;
+    }
+
+    /**
+     * Returns the number of animals.
+     *
+     * @return the number of animals
+     */
+    public int size() {
+        return animals.length;
+    }
+
+    /**
+     * Returns the number of friendships.
+     *
+     * @return the number of friendships
+     */
+    public long getFriendships() {
+        long ends = 0;
+        for (int degree : degrees) ends += degree;
+        return ends / 2;
+    }
+
+    /**
+     * Saves the snapshot to a file in a compact binary format, replacing
+     * it if it exists. It can be loaded with {@link Zoo#load(Path)}.
+     *
+     * <p>
+     * A snapshot can be saved by a thread other than the one running
+     * the zoo, for example the one returned by
+     * {@link Zoo#getPublishedSnapshot()}, while the zoo lives its days.
+     *
+     * @param  path the file to save to
+     * @throws NullPointerException if the path is null
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if an animal is not an
+     *         {@code Animal}, {@code Bird}, {@code Dog}, {@code Parrot},
+     *         {@code Chicken} or one of their immutable variants, since
+     *         other subclasses are unknown to the format
+     */
+    public void save(Path path) throws IOException {
+        if (path == null) throw new NullPointerException();
+        ZooFile.write(this, path);
+    }
+
+    /**
+     * Checks if an animal was in the zoo.
+     *
+     * @param  animal the animal whose presence is to be tested
+     * @return {@code true} if the animal was in the zoo
+     * @throws NullPointerException if the animal is null
+     */
+    public boolean isAnimalPresent(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        return ids.containsKey(animal);
+    }
+
+    /**
+     * Returns a read-only set view of the animals.
+     *
+     * @return the animals
+     */
+    public Set<ReadOnlyAnimal> getAnimals() {
+        return new AbstractSet<ReadOnlyAnimal>() {
+            @Override
+            public boolean contains(Object o) {
+                return o != null && ids.containsKey(o);
+            }
+
+            @Override
+            public Iterator<ReadOnlyAnimal> iterator() {
+                return Arrays.asList(animals).iterator();
+            }
+
+            @Override
+            public int size() {
+                return animals.length;
+            }
+        };
+    }
+
+    /**
+     * Returns a read-only set view of the friends of an animal.
+     *
+     * @param  animal the animal
+     * @return the friends of the animal
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal was not in the zoo
+     */
+    public Set<ReadOnlyAnimal> getFriends(ReadOnlyAnimal animal) {
+        int id = idOf(animal);
+        int[] row = friends[id];
+        int degree = degrees[id];
+        return new AbstractSet<ReadOnlyAnimal>() {
+            @Override
+            public boolean contains(Object o) {
+                Integer friend = o == null ? null : ids.get(o);
+                return friend != null &&
+                       Arrays.binarySearch(row, 0, degree, friend) >= 0;
+            }
+
+            @Override
+            public Iterator<ReadOnlyAnimal> iterator() {
+                return new Iterator<ReadOnlyAnimal>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < degree;
+                    }
+
+                    @Override
+                    public ReadOnlyAnimal next() {
+                        if (next >= degree) throw new NoSuchElementException();
+                        return animals[row[next++]];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return degree;
+            }
+        };
+    }
+
+    /**
+     * Returns {@code true} if the given animals were friends.
+     *
+     * @param  a the first animal
+     * @param  b the second animal
+     * @return {@code true} if the animals were friends
+     * @throws NullPointerException if any of the given animals is null
+     * @throws IllegalArgumentException if any of the given animals was
+     *         not in the zoo
+     */
+    public boolean areFriends(ReadOnlyAnimal a, ReadOnlyAnimal b) {
+        int x = idOf(a), y = idOf(b);
+        return Arrays.binarySearch(friends[x], 0, degrees[x], y) >= 0;
+    }
+
+    /**
+     * Returns a cursor over the animals and their friends.
+     *
+     * @return a cursor over the animals and their friends
+     */
+    public AnimalCursor cursor() {
+        return new AnimalCursor() {
+            private int id = -1;
+
+            @Override
+            public boolean next() {
+                if (id < animals.length) id++;
+                return id < animals.length;
+            }
+
+            @Override
+            public ReadOnlyAnimal animal() {
+                checkPosition();
+                return animals[id];
+            }
+
+            @Override
+            public int friendCount() {
+                checkPosition();
+                return degrees[id];
+            }
+
+            @Override
+            public ReadOnlyAnimal friend(int index) {
+                if (index < 0 || index >= friendCount()) {
+                    throw new IndexOutOfBoundsException("Index: " + index +
+                                                        ", Size: " + friendCount());
+                }
+                return animals[friends[id][index]];
+            }
+
+            private void checkPosition() {
+                if (id < 0 || id >= animals.length) {
+                    throw new IllegalStateException();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the id of an animal of the snapshot.
+     *
+     * @throws NullPointerException if the animal is null
+     * @throws IllegalArgumentException if the animal was not in the zoo
+     */
+    int idOf(ReadOnlyAnimal animal) {
+        if (animal == null) throw new NullPointerException();
+        Integer id = ids.get(animal);
+        if (id == null) {
+            throw new IllegalArgumentException(animal + " was not in the zoo");
+        }
+        return id;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@code ConcurrentZoo} class.
+ */
+public class ConcurrentZooTest {
+
+    @Test
+    public void friendshipShouldBeSymmetric() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        ConcurrentZoo zoo = new ConcurrentZoo();
+        zoo.addAnimal(dog);
+        zoo.addAnimal(parrot);
+        assertTrue(zoo.makeFriends(dog, parrot));
+        assertTrue(zoo.areFriends(dog, parrot));
+        assertTrue(zoo.areFriends(parrot, dog));
+        assertTrue(zoo.unmakeFriends(parrot, dog));
+        assertFalse(zoo.areFriends(dog, parrot));
+    }
+
+    @Test
+    public void removeAnimal_ShouldBeRemovedFromItsFriends() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        ConcurrentZoo zoo = new ConcurrentZoo(1);
+        zoo.addAnimal(dog);
+        zoo.addAnimal(parrot);
+        zoo.makeFriends(dog, parrot);
+        assertTrue(zoo.removeAnimal(dog));
+        assertFalse(zoo.isAnimalPresent(dog));
+        assertTrue(zoo.getAnimalsAndFriends().get(0).getValue().isEmpty());
+    }
+
+    @Test
+    public void concurrentUpdates_ShouldKeepFriendshipSymmetric() throws Exception {
+        int threads = 8;
+        List<Animal> animals = new ArrayList<>();
+        for (int i = 0; i < 200; i++) animals.add(new Animal("Animal " + i, "Meat"));
+        ConcurrentZoo zoo = new ConcurrentZoo(animals);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 20_000; i++) {
+                        Animal a = animals.get(random.nextInt(animals.size()));
+                        Animal b = animals.get(random.nextInt(animals.size()));
+                        int op = random.nextInt(100);
+                        try {
+                            if (op < 60) zoo.makeFriends(a, b);
+                            else if (op < 95) zoo.unmakeFriends(a, b);
+                            else if (op < 98) zoo.removeAnimal(a);
+                            else zoo.addAnimal(a);
+                        } catch (IllegalArgumentException e) {
+                            // removed by another thread
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            executor.shutdown();
+        }
+        for (Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>> af : zoo.getAnimalsAndFriends()) {
+            for (ReadOnlyAnimal friend : af.getValue()) {
+                assertTrue(zoo.isAnimalPresent(friend));
+                assertTrue(zoo.areFriends(friend, af.getKey()));
+            }
+        }
+    }
+}
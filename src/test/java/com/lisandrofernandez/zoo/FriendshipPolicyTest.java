@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@code FriendshipPolicy} interface.
+ */
+public class FriendshipPolicyTest {
+
+    @Test
+    public void maxFriends_ShouldLimitTheDays() {
+        List<Animal> animals = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) animals.add(new Animal("Animal " + i, "Meat"));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (boolean parallel : new boolean[] { false, true }) {
+            Zoo zoo = new Zoo(animals);
+            Zoo replayed = new Zoo(animals);
+            zoo.setRandomSource(RandomSource.of(42));
+            zoo.setFriendshipPolicy(FriendshipPolicy.uniform().withMaxFriends(3));
+            zoo.setEventSink(event -> {
+                if (event.getType() == FriendshipEvent.Type.LOST) {
+                    assertTrue(replayed.unmakeFriends(event.getAnimal(), event.getFriend()));
+                } else {
+                    assertTrue(replayed.makeFriends(event.getAnimal(), event.getFriend()));
+                }
+            });
+            for (int day = 0; day < 10; day++) {
+                if (parallel) zoo.liveDayInParallel(pool); else zoo.liveDay();
+                for (Animal animal : animals) {
+                    assertTrue(zoo.getFriendsView(animal).size() <= 3);
+                    assertEquals(zoo.getFriendsView(animal), replayed.getFriendsView(animal));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void affinity_ShouldWeighTheNewFriends() {
+        List<Animal> animals = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            animals.add(i % 2 == 0 ? new Dog("Dog " + i, "Meat", DogType.HUNTING)
+                                   : new Parrot("Parrot " + i, "Grain", .5f, true));
+        }
+        Zoo zoo = new Zoo(animals);
+        zoo.setEventSink(FriendshipEventSink.none());
+        zoo.setRandomSource(RandomSource.of(7));
+        zoo.setFriendshipPolicy(FriendshipPolicy.bySpecies(9));
+        zoo.liveDays(3);
+        zoo.liveDays(3, new ForkJoinPool(4));
+        int same = 0, total = 0;
+        for (Animal animal : animals) {
+            for (ReadOnlyAnimal friend : zoo.getFriendsView(animal)) {
+                if (animal.getClass() == friend.getClass()) same++;
+                total++;
+            }
+        }
+        // 9 to 1 for the same species, both species equally many
+        assertEquals(.9, (double) same / total, .02);
+    }
+
+    @Test
+    public void groups_ShouldFollowTheAnimals() {
+        FriendshipPolicy byType = new FriendshipPolicy() {
+            @Override
+            public Object group(ReadOnlyAnimal animal) {
+                return ((Dog) animal).getType();
+            }
+
+            @Override
+            public double affinity(Object group, Object otherGroup) {
+                return group == otherGroup ? 1 : 0;
+            }
+        };
+        List<Dog> dogs = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            dogs.add(new Dog("Dog " + i, "Meat", DogType.values()[i % 3]));
+        }
+        Zoo zoo = new Zoo(new ArrayList<Animal>(dogs.subList(0, 500)));
+        zoo.setEventSink(FriendshipEventSink.none());
+        zoo.setRandomSource(RandomSource.of(3));
+        zoo.setFriendshipPolicy(byType.and(FriendshipPolicy.byFavouriteFood(2)));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (int round = 0; round < 5; round++) {
+            zoo.liveDays(2);
+            zoo.liveDays(2, pool);
+            zoo.addAnimal(dogs.get(500 + round));
+            zoo.removeAnimal(dogs.get(round));
+            Set<Dog> retired = new HashSet<>(dogs.subList(100 * round + 10, 100 * round + 30));
+            zoo.removeAnimals(retired);
+            // a dog changes its type and leaves its old friends
+            Dog changed = dogs.get(100 * round + 50);
+            changed.setType(DogType.values()[(round + 1) % 3]);
+            zoo.reindexAnimal(changed);
+            for (ReadOnlyAnimal friend : new ArrayList<>(zoo.getFriendsView(changed))) {
+                zoo.unmakeFriends(changed, friend);
+            }
+        }
+        zoo.liveDays(2);
+        zoo.liveDays(2, pool);
+        for (ReadOnlyAnimal animal : zoo.getAnimals()) {
+            for (ReadOnlyAnimal friend : zoo.getFriendsView(animal)) {
+                assertEquals(((Dog) animal).getType(), ((Dog) friend).getType());
+            }
+        }
+    }
+
+    @Test
+    public void illegalPolicies_ShouldBeRejected() {
+        Zoo zoo = new Zoo(new Animal("One", "Meat"), new Animal("Two", "Meat"));
+        assertThrows(NullPointerException.class, () -> zoo.setFriendshipPolicy(null));
+        assertThrows(IllegalArgumentException.class,
+                     () -> FriendshipPolicy.bySpecies(-1));
+        assertThrows(IllegalArgumentException.class,
+                     () -> FriendshipPolicy.uniform().withMaxFriends(-1));
+        assertThrows(IllegalArgumentException.class,
+                     () -> zoo.setFriendshipPolicy(new FriendshipPolicy() {
+                         @Override
+                         public Object group(ReadOnlyAnimal animal) {
+                             return animal.getName();
+                         }
+
+                         @Override
+                         public double affinity(Object group, Object otherGroup) {
+                             return Double.NaN;
+                         }
+                     }));
+        assertSame(FriendshipPolicy.uniform(), zoo.getFriendshipPolicy());
+    }
+}
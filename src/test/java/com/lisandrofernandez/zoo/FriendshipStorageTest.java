@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for {@code FriendshipStorage} class.
+ */
+public class FriendshipStorageTest {
+
+    @Test
+    public void offHeap_ShouldMatchHeap(@TempDir Path dir) {
+        List<Animal> animals = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) animals.add(new Animal("Animal " + i, "Meat"));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        // small slabs, so rows span many slabs and the hub has its own
+        for (FriendshipStorage storage : new FriendshipStorage[] {
+                FriendshipStorage.offHeap(4096), FriendshipStorage.mapped(dir, 4096) }) {
+            assertTrue(storage.isOffHeap());
+            Zoo heap = new Zoo(animals);
+            Zoo offHeap = new Zoo(animals, storage);
+            SplittableRandom random = new SplittableRandom(42);
+            for (int round = 0; round < 4; round++) {
+                for (int i = 0; i < 5000; i++) {
+                    Animal a = animals.get(random.nextInt(animals.size()));
+                    Animal b = animals.get(i % 3 == 0 ? 0 : random.nextInt(animals.size()));
+                    if (!heap.isAnimalPresent(a) || !heap.isAnimalPresent(b)) continue;
+                    assertEquals(heap.makeFriends(a, b), offHeap.makeFriends(a, b));
+                }
+                for (Zoo zoo : new Zoo[] { heap, offHeap }) {
+                    zoo.setEventSink(FriendshipEventSink.none());
+                    zoo.setRandomSource(RandomSource.of(round));
+                    zoo.liveDays(2);
+                    zoo.liveDays(2, pool);
+                }
+                EdgeBatch made = new EdgeBatch();
+                EdgeBatch broken = new EdgeBatch();
+                int n = heap.getAnimals().size();
+                for (int i = 0; i < 4000; i++) {
+                    made.add(random.nextInt(n), random.nextInt(n));
+                    broken.add(random.nextInt(n), random.nextInt(n));
+                }
+                assertEquals(heap.makeFriends(made), offHeap.makeFriends(made, pool));
+                assertEquals(heap.unmakeFriends(broken, pool), offHeap.unmakeFriends(broken));
+                assertEquals(describe(heap.snapshot()), describe(offHeap.snapshot()));
+
+                Animal gone = animals.get(1 + round);
+                Set<Animal> retired = new HashSet<>(animals.subList(500 * round + 10,
+                                                                    500 * round + 200));
+                for (Zoo zoo : new Zoo[] { heap, offHeap }) {
+                    zoo.removeAnimal(gone);
+                    zoo.removeAnimals(retired);
+                }
+                assertEquals(describe(heap.snapshot()), describe(offHeap.snapshot()));
+            }
+            offHeap.setTrackingTriangles(true);
+            heap.setTrackingTriangles(true);
+            assertEquals(heap.getMetrics().getTriangles(), offHeap.getMetrics().getTriangles());
+            assertTrue(offHeap.getFriendsView(animals.get(0)).size() > 1024);
+        }
+    }
+
+    @Test
+    public void slabAllocator_ShouldReuseFreedBlocks() {
+        SlabAllocator allocator = new SlabAllocator(4096, null);
+        long[] handles = new long[300];
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < handles.length; i++) {
+                handles[i] = allocator.allocate(1 + i % 40);
+                assertTrue(SlabAllocator.capacity(handles[i]) >= 1 + i % 40);
+                allocator.buffer(handles[i]).put(SlabAllocator.offset(handles[i]), i);
+            }
+            for (int i = 0; i < handles.length; i++) {
+                assertEquals(i, allocator.buffer(handles[i]).get(SlabAllocator.offset(handles[i])));
+            }
+            for (long handle : handles) allocator.free(handle);
+        }
+        // 300 blocks of 4 to 64 ints take about 28 KiB
+        assertTrue(allocator.reservedBytes() <= 64 << 10, "" + allocator.reservedBytes());
+        long large = allocator.allocate(5000);
+        assertEquals(8192, SlabAllocator.capacity(large));
+    }
+
+    @Test
+    public void illegalSlabSizes_ShouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> FriendshipStorage.offHeap(1000));
+        assertThrows(IllegalArgumentException.class, () -> FriendshipStorage.offHeap(1 << 11));
+        assertThrows(NullPointerException.class, () -> FriendshipStorage.mapped(null));
+        assertThrows(NullPointerException.class,
+                     () -> new Zoo(new ArrayList<Animal>(), null));
+        assertFalse(FriendshipStorage.heap().isOffHeap());
+    }
+
+    /**
+     * Describes the animals of a snapshot and their friends in id order.
+     */
+    private static List<String> describe(ZooSnapshot snapshot) {
+        List<String> lines = new ArrayList<>();
+        for (int id = 0; id < snapshot.size(); id++) {
+            StringBuilder line = new StringBuilder(snapshot.animal(id).getName());
+            int[] row = snapshot.friendIds(id);
+            for (int i = 0; i < snapshot.degree(id); i++) line.append(' ').append(row[i]);
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+}
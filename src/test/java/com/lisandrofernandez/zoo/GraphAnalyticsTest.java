@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@code GraphAnalytics} class.
+ */
+public class GraphAnalyticsTest {
+
+    @Test
+    public void analytics_ShouldMatchSmallGraph() {
+        // a-b-c and b-c-d are triangles sharing b-c, d-e hangs off d and
+        // f has no friends
+        List<Animal> animals = generateAnimals(6);
+        Animal a = animals.get(0), b = animals.get(1), c = animals.get(2),
+               d = animals.get(3), e = animals.get(4), f = animals.get(5);
+        Zoo zoo = new Zoo(animals);
+        zoo.makeFriends(a, b);
+        zoo.makeFriends(a, c);
+        zoo.makeFriends(b, c);
+        zoo.makeFriends(b, d);
+        zoo.makeFriends(c, d);
+        zoo.makeFriends(d, e);
+        GraphAnalytics analytics = new GraphAnalytics(zoo.snapshot());
+        zoo.unmakeFriends(a, b); // not seen by the analytics
+
+        assertArrayEquals(new long[] { 1, 1, 1, 3 }, analytics.getDegreeHistogram());
+        assertEquals(2, analytics.getComponentCount());
+        assertArrayEquals(new int[] { 5, 1 }, analytics.getComponentSizes());
+        assertTrue(analytics.areConnected(a, e));
+        assertFalse(analytics.areConnected(a, f));
+        assertEquals(new HashSet<>(Arrays.asList(a, b, c, d, e)), analytics.getComponent(e));
+        assertEquals(2, analytics.getTriangleCount());
+        assertEquals(2, analytics.getTriangleCount(b));
+        assertEquals(1, analytics.getTriangleCount(d));
+        assertEquals(0, analytics.getTriangleCount(e));
+        assertEquals(1, analytics.getClusteringCoefficient(a), 1e-9);
+        assertEquals(2 / 3.0, analytics.getClusteringCoefficient(b), 1e-9);
+        assertEquals(1 / 3.0, analytics.getClusteringCoefficient(d), 1e-9);
+        assertEquals((1 + 2 / 3.0 + 2 / 3.0 + 1 / 3.0) / 6,
+                     analytics.getAverageClusteringCoefficient(), 1e-9);
+        // 6 triangle ends over the paths 1 + 3 + 3 + 3 of a, b, c and d
+        assertEquals(6 / 10.0, analytics.getTransitivity(), 1e-9);
+        assertThrows(IllegalArgumentException.class,
+                     () -> analytics.getTriangleCount(new Animal()));
+    }
+
+    @Test
+    public void analytics_ShouldMatchBruteForce() {
+        int n = 2000;
+        List<Animal> animals = generateAnimals(n);
+        Zoo zoo = new Zoo(animals);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 12 * n; i++) {
+            // a few dense groups so there are many triangles
+            int x = random.nextInt(n);
+            int y = random.nextInt(10) < 8 ? x / 50 * 50 + random.nextInt(50)
+                                           : random.nextInt(n);
+            if (y < n) zoo.makeFriends(animals.get(x), animals.get(y));
+        }
+        ZooSnapshot snapshot = zoo.snapshot();
+        GraphAnalytics serial = new GraphAnalytics(snapshot);
+        GraphAnalytics parallel = new GraphAnalytics(snapshot, new ForkJoinPool(4));
+
+        long triangles = 0;
+        for (int x = 0; x < n; x++) {
+            for (int y = x + 1; y < n; y++) {
+                if (!zoo.areFriends(animals.get(x), animals.get(y))) continue;
+                for (int z = y + 1; z < n; z++) {
+                    if (zoo.areFriends(animals.get(x), animals.get(z))
+                        && zoo.areFriends(animals.get(y), animals.get(z))) {
+                        triangles++;
+                    }
+                }
+            }
+        }
+        assertTrue(triangles > 1000, "too few triangles: " + triangles);
+        assertEquals(triangles, serial.getTriangleCount());
+        assertEquals(triangles, parallel.getTriangleCount());
+        for (Animal animal : animals) {
+            assertEquals(serial.getTriangleCount(animal), parallel.getTriangleCount(animal));
+        }
+        assertEquals(serial.getTransitivity(), parallel.getTransitivity(), 1e-12);
+
+        long ends = 0;
+        long[] histogram = serial.getDegreeHistogram();
+        for (int d = 0; d < histogram.length; d++) ends += d * histogram[d];
+        assertEquals(2 * snapshot.getFriendships(), ends);
+        assertEquals(n, Arrays.stream(serial.getComponentSizes()).sum());
+    }
+
+    private static List<Animal> generateAnimals(int n) {
+        List<Animal> animals = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            animals.add(new Animal("Animal " + i, "Meat"));
+        }
+        return animals;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@code GraphMetrics} class.
+ */
+public class GraphMetricsTest {
+
+    @Test
+    public void metrics_ShouldFollowEveryChange() {
+        List<Animal> animals = new ArrayList<>();
+        for (int i = 0; i < 400; i++) animals.add(new Animal("Animal " + i, "Meat"));
+        Zoo zoo = new Zoo(animals.subList(0, 300));
+        zoo.setEventSink(FriendshipEventSink.none());
+        zoo.setRandomSource(RandomSource.of(42));
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 1500; i++) {
+            // dense groups so there are many triangles
+            int x = random.nextInt(300);
+            zoo.makeFriends(animals.get(x), animals.get(x / 20 * 20 + random.nextInt(20)));
+        }
+        zoo.setTrackingTriangles(true);
+        GraphMetrics metrics = zoo.getMetrics();
+        assertTrue(metrics.isTrackingTriangles());
+        assertMetrics(zoo);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 300; i++) {
+                Animal a = animals.get(random.nextInt(animals.size()));
+                Animal b = animals.get(random.nextInt(animals.size()));
+                if (!zoo.isAnimalPresent(a)) zoo.addAnimal(a);
+                if (!zoo.isAnimalPresent(b)) continue;
+                if (random.nextBoolean()) zoo.makeFriends(a, b);
+                else zoo.unmakeFriends(a, b);
+            }
+            assertMetrics(zoo);
+            zoo.liveDay();
+            assertMetrics(zoo);
+            zoo.liveDayInParallel(pool);
+            assertMetrics(zoo);
+            zoo.removeAnimal(animals.get(random.nextInt(animals.size())));
+            assertMetrics(zoo);
+            int group = random.nextInt(20);
+            zoo.removeAnimals(a -> a.getName().hashCode() % 20 == group);
+            assertMetrics(zoo);
+        }
+        assertSame(metrics, zoo.getMetrics());
+        zoo.setTrackingMetrics(false);
+        assertNull(zoo.getMetrics());
+    }
+
+    @Test
+    public void removeAnimals_WhenAFriendLosesSeveralFriends_ShouldMoveItOnce() {
+        Animal a = new Animal("A", "Meat"), b = new Animal("B", "Meat");
+        Animal c = new Animal("C", "Meat"), d = new Animal("D", "Meat");
+        Zoo zoo = new Zoo(a, b, c, d);
+        zoo.makeFriends(a, b);
+        zoo.makeFriends(a, c);
+        zoo.makeFriends(a, d);
+        zoo.setTrackingTriangles(true);
+        assertArrayEquals(new long[] { 0, 3, 0, 1 }, zoo.getMetrics().getDegreeHistogram());
+        assertEquals(2, zoo.removeAnimals(Arrays.asList(b, c)));
+        assertArrayEquals(new long[] { 0, 2 }, zoo.getMetrics().getDegreeHistogram());
+        assertMetrics(zoo);
+    }
+
+    @Test
+    public void getTriangles_WhenNotTracked_ShouldThrowIllegalStateException() {
+        Zoo zoo = new Zoo(new Animal("Animal", "Meat"));
+        zoo.setTrackingMetrics(true);
+        assertFalse(zoo.getMetrics().isTrackingTriangles());
+        assertEquals(1, zoo.getMetrics().getIsolatedAnimals());
+        assertThrows(IllegalStateException.class, () -> zoo.getMetrics().getTriangles());
+        assertThrows(IllegalArgumentException.class,
+                     () -> zoo.getMetrics().getAnimalsWithDegree(-1));
+    }
+
+    private static void assertMetrics(Zoo zoo) {
+        GraphMetrics metrics = zoo.getMetrics();
+        ZooSnapshot snapshot = zoo.snapshot();
+        GraphAnalytics analytics = new GraphAnalytics(snapshot);
+        long[] histogram = analytics.getDegreeHistogram();
+        assertEquals(snapshot.getFriendships(), metrics.getFriendships());
+        assertArrayEquals(histogram, metrics.getDegreeHistogram());
+        assertEquals(histogram[0], metrics.getIsolatedAnimals());
+        assertEquals(analytics.getTriangleCount(), metrics.getTriangles());
+        for (ReadOnlyAnimal animal : zoo.getAnimalsView()) {
+            assertEquals(zoo.getFriendsView(animal).size(), metrics.getDegree(animal));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@code ShardedZoo} class.
+ */
+public class ShardedZooTest {
+
+    @Test
+    public void friendshipShouldBeSymmetricAcrossShards() throws IOException {
+        try (ShardedZoo zoo = new ShardedZoo(4)) {
+            List<Animal> animals = addAnimals(zoo, 50);
+            Animal a = animals.get(0);
+            Animal b = animals.stream()
+                    .filter(animal -> zoo.getShardOf(animal) != zoo.getShardOf(a))
+                    .findFirst().get();
+            assertTrue(zoo.makeFriends(a, b));
+            assertFalse(zoo.makeFriends(b, a));
+            assertTrue(zoo.areFriends(b, a));
+            assertEquals(Collections.singleton(b), zoo.getFriends(a));
+            assertEquals(Collections.singleton(a), zoo.getFriends(b));
+            assertTrue(zoo.removeAnimal(a));
+            assertFalse(zoo.isAnimalPresent(a));
+            assertTrue(zoo.getFriends(b).isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> zoo.areFriends(a, b));
+        }
+    }
+
+    @Test
+    public void liveDays_ShouldKeepFriendshipsSymmetric() throws IOException {
+        try (ShardedZoo zoo = new ShardedZoo(4)) {
+            zoo.setRandomSource(RandomSource.of(42));
+            List<Animal> animals = addAnimals(zoo, 300);
+            makeFriends(zoo, animals, 1000);
+            for (int i = 0; i < 100; i += 3) zoo.removeAnimal(animals.get(i));
+            SimulationStats stats = zoo.liveDays(20);
+            assertTrue(stats.getFriendshipsLost() > 0);
+            assertTrue(stats.getFriendshipsEstablished() > 0);
+            long ends = 0, crossShard = 0;
+            for (Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>> pair : zoo.getAnimalsAndFriends()) {
+                ReadOnlyAnimal animal = pair.getKey();
+                assertFalse(pair.getValue().contains(animal));
+                for (ReadOnlyAnimal friend : pair.getValue()) {
+                    assertTrue(zoo.getFriends(friend).contains(animal));
+                    if (zoo.getShardOf(friend) != zoo.getShardOf(animal)) crossShard++;
+                }
+                ends += pair.getValue().size();
+            }
+            assertEquals(ends / 2, stats.getFriendships());
+            assertTrue(crossShard > 0);
+        }
+    }
+
+    @Test
+    public void liveDays_ShouldCountEveryFriendshipOnceAsAZooDoes() throws IOException {
+        ImmutableDog a = new ImmutableDog(0, "Dog 0", "Meat", DogType.SPORT);
+        ImmutableDog b;
+        try (ShardedZoo probe = new ShardedZoo(2)) {
+            List<ReadOnlyAnimal> dogs = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                ReadOnlyAnimal dog = new ImmutableDog(i, "Dog " + i, "Meat", DogType.SPORT);
+                probe.addAnimal(dog);
+                dogs.add(dog);
+            }
+            b = (ImmutableDog) dogs.stream()
+                    .filter(dog -> probe.getShardOf(dog) != probe.getShardOf(a))
+                    .findFirst().get();
+        }
+        // both friends lose each other and make friends again
+        Zoo reference = new Zoo(a, b);
+        reference.makeFriends(a, b);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        SimulationStats expected = reference.liveDays(1, pool);
+        pool.shutdown();
+        assertEquals(1, expected.getFriendshipsLost());
+        assertEquals(1, expected.getFriendshipsEstablished());
+        for (int shards = 1; shards <= 2; shards++) {
+            try (ShardedZoo zoo = new ShardedZoo(shards)) {
+                zoo.addAnimal(a);
+                zoo.addAnimal(b);
+                zoo.makeFriends(a, b);
+                SimulationStats stats = zoo.liveDays(1);
+                assertEquals(expected.getFriendshipsLost(), stats.getFriendshipsLost());
+                assertEquals(expected.getFriendshipsEstablished(),
+                             stats.getFriendshipsEstablished());
+                assertTrue(zoo.areFriends(a, b));
+            }
+        }
+        // the friendships change by what the days count
+        try (ShardedZoo zoo = new ShardedZoo(3)) {
+            zoo.setRandomSource(RandomSource.of(7));
+            List<Animal> animals = addAnimals(zoo, 200);
+            makeFriends(zoo, animals, 400);
+            long friendships = 0;
+            for (Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>> pair : zoo.getAnimalsAndFriends()) {
+                friendships += pair.getValue().size();
+            }
+            friendships /= 2;
+            for (int day = 0; day < 10; day++) {
+                SimulationStats stats = zoo.liveDays(1);
+                assertEquals(friendships - stats.getFriendshipsLost()
+                             + stats.getFriendshipsEstablished(),
+                             stats.getFriendships());
+                friendships = stats.getFriendships();
+            }
+        }
+    }
+
+    @Test
+    public void connect_ShouldLiveTheSameDaysAsLocalShards() throws Exception {
+        List<ShardServer> servers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int s = 0; s < 3; s++) {
+                ShardServer server = new ShardServer(0);
+                servers.add(server);
+                addresses.add(new InetSocketAddress("localhost", server.getPort()));
+                Thread thread = new Thread(() -> {
+                    try {
+                        server.run();
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            try (ShardedZoo local = new ShardedZoo(3);
+                 ShardedZoo remote = ShardedZoo.connect(addresses)) {
+                for (ShardedZoo zoo : new ShardedZoo[] { local, remote }) {
+                    zoo.setRandomSource(RandomSource.of(7));
+                    List<ReadOnlyAnimal> animals = new ArrayList<>();
+                    for (int i = 0; i < 100; i++) {
+                        ReadOnlyAnimal dog = new ImmutableDog(i, "Dog " + i, "Meat", DogType.SPORT);
+                        zoo.addAnimal(dog);
+                        animals.add(dog);
+                    }
+                    makeFriends(zoo, animals, 300);
+                    zoo.removeAnimal(animals.get(10));
+                    zoo.liveDays(10);
+                }
+                assertEquals(describe(local), describe(remote));
+            }
+        } finally {
+            for (ShardServer server : servers) server.close();
+            for (Thread thread : threads) thread.join();
+        }
+    }
+
+    private static List<Animal> addAnimals(ShardedZoo zoo, int n) {
+        List<Animal> animals = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Animal animal = new Animal("Animal " + i, "Meat");
+            assertTrue(zoo.addAnimal(animal));
+            animals.add(animal);
+        }
+        return animals;
+    }
+
+    private static void makeFriends(ShardedZoo zoo,
+                                    List<? extends ReadOnlyAnimal> animals,
+                                    int friendships) {
+        Random random = new Random(42);
+        for (int i = 0; i < friendships; i++) {
+            zoo.makeFriends(animals.get(random.nextInt(animals.size())),
+                            animals.get(random.nextInt(animals.size())));
+        }
+    }
+
+    /**
+     * Describes the animals of a zoo and their friends, sorted.
+     */
+    private static Set<String> describe(ShardedZoo zoo) {
+        Set<String> lines = new TreeSet<>();
+        for (Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>> pair : zoo.getAnimalsAndFriends()) {
+            Set<String> friends = new TreeSet<>();
+            for (ReadOnlyAnimal friend : pair.getValue()) friends.add(friend.getName());
+            lines.add(pair.getKey().getName() + " " + friends);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for {@code ZooJournal} class.
+ */
+public class ZooJournalTest {
+
+    @Test
+    public void open_ShouldReplayAllChanges(@TempDir Path dir)
+            throws IOException {
+        List<String> expected;
+        try (ZooJournal journal = ZooJournal.open(dir)) {
+            Zoo zoo = journal.getZoo();
+            zoo.setEventSink(FriendshipEventSink.none());
+            zoo.setRandomSource(RandomSource.of(42));
+            List<Animal> animals = generateAnimals(100);
+            for (Animal animal : animals) zoo.addAnimal(animal);
+            zoo.makeFriends(animals.get(0), animals.get(1));
+            zoo.liveDay();
+            zoo.liveDays(3);
+            zoo.liveDayInParallel(ForkJoinPool.commonPool());
+            zoo.liveDays(3, ForkJoinPool.commonPool());
+            zoo.removeAnimal(animals.get(5));
+            zoo.unmakeFriends(animals.get(0), animals.get(1));
+            zoo.removeAnimals(animal -> animal instanceof Chicken);
+            EdgeBatch batch = new EdgeBatch();
+            for (int i = 0; i < 40; i++) batch.add(i, (i * 7) % 40);
+            zoo.makeFriends(batch, ForkJoinPool.commonPool());
+            batch.clear();
+            for (int i = 0; i < 20; i++) batch.add(i, (i * 7) % 40);
+            zoo.unmakeFriends(batch);
+            expected = describe(zoo);
+        }
+        try (ZooJournal journal = ZooJournal.open(dir)) {
+            assertEquals(8, journal.getZoo().getDay());
+            assertEquals(expected, describe(journal.getZoo()));
+        }
+    }
+
+    @Test
+    public void open_ShouldDropUncommittedAndTornChanges(@TempDir Path dir)
+            throws IOException {
+        List<String> expected;
+        ZooJournal journal = ZooJournal.open(dir);
+        Zoo zoo = journal.getZoo();
+        zoo.setEventSink(FriendshipEventSink.none());
+        for (Animal animal : generateAnimals(50)) zoo.addAnimal(animal);
+        zoo.liveDays(2);
+        expected = describe(zoo);
+        zoo.addAnimal(new Animal("Lost", "Meat")); // never committed
+        Files.write(dir.resolve("log.0"), new byte[] { 42, 0, 0, 0, 1 },
+                    StandardOpenOption.APPEND);
+
+        try (ZooJournal reopened = ZooJournal.open(dir)) {
+            assertEquals(2, reopened.getZoo().getDay());
+            assertEquals(expected, describe(reopened.getZoo()));
+            reopened.getZoo().setEventSink(FriendshipEventSink.none());
+            reopened.getZoo().liveDay();
+            expected = describe(reopened.getZoo());
+        }
+        try (ZooJournal reopened = ZooJournal.open(dir)) {
+            assertEquals(expected, describe(reopened.getZoo()));
+        }
+    }
+
+    @Test
+    public void compact_ShouldReplaceTheLogWithASnapshot(@TempDir Path dir)
+            throws IOException {
+        List<String> expected;
+        try (ZooJournal journal = ZooJournal.open(dir)) {
+            journal.setCompactionThreshold(4096);
+            Zoo zoo = journal.getZoo();
+            zoo.setEventSink(FriendshipEventSink.none());
+            for (Animal animal : generateAnimals(200)) zoo.addAnimal(animal);
+            zoo.liveDays(20);
+            assertTrue(journal.getLogSize() < 4096 + 200 * 18);
+            expected = describe(zoo);
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            List<String> names = files.map(p -> p.getFileName().toString())
+                                      .sorted().collect(Collectors.toList());
+            assertEquals(2, names.size());
+            assertTrue(names.get(0).startsWith("log."));
+            assertTrue(names.get(1).startsWith("snapshot."));
+        }
+        try (ZooJournal journal = ZooJournal.open(dir)) {
+            assertEquals(20, journal.getZoo().getDay());
+            assertEquals(expected, describe(journal.getZoo()));
+        }
+    }
+
+    @Test
+    public void close_ShouldStopLogging(@TempDir Path dir) throws IOException {
+        ZooJournal journal = ZooJournal.open(dir);
+        Zoo zoo = journal.getZoo();
+        zoo.addAnimal(new Animal("Kept", "Meat"));
+        journal.close();
+        zoo.addAnimal(new Animal("Not logged", "Meat"));
+        assertThrows(IllegalStateException.class, journal::sync);
+        try (ZooJournal reopened = ZooJournal.open(dir)) {
+            assertEquals(1, reopened.getZoo().getAnimals().size());
+        }
+    }
+
+    @Test
+    public void addAnimal_ShouldRejectAnimalsTheJournalCannotLog(
+            @TempDir Path dir) throws IOException {
+        try (ZooJournal journal = ZooJournal.open(dir)) {
+            Zoo zoo = journal.getZoo();
+            Animal animal = new Animal("Unknown", "Meat") { };
+            assertThrows(IllegalArgumentException.class,
+                         () -> zoo.addAnimal(animal));
+            assertFalse(zoo.isAnimalPresent(animal));
+        }
+    }
+
+    /**
+     * Describes the animals of a zoo and their friends in id order.
+     */
+    private static List<String> describe(Zoo zoo) {
+        List<String> lines = new ArrayList<>();
+        AnimalCursor cursor = zoo.cursor();
+        while (cursor.next()) {
+            StringBuilder line = new StringBuilder(cursor.animal().toString());
+            for (int i = 0; i < cursor.friendCount(); i++) {
+                line.append(" | ").append(cursor.friend(i));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private static List<Animal> generateAnimals(int n) {
+        List<Animal> animals = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            switch (i % 3) {
+            case 0:
+                animals.add(new Dog("Dog " + i, "Meat", DogType.WORKING));
+                break;
+            case 1:
+                animals.add(new Parrot("Parrot " + i, "Grain", .5f, true));
+                break;
+            default:
+                animals.add(new Chicken("Chicken " + i, null, null, false));
+                break;
+            }
+        }
+        return animals;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2019 Lisandro Fernandez
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.lisandrofernandez.zoo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.lisandrofernandez.zoo.ZooLoader.Format;
+
+/**
+ * Unit test for {@code ZooLoader} class.
+ */
+public class ZooLoaderTest {
+
+    @Test
+    public void load_ShouldParseCsv(@TempDir Path dir) throws IOException {
+        Path animals = write(dir, "animals.csv",
+                "kind,name,favourite food,type or wings length,speak or broiler\r\n" +
+                "Dog,Killian,Meat,Hunting\r\n" +
+                "\r\n" +
+                "Parrot,\"Parrot \"\"one\"\", the first\",Grain,0.25,false\n" +
+                "chicken,Chicken one,,0.75,TRUE\n" +
+                "Dog,Rocky,Fresh meat,WORKING\n" +
+                "Animal,,\n" +
+                "Bird,Bird,Seeds,1.5");
+        Path friendships = write(dir, "friendships.csv",
+                "a,b\n0,1\n1,0\n 2 , 3 \n2,2\n0,1\n");
+        Zoo zoo = ZooLoader.load(animals, friendships, Format.CSV);
+        assertEquals(Arrays.asList(
+                "Dog [name = Killian, favourite food = Meat, dog type = Hunting]" +
+                " | Parrot [name = Parrot \"one\", the first, favourite food = Grain," +
+                " length of wings = 0.25, can speak = false]",
+                "Parrot [name = Parrot \"one\", the first, favourite food = Grain," +
+                " length of wings = 0.25, can speak = false]" +
+                " | Dog [name = Killian, favourite food = Meat, dog type = Hunting]",
+                "Chicken [name = Chicken one, favourite food = null," +
+                " length of wings = 0.75, is boiler = true]" +
+                " | Dog [name = Rocky, favourite food = Fresh meat, dog type = Working]",
+                "Dog [name = Rocky, favourite food = Fresh meat, dog type = Working]" +
+                " | Chicken [name = Chicken one, favourite food = null," +
+                " length of wings = 0.75, is boiler = true]",
+                "Animal [name = null, favourite food = null]",
+                "Bird [name = Bird, favourite food = Seeds, length of wings = 1.5]"),
+                describe(zoo));
+    }
+
+    @Test
+    public void load_ShouldParseJsonLines(@TempDir Path dir) throws IOException {
+        Path animals = write(dir, "animals.jsonl",
+                "{\"kind\": \"Dog\", \"name\": \"Killian\", \"type\": \"HUNTING\"}\n" +
+                "{\"kind\":\"Parrot\",\"name\":\"Polly \\\"\\u00e9\\\"\"," +
+                "\"favouriteFood\":null,\"wingsLength\":0.5,\"speak\":true}\n" +
+                "\n" +
+                "{ \"kind\" : \"Chicken\" , \"boiler\" : false , \"extra\" : 1 }\n");
+        Path friendships = write(dir, "friendships.jsonl", "[0, 1]\n[2,1]\n");
+        Zoo zoo = ZooLoader.load(animals, friendships, Format.JSON_LINES);
+        assertEquals(Arrays.asList(
+                "Dog [name = Killian, favourite food = null, dog type = Hunting]" +
+                " | Parrot [name = Polly \"é\", favourite food = null," +
+                " length of wings = 0.5, can speak = true]",
+                "Parrot [name = Polly \"é\", favourite food = null," +
+                " length of wings = 0.5, can speak = true]" +
+                " | Dog [name = Killian, favourite food = null, dog type = Hunting]" +
+                " | Chicken [name = null, favourite food = null," +
+                " length of wings = null, is boiler = false]",
+                "Chicken [name = null, favourite food = null," +
+                " length of wings = null, is boiler = false]" +
+                " | Parrot [name = Polly \"é\", favourite food = null," +
+                " length of wings = 0.5, can speak = true]"),
+                describe(zoo));
+    }
+
+    @Test
+    public void load_ShouldNotDependOnTheChunks(@TempDir Path dir)
+            throws IOException {
+        StringBuilder animals = new StringBuilder();
+        List<Animal> expectedAnimals = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            animals.append("Dog,Dog ").append(i).append(",Meat,Sport\n");
+            expectedAnimals.add(new Dog("Dog " + i, "Meat", DogType.SPORT));
+        }
+        Zoo expected = new Zoo(expectedAnimals);
+        StringBuilder friendships = new StringBuilder();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 3000; i++) {
+            int a = random.nextInt(500), b = random.nextInt(500);
+            friendships.append(a).append(',').append(b).append('\n');
+            if (a != b) {
+                expected.makeFriends(expectedAnimals.get(a), expectedAnimals.get(b));
+            }
+        }
+        Path animalsFile = write(dir, "animals.csv", animals.toString());
+        Path friendshipsFile = write(dir, "friendships.csv", friendships.toString());
+        for (int chunkSize : new int[] { 1, 7, 100, 4096, 1 << 20 }) {
+            Zoo zoo = ZooLoader.load(animalsFile, friendshipsFile, Format.CSV,
+                                     ForkJoinPool.commonPool(), chunkSize);
+            assertEquals(describe(expected), describe(zoo));
+        }
+    }
+
+    @Test
+    public void load_ShouldReportMalformedLines(@TempDir Path dir)
+            throws IOException {
+        Path animals = write(dir, "animals.csv", "Dog,Rex,Meat,Hunting\nCat,Tom,Fish\n");
+        IOException e = assertThrows(IOException.class,
+                () -> ZooLoader.load(animals, null, Format.CSV));
+        assertTrue(e.getMessage().contains("byte 21"), e.getMessage());
+        assertTrue(e.getMessage().contains("Unknown kind: Cat"), e.getMessage());
+
+        Path dogs = write(dir, "dogs.csv", "Dog,Rex,Meat,Hunting\nDog,Max,Meat,\n");
+        Path friendships = write(dir, "friendships.csv", "0,1\n1,2\n");
+        e = assertThrows(IOException.class,
+                () -> ZooLoader.load(dogs, friendships, Format.CSV));
+        assertTrue(e.getMessage().contains("No such animal: 2"), e.getMessage());
+
+        Path wrapping = write(dir, "wrapping.csv", "0,1\n1,4294967296\n");
+        e = assertThrows(IOException.class,
+                () -> ZooLoader.load(dogs, wrapping, Format.CSV));
+        assertTrue(e.getMessage().contains("Number too large"), e.getMessage());
+
+        Path json = write(dir, "animals.jsonl", "{\"kind\": \"Dog\",}\n");
+        assertThrows(IOException.class,
+                () -> ZooLoader.load(json, null, Format.JSON_LINES));
+    }
+
+    private static Path write(Path dir, String name, String content)
+            throws IOException {
+        return Files.write(dir.resolve(name),
+                           content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Describes the animals of a zoo and their friends in id order.
+     */
+    private static List<String> describe(Zoo zoo) {
+        List<String> lines = new ArrayList<>();
+        AnimalCursor cursor = zoo.cursor();
+        while (cursor.next()) {
+            StringBuilder line = new StringBuilder(cursor.animal().toString());
+            for (int i = 0; i < cursor.friendCount(); i++) {
+                line.append(" | ").append(cursor.friend(i));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+}
@@ -23,12 +23,27 @@ package com.lisandrofernandez.zoo;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  * Unit test for {@code Zoo} class.
@@ -59,7 +74,7 @@ public class ZooTest {
             new Dog("Dog Three", "Pedigree", DogType.SPORT),
             new Chicken("Chicken Two", "Corn", .75f, false)
         );
-        for (Pair<Animal, Set<Animal>> af : zoo.getAnimalsAndFriends()) {
+        for (Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>> af : zoo.getAnimalsAndFriends()) {
             assertTrue(af.getValue().isEmpty());
         }
     }
@@ -171,6 +186,449 @@ public class ZooTest {
         assertTrue(zoo.isAnimalPresent(animal));
     }
 
+    @Test
+    public void getAnimalsView_ShouldReflectChanges() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Zoo zoo = new Zoo(dog);
+        Set<ReadOnlyAnimal> animals = zoo.getAnimalsView();
+        zoo.addAnimal(parrot);
+        assertEquals(2, animals.size());
+        assertTrue(animals.contains(parrot));
+        zoo.removeAnimal(dog);
+        assertFalse(animals.contains(dog));
+        assertThrows(UnsupportedOperationException.class, () -> animals.add(dog));
+    }
+
+    @Test
+    public void getAnimalsView_WhenModifiedWhileIterating_ShouldThrowConcurrentModificationException() {
+        Zoo zoo = new Zoo(new Animal("Animal One", "Meat"),
+                          new Animal("Animal Two", "Meat"));
+        assertThrows(ConcurrentModificationException.class, () -> {
+            for (ReadOnlyAnimal animal : zoo.getAnimalsView()) {
+                zoo.addAnimal(new Animal("Animal Three", "Meat"));
+            }
+        });
+    }
+
+    @Test
+    public void getFriendsView_ShouldReflectChanges() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Chicken chicken = new Chicken("Chicken One", "Corn", .75f, true);
+        Zoo zoo = new Zoo(dog, parrot, chicken);
+        Set<ReadOnlyAnimal> friends = zoo.getFriendsView(dog);
+        assertTrue(friends.isEmpty());
+        zoo.makeFriends(dog, parrot);
+        zoo.makeFriends(chicken, dog);
+        assertEquals(new HashSet<>(Arrays.asList(parrot, chicken)),
+                     friends);
+        // ids change when an animal is removed
+        zoo.removeAnimal(parrot);
+        assertEquals(Collections.singleton(chicken), friends);
+        zoo.removeAnimal(dog);
+        assertTrue(friends.isEmpty());
+    }
+
+    @Test
+    public void cursor_ShouldVisitEveryAnimalAndFriend() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Chicken chicken = new Chicken("Chicken One", "Corn", .75f, true);
+        Zoo zoo = new Zoo(dog, parrot, chicken);
+        zoo.makeFriends(dog, parrot);
+        zoo.makeFriends(dog, chicken);
+        Map<ReadOnlyAnimal, Set<ReadOnlyAnimal>> visited = new HashMap<>();
+        AnimalCursor cursor = zoo.cursor();
+        while (cursor.next()) {
+            Set<ReadOnlyAnimal> friends = new HashSet<>();
+            for (int i = 0; i < cursor.friendCount(); i++) friends.add(cursor.friend(i));
+            visited.put(cursor.animal(), friends);
+        }
+        assertFalse(cursor.next());
+        assertEquals(friendsByAnimal(zoo), visited);
+    }
+
+    @Test
+    public void snapshot_ShouldNotReflectLaterChanges() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Chicken chicken = new Chicken("Chicken One", "Corn", .75f, true);
+        Zoo zoo = new Zoo(dog, parrot, chicken);
+        zoo.makeFriends(dog, parrot);
+        ZooSnapshot snapshot = zoo.snapshot();
+        zoo.unmakeFriends(dog, parrot);
+        zoo.makeFriends(dog, chicken);
+        zoo.removeAnimal(parrot);
+        assertEquals(3, snapshot.size());
+        assertEquals(1, snapshot.getFriendships());
+        assertTrue(snapshot.isAnimalPresent(parrot));
+        assertTrue(snapshot.areFriends(parrot, dog));
+        assertFalse(snapshot.areFriends(dog, chicken));
+        assertEquals(Collections.singleton(parrot), snapshot.getFriends(dog));
+        assertEquals(new HashSet<>(Arrays.asList(dog, parrot, chicken)),
+                     snapshot.getAnimals());
+    }
+
+    @Test
+    public void snapshot_ShouldNotReflectLaterDays() {
+        Zoo zoo = new Zoo(generateAnimals(200));
+        zoo.setRandomSource(RandomSource.of(42));
+        zoo.setEventSink(FriendshipEventSink.none());
+        zoo.liveDays(5);
+        Map<ReadOnlyAnimal, Set<ReadOnlyAnimal>> expected = friendsByAnimal(zoo);
+        ZooSnapshot snapshot = zoo.snapshot();
+        zoo.liveDays(5);
+        for (Animal animal : zoo.getAnimals().toArray(new Animal[0])) {
+            if (animal.hashCode() % 2 == 0) zoo.removeAnimal(animal);
+        }
+        assertEquals(5, snapshot.getDay());
+        assertEquals(expected.keySet(), snapshot.getAnimals());
+        for (Map.Entry<ReadOnlyAnimal, Set<ReadOnlyAnimal>> e : expected.entrySet()) {
+            assertEquals(e.getValue(), snapshot.getFriends(e.getKey()));
+        }
+    }
+
+    @Test
+    public void getDay_ShouldCountTheDaysLived() {
+        Zoo zoo = new Zoo(generateAnimals(10));
+        zoo.setEventSink(FriendshipEventSink.none());
+        assertEquals(0, zoo.getDay());
+        zoo.liveDay();
+        zoo.liveDayInParallel(ForkJoinPool.commonPool());
+        zoo.liveDays(3);
+        assertEquals(5, zoo.getDay());
+    }
+
+    @Test
+    public void getPublishedSnapshot_ShouldBeNullUnlessPublishing() {
+        Zoo zoo = new Zoo(generateAnimals(10));
+        zoo.setEventSink(FriendshipEventSink.none());
+        zoo.liveDay();
+        assertNull(zoo.getPublishedSnapshot());
+        zoo.setPublishingSnapshots(true);
+        assertEquals(1, zoo.getPublishedSnapshot().getDay());
+        zoo.liveDays(2);
+        assertEquals(3, zoo.getPublishedSnapshot().getDay());
+    }
+
+    @Test
+    public void getPublishedSnapshot_ShouldBeConsistentWhileDaysRun()
+            throws InterruptedException {
+        Zoo zoo = new Zoo(generateAnimals(500));
+        zoo.setEventSink(FriendshipEventSink.none());
+        zoo.setPublishingSnapshots(true);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread reader = new Thread(() -> {
+            try {
+                long lastDay = 0;
+                while (lastDay < 50) {
+                    ZooSnapshot snapshot = zoo.getPublishedSnapshot();
+                    assertTrue(snapshot.getDay() >= lastDay);
+                    lastDay = snapshot.getDay();
+                    int friendships = 0;
+                    for (ReadOnlyAnimal animal : snapshot.getAnimals()) {
+                        for (ReadOnlyAnimal friend : snapshot.getFriends(animal)) {
+                            assertTrue(snapshot.areFriends(friend, animal));
+                            friendships++;
+                        }
+                    }
+                    assertEquals(snapshot.getFriendships() * 2, friendships);
+                }
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        });
+        reader.start();
+        zoo.liveDays(50);
+        reader.join();
+        assertEquals(Collections.emptyList(), failures);
+    }
+
+    @Test
+    public void load_ShouldRestoreSavedZoo(@TempDir Path dir) throws IOException {
+        Zoo zoo = new Zoo(generateAnimals(300));
+        zoo.addAnimal(new Dog(null, "Meat", null));
+        zoo.addAnimal(new Parrot("Parrot Ñ", null, null, null));
+        zoo.addAnimal(new Chicken("Chicken", "Corn", .5f, false));
+        zoo.setRandomSource(RandomSource.of(7));
+        zoo.setEventSink(FriendshipEventSink.none());
+        zoo.liveDays(10);
+        Path file = dir.resolve("zoo.bin");
+        zoo.save(file);
+
+        Zoo loaded = Zoo.load(file);
+        assertEquals(10, loaded.getDay());
+        assertEquals(zoo.getAnimals().size(), loaded.getAnimals().size());
+        assertEquals(describe(friendsByAnimal(zoo)),
+                     describe(friendsByAnimal(loaded)));
+        loaded.setEventSink(FriendshipEventSink.none());
+        loaded.liveDays(2);
+    }
+
+    @Test
+    public void immutableAnimals_ShouldBeFoundByValue(@TempDir Path dir)
+            throws IOException {
+        ImmutableDog dog = new ImmutableDog(1, "Killian", "Meat", DogType.HUNTING);
+        ImmutableParrot parrot = new ImmutableParrot(2, "Parrot one", "Grain", .25f, false);
+        ImmutableChicken chicken = new ImmutableChicken(3, "Chicken one", "Corn", .75f, true);
+        ImmutableBird bird = new ImmutableBird(4, "Bird one", "Seeds", Float.NaN);
+        ImmutableAnimal animal = new ImmutableAnimal(5, "Animal one", null);
+        Zoo zoo = new Zoo(dog, parrot, chicken, bird, animal);
+        zoo.makeFriends(dog, parrot);
+
+        ImmutableParrot copy = new ImmutableParrot(2, "Parrot one", "Grain", .25f, false);
+        assertEquals(parrot, copy);
+        assertEquals(parrot.hashCode(), copy.hashCode());
+        assertNotEquals(parrot, new ImmutableParrot(4, "Parrot one", "Grain", .25f, false));
+        assertTrue(zoo.areFriends(new ImmutableDog(1, "Killian", "Meat", DogType.HUNTING), copy));
+        assertFalse(zoo.addAnimal(copy));
+        assertFalse(zoo.addAnimal(new ImmutableBird(4, "Bird one", "Seeds", Float.NaN)));
+        assertEquals(.25f, copy.wingsLength());
+        assertEquals(Boolean.TRUE, chicken.isBoiler());
+        assertEquals(Collections.singleton(dog), zoo.getDogs(DogType.HUNTING));
+        assertEquals(Collections.singleton(chicken), zoo.getChickens(true));
+        assertEquals(Collections.singleton(bird), zoo.getAnimals(ImmutableBird.class));
+        assertFalse(Animal.class.isInstance(parrot));
+
+        Path file = dir.resolve("zoo.bin");
+        zoo.save(file);
+        Zoo loaded = Zoo.load(file);
+        assertEquals(zoo.getAnimals(), loaded.getAnimals());
+        assertTrue(loaded.areFriends(dog, parrot));
+    }
+
+    @Test
+    public void load_ShouldRejectOtherFiles(@TempDir Path dir)
+            throws IOException {
+        Path file = dir.resolve("zoo.bin");
+        Files.write(file, new byte[100]);
+        assertThrows(IOException.class, () -> Zoo.load(file));
+        new Zoo(generateAnimals(10)).save(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+        assertThrows(IOException.class, () -> Zoo.load(file));
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> Zoo.load(file));
+    }
+
+    @Test
+    public void save_ShouldRejectUnknownAnimals(@TempDir Path dir) {
+        Path file = dir.resolve("zoo.bin");
+        Zoo zoo = new Zoo(new Dog("Dog One", "Meat", DogType.HUNTING) { });
+        assertThrows(IllegalArgumentException.class, () -> zoo.save(file));
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(dir.resolve("zoo.bin.tmp")));
+    }
+
+    @Test
+    public void removeAnimals_ShouldMatchRemovingOneByOne() {
+        List<Animal> animals = generateAnimals(3000);
+        Zoo expected = new Zoo(animals);
+        Zoo bulk = new Zoo(animals);
+        Zoo parallel = new Zoo(animals);
+        for (Zoo zoo : Arrays.asList(expected, bulk, parallel)) {
+            zoo.setRandomSource(RandomSource.of(42));
+            zoo.setEventSink(FriendshipEventSink.none());
+            zoo.liveDays(20);
+        }
+        ZooSnapshot before = bulk.snapshot();
+        Map<ReadOnlyAnimal, Set<ReadOnlyAnimal>> friendsBefore = friendsByAnimal(bulk);
+        Set<Animal> removed = new HashSet<>();
+        for (int i = 0; i < animals.size(); i += 3) removed.add(animals.get(i));
+        removed.add(animals.get(animals.size() - 1));
+
+        List<ReadOnlyAnimal> byId = new ArrayList<>();
+        AnimalCursor cursor = expected.cursor();
+        while (cursor.next()) byId.add(cursor.animal());
+        for (int id = byId.size() - 1; id >= 0; id--) {
+            if (removed.contains(byId.get(id))) expected.removeAnimal(byId.get(id));
+        }
+        assertEquals(removed.size(), bulk.removeAnimals(removed));
+        assertEquals(removed.size(),
+                     parallel.removeAnimals(removed::contains, new ForkJoinPool(4)));
+
+        assertEquals(animalsAndFriendsById(expected), animalsAndFriendsById(bulk));
+        assertEquals(animalsAndFriendsById(expected), animalsAndFriendsById(parallel));
+        for (Animal animal : animals) {
+            assertEquals(friendsBefore.get(animal), before.getFriends(animal));
+        }
+        assertEquals(0, bulk.removeAnimals(removed));
+    }
+
+    @Test
+    public void indexedQueries_ShouldMatchScanning() {
+        Dog killian = new Dog("Killian", "Meat", DogType.HUNTING);
+        Dog rocky = new Dog("Rocky", "Fresh meat", DogType.WORKING);
+        Dog peter = new Dog("Peter", "Pedigree", DogType.SPORT);
+        Parrot one = new Parrot("Parrot one", "Grain", .25f, false);
+        Parrot two = new Parrot("Parrot two", "Corn", .5f, true);
+        Chicken chickenOne = new Chicken("Chicken one", "Corn", .75f, true);
+        Chicken chickenTwo = new Chicken("Rocky", "Corn", .75f, false);
+        Zoo indexed = new Zoo(killian, rocky, one, two, chickenOne);
+        indexed.setIndexingAnimals(true);
+        assertTrue(indexed.isIndexingAnimals());
+        Zoo scanned = new Zoo(killian, rocky, one, two, chickenOne);
+        for (Zoo zoo : Arrays.asList(indexed, scanned)) {
+            zoo.addAnimal(peter);
+            zoo.addAnimal(chickenTwo);
+            zoo.removeAnimal(rocky);
+            zoo.removeAnimals(Collections.singleton(one));
+            two.setFavouriteFood("Seeds");
+            zoo.reindexAnimal(two);
+
+            assertEquals(new HashSet<>(Arrays.asList(killian, peter)),
+                         zoo.getAnimals(Dog.class));
+            assertEquals(Collections.emptySet(), zoo.getAnimals(Bird.class));
+            assertEquals(Collections.singleton(peter), zoo.getDogs(DogType.SPORT));
+            assertEquals(Collections.emptySet(), zoo.getDogs(DogType.WORKING));
+            assertEquals(Collections.singleton(two), zoo.getParrots(true));
+            assertEquals(Collections.emptySet(), zoo.getParrots(false));
+            assertEquals(Collections.singleton(chickenTwo), zoo.getChickens(false));
+            assertEquals(new HashSet<>(Arrays.asList(chickenOne, chickenTwo)),
+                         zoo.getAnimalsByFavouriteFood("Corn"));
+            assertEquals(Collections.singleton(two),
+                         zoo.getAnimalsByFavouriteFood("Seeds"));
+            two.setFavouriteFood("Corn");
+        }
+        assertFalse(scanned.isIndexingAnimals());
+    }
+
+    @Test
+    public void columns_ShouldMatchTheAnimals() {
+        Dog killian = new Dog("Killian", "Meat", DogType.HUNTING);
+        Dog rocky = new Dog("Rocky", "Fresh meat", null);
+        Parrot one = new Parrot("Parrot one", "Grain", .25f, false);
+        Parrot two = new Parrot("Parrot two", "Corn", .5f, true);
+        ReadOnlyParrot three = new ImmutableParrot(3, "Parrot three", "Corn", 1f, true);
+        Chicken chicken = new Chicken("Rocky", "Corn", null, true);
+        Zoo zoo = new Zoo(killian, rocky, one, two, three, chicken, new Animal());
+        AnimalColumns columns = zoo.columns();
+        killian.setName("Changed");
+
+        assertEquals(7, columns.size());
+        List<ReadOnlyAnimal> rows = new ArrayList<>(zoo.getAnimalsView());
+        assertEquals("Killian", columns.name(rows.indexOf(killian)));
+        assertEquals("Rocky", columns.name(rows.indexOf(chicken)));
+        assertEquals("Corn", columns.favouriteFood(rows.indexOf(chicken)));
+        assertNull(columns.favouriteFood(6));
+        assertEquals(DogType.HUNTING, columns.dogType(rows.indexOf(killian)));
+        assertNull(columns.dogType(rows.indexOf(rocky)));
+        assertEquals(Parrot.class, columns.species(rows.indexOf(three)));
+        assertTrue(Float.isNaN(columns.wingsLength(rows.indexOf(chicken))));
+
+        assertEquals(2, columns.rowsOf(Dog.class).cardinality());
+        assertEquals(3, columns.rowsOf(Parrot.class).cardinality());
+        assertEquals(1, columns.rowsOf(DogType.HUNTING).cardinality());
+        assertEquals(3, columns.rowsWithFavouriteFood("Corn").cardinality());
+        assertEquals(0, columns.rowsWithFavouriteFood("Pedigree").cardinality());
+        assertEquals(1, columns.broilers().cardinality());
+        assertEquals(.75, columns.averageWingsLength(columns.speakingParrots()), 1e-9);
+        assertEquals(7 / 12.0,
+                     columns.averageWingsLength(columns.rowsOf(Parrot.class)), 1e-6);
+        assertTrue(Double.isNaN(columns.averageWingsLength(columns.broilers())));
+        BitSet outOfRange = columns.speakingParrots();
+        outOfRange.set(40);
+        outOfRange.set(100);
+        assertEquals(.75, columns.averageWingsLength(outOfRange), 1e-9);
+        assertThrows(IllegalArgumentException.class,
+                     () -> columns.rowsOf(ImmutableDog.class));
+        assertThrows(IndexOutOfBoundsException.class, () -> columns.name(7));
+    }
+
+    @Test
+    public void edgeBatch_ShouldMatchOneByOne() {
+        List<Animal> animals = generateAnimals(2000);
+        Zoo expected = new Zoo(animals);
+        Zoo serial = new Zoo(animals);
+        Zoo parallel = new Zoo(animals);
+        ZooSnapshot before = serial.snapshot();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int round = 0; round < 3; round++) {
+            EdgeBatch made = new EdgeBatch();
+            EdgeBatch broken = new EdgeBatch(100);
+            long newFriendships = 0;
+            for (int i = 0; i < 5000; i++) {
+                int a = random.nextInt(2000), b = random.nextInt(2000);
+                made.add(a, b);
+                if (i % 4 == 0) made.add(b, a); // repeated
+                if (expected.makeFriends(animals.get(a), animals.get(b))) newFriendships++;
+            }
+            long brokenFriendships = 0;
+            for (int i = 0; i < 3000; i++) {
+                int a = random.nextInt(2000), b = random.nextInt(2000);
+                broken.add(a, b);
+                if (expected.unmakeFriends(animals.get(a), animals.get(b))) brokenFriendships++;
+            }
+            assertEquals(newFriendships, serial.makeFriends(made));
+            assertEquals(newFriendships, parallel.makeFriends(made, pool));
+            assertEquals(brokenFriendships, serial.unmakeFriends(broken));
+            assertEquals(brokenFriendships, parallel.unmakeFriends(broken, pool));
+            assertEquals(animalsAndFriendsById(expected), animalsAndFriendsById(serial));
+            assertEquals(animalsAndFriendsById(expected), animalsAndFriendsById(parallel));
+        }
+        assertEquals(0, before.getFriendships());
+        assertEquals(17, serial.indexOf(animals.get(17)));
+        assertEquals(-1, serial.indexOf(new Animal()));
+        EdgeBatch outside = new EdgeBatch();
+        outside.add(0, 2000);
+        assertThrows(IllegalArgumentException.class, () -> serial.makeFriends(outside));
+        assertThrows(IllegalArgumentException.class, () -> outside.add(-1, 0));
+    }
+
+    @Test
+    public void hashedFriendships_ShouldMatchTheFriends() {
+        List<Animal> animals = generateAnimals(600);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (boolean bloomFilter : new boolean[] { false, true }) {
+            Zoo plain = new Zoo(animals);
+            Zoo hashed = new Zoo(animals);
+            plain.setRandomSource(RandomSource.of(42));
+            hashed.setRandomSource(RandomSource.of(42));
+            plain.liveDays(3);
+            hashed.liveDays(3);
+            hashed.setHashingFriendships(true, bloomFilter);
+            assertTrue(hashed.isHashingFriendships());
+            SplittableRandom random = new SplittableRandom(7);
+            for (int round = 0; round < 3; round++) {
+                for (Zoo zoo : new Zoo[] { plain, hashed }) {
+                    zoo.liveDays(2);
+                    zoo.liveDays(2, pool);
+                }
+                EdgeBatch made = new EdgeBatch();
+                EdgeBatch broken = new EdgeBatch();
+                for (int i = 0; i < 400; i++) {
+                    made.add(random.nextInt(plain.getAnimals().size()),
+                             random.nextInt(plain.getAnimals().size()));
+                    broken.add(random.nextInt(plain.getAnimals().size()),
+                               random.nextInt(plain.getAnimals().size()));
+                }
+                assertEquals(plain.makeFriends(made), hashed.makeFriends(made, pool));
+                assertEquals(plain.unmakeFriends(broken), hashed.unmakeFriends(broken));
+                Animal gone = animals.get(round);
+                Set<Animal> retired = new HashSet<>(animals.subList(100 * round + 3,
+                                                                    100 * round + 40));
+                for (Zoo zoo : new Zoo[] { plain, hashed }) {
+                    zoo.makeFriends(animals.get(500), animals.get(501));
+                    zoo.unmakeFriends(animals.get(502), animals.get(503));
+                    zoo.removeAnimal(gone);
+                    zoo.removeAnimals(retired);
+                }
+                assertEquals(animalsAndFriendsById(plain), animalsAndFriendsById(hashed));
+                List<ReadOnlyAnimal> left = new ArrayList<>(hashed.getAnimals());
+                for (ReadOnlyAnimal a : left) {
+                    for (ReadOnlyAnimal b : left) {
+                        assertEquals(plain.areFriends(a, b), hashed.areFriends(a, b));
+                    }
+                }
+            }
+            hashed.setHashingFriendships(false, false);
+            assertFalse(hashed.isHashingFriendships());
+        }
+    }
+
     @Test
     public void friendshipShouldBeSymmetric() {
         Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
@@ -181,6 +639,81 @@ public class ZooTest {
         assertTrue(zoo.areFriends(parrot, dog));
     }
 
+    @Test
+    public void unmakeFriends_ShouldBeSymmetric() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Zoo zoo = new Zoo(dog, parrot);
+        zoo.makeFriends(dog, parrot);
+        assertTrue(zoo.unmakeFriends(parrot, dog));
+        assertFalse(zoo.areFriends(dog, parrot));
+        assertFalse(zoo.areFriends(parrot, dog));
+    }
+
+    @Test
+    public void removeAnimal_ShouldBeRemovedFromItsFriends() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Chicken chicken = new Chicken("Chicken One", "Corn", .75f, true);
+        Zoo zoo = new Zoo(dog, parrot, chicken);
+        zoo.makeFriends(dog, parrot);
+        zoo.makeFriends(dog, chicken);
+        zoo.removeAnimal(dog);
+        assertTrue(zoo.getAnimalsAndFriends().stream()
+            .allMatch(af -> af.getValue().isEmpty()));
+    }
+
+    @Test
+    public void removeAnimal_ShouldKeepOtherFriendships() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Chicken chicken = new Chicken("Chicken One", "Corn", .75f, true);
+        Dog rocky = new Dog("Rocky", "Fresh meat", DogType.WORKING);
+        Zoo zoo = new Zoo(dog, parrot, chicken, rocky);
+        zoo.makeFriends(dog, parrot);
+        zoo.makeFriends(parrot, rocky);
+        zoo.makeFriends(chicken, rocky);
+        zoo.makeFriends(dog, rocky);
+        zoo.removeAnimal(parrot);
+        assertTrue(zoo.areFriends(chicken, rocky));
+        assertTrue(zoo.areFriends(rocky, dog));
+        assertFalse(zoo.areFriends(dog, chicken));
+        assertEquals(3, zoo.getAnimals().size());
+    }
+
+    @Test
+    public void makeFriends_WhenAnimalNotInTheZoo_ShouldThrowIllegalArgumentException() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Zoo zoo = new Zoo(dog);
+        assertThrows(IllegalArgumentException.class, () -> zoo.makeFriends(dog, parrot));
+    }
+
+    @Test
+    public void makeFriends_WhenSameAnimal_ShouldBeFalse() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Zoo zoo = new Zoo(dog);
+        assertFalse(zoo.makeFriends(dog, dog));
+    }
+
+    // repeat test because of random interactions
+    @RepeatedTest(5)
+    public void liveDay_ShouldKeepFriendshipSymmetric() {
+        Zoo zoo = new Zoo(
+            new Dog("Dog One", "Meat", DogType.HUNTING),
+            new Parrot("Parrot One", "Grain", .25f, false),
+            new Chicken("Chicken One", "Corn", .75f, true),
+            new Dog("Dog Two", "Fresh meat", DogType.WORKING),
+            new Parrot("Parrot Two", "Corn", .5f, true)
+        );
+        for (int day = 0; day < 10; day++) zoo.liveDay();
+        for (Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>> af : zoo.getAnimalsAndFriends()) {
+            for (ReadOnlyAnimal friend : af.getValue()) {
+                assertTrue(zoo.areFriends(friend, af.getKey()));
+            }
+        }
+    }
+
     // repeat test because of random interactions
     @RepeatedTest(5)
     public void liveDay_WithTwoAnimals_ShouldBeFriends() {
@@ -191,4 +724,205 @@ public class ZooTest {
         assertTrue(zoo.areFriends(dog, parrot));
     }
 
+    @Test
+    public void liveDayInParallel_ShouldKeepFriendshipSymmetric() {
+        Zoo zoo = new Zoo(generateAnimals(3000));
+        zoo.setEventSink(FriendshipEventSink.none());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int day = 0; day < 3; day++) zoo.liveDayInParallel(pool);
+        } finally {
+            pool.shutdown();
+        }
+        for (Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>> af : zoo.getAnimalsAndFriends()) {
+            assertFalse(af.getValue().contains(af.getKey()));
+            for (ReadOnlyAnimal friend : af.getValue()) {
+                assertTrue(zoo.areFriends(friend, af.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void liveDayInParallel_WithSameSeed_ShouldNotDependOnParallelism() {
+        List<Animal> animals = generateAnimals(3000);
+        Zoo sequential = new Zoo(animals);
+        sequential.setRandomSource(RandomSource.of(42));
+        CollectingEventSink sequentialEvents = new CollectingEventSink();
+        sequential.setEventSink(sequentialEvents);
+        Zoo parallel = new Zoo(animals);
+        parallel.setRandomSource(RandomSource.of(42));
+        CollectingEventSink parallelEvents = new CollectingEventSink();
+        parallel.setEventSink(parallelEvents);
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            for (int day = 0; day < 3; day++) {
+                sequential.liveDayInParallel(one);
+                parallel.liveDayInParallel(four);
+            }
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+        assertEquals(friendsByAnimal(sequential), friendsByAnimal(parallel));
+        assertEquals(sequentialEvents.getEvents().toString(),
+                     parallelEvents.getEvents().toString());
+    }
+
+    @Test
+    public void liveDay_WithSameSeed_ShouldBeReproducible() {
+        List<Animal> animals = generateAnimals(100);
+        Zoo one = new Zoo(animals);
+        one.setRandomSource(RandomSource.of(7));
+        Zoo other = new Zoo(animals);
+        other.setRandomSource(RandomSource.of(7));
+        for (int day = 0; day < 5; day++) {
+            one.liveDay();
+            other.liveDay();
+        }
+        assertEquals(friendsByAnimal(one), friendsByAnimal(other));
+    }
+
+    @Test
+    public void liveDay_WithTwoAnimals_ShouldReportEvents() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Zoo zoo = new Zoo(dog, parrot);
+        CollectingEventSink sink = new CollectingEventSink();
+        zoo.setEventSink(sink);
+        zoo.liveDay();
+        // the first animal makes friends, the second loses and makes
+        // friends again
+        List<FriendshipEvent> events = sink.getEvents();
+        assertEquals(3, events.size());
+        assertEquals(FriendshipEvent.Type.ESTABLISHED, events.get(0).getType());
+        assertEquals(FriendshipEvent.Type.LOST, events.get(1).getType());
+        assertEquals(FriendshipEvent.Type.ESTABLISHED, events.get(2).getType());
+        assertSame(events.get(1).getAnimal(), events.get(2).getAnimal());
+    }
+
+    @Test
+    public void consoleEventSink_ShouldPrintEventsAsText() {
+        Dog dog = new Dog("Dog one", "Meat", DogType.HUNTING);
+        Chicken chicken = new Chicken("Chicken one", "Corn", .75f, true);
+        StringWriter out = new StringWriter();
+        ConsoleEventSink sink = new ConsoleEventSink(out);
+        sink.friendshipLost(dog, chicken);
+        sink.accept(new FriendshipEvent(FriendshipEvent.Type.ESTABLISHED,
+                                        dog, chicken));
+        sink.flush();
+        String n = System.lineSeparator();
+        assertEquals("Dog one has lost friendship with Chicken one" + n +
+                     "Dog one has established friendship with Chicken one" + n,
+                     out.toString());
+    }
+
+    @Test
+    public void liveDays_WithTwoAnimals_ShouldCountChanges() {
+        Dog dog = new Dog("Dog One", "Meat", DogType.HUNTING);
+        Parrot parrot = new Parrot("Parrot One", "Grain", .25f, false);
+        Zoo zoo = new Zoo(dog, parrot);
+        CollectingEventSink sink = new CollectingEventSink();
+        zoo.setEventSink(sink);
+        SimulationStats stats = zoo.liveDays(3);
+        assertTrue(sink.getEvents().isEmpty());
+        assertEquals(3, stats.getDays());
+        assertEquals(5, stats.getFriendshipsLost());
+        assertEquals(6, stats.getFriendshipsEstablished());
+        assertEquals(1, stats.getFriendships());
+        assertArrayEquals(new long[] { 0, 2 }, stats.getDegreeHistogram());
+        assertTrue(zoo.areFriends(dog, parrot));
+    }
+
+    @Test
+    public void liveDaysInParallel_ShouldCountEveryReportedChange() {
+        List<Animal> animals = generateAnimals(2000);
+        Zoo counted = new Zoo(animals);
+        counted.setRandomSource(RandomSource.of(3));
+        Zoo reported = new Zoo(animals);
+        reported.setRandomSource(RandomSource.of(3));
+        CollectingEventSink sink = new CollectingEventSink();
+        reported.setEventSink(sink);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        SimulationStats stats;
+        try {
+            stats = counted.liveDays(4, pool);
+            for (int day = 0; day < 4; day++) reported.liveDayInParallel(pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(sink.getEvents().size(),
+                     stats.getFriendshipsLost() + stats.getFriendshipsEstablished());
+        assertEquals(friendsByAnimal(reported), friendsByAnimal(counted));
+        long[] histogram = stats.getDegreeHistogram();
+        long animalsCounted = 0;
+        for (long count : histogram) animalsCounted += count;
+        assertEquals(2000, animalsCounted);
+    }
+
+    @Test
+    public void liveDays_WhenNegative_ShouldThrowIllegalArgumentException() {
+        Zoo zoo = new Zoo();
+        assertThrows(IllegalArgumentException.class, () -> zoo.liveDays(-1));
+    }
+
+    @Test
+    public void setEventSink_WhenNull_ShouldThrowNullPointerException() {
+        Zoo zoo = new Zoo();
+        assertThrows(NullPointerException.class, () -> zoo.setEventSink(null));
+    }
+
+    @Test
+    public void setRandomSource_WhenNull_ShouldThrowNullPointerException() {
+        Zoo zoo = new Zoo();
+        assertThrows(NullPointerException.class, () -> zoo.setRandomSource(null));
+    }
+
+    private static List<Animal> generateAnimals(int n) {
+        List<Animal> animals = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            animals.add(new Animal("Animal " + i, "Meat"));
+        }
+        return animals;
+    }
+
+    /**
+     * Lists the animals of a zoo and their friends in id order.
+     */
+    private static List<List<ReadOnlyAnimal>> animalsAndFriendsById(Zoo zoo) {
+        List<List<ReadOnlyAnimal>> list = new ArrayList<>();
+        AnimalCursor cursor = zoo.cursor();
+        while (cursor.next()) {
+            List<ReadOnlyAnimal> line = new ArrayList<>();
+            line.add(cursor.animal());
+            for (int i = 0; i < cursor.friendCount(); i++) {
+                line.add(cursor.friend(i));
+            }
+            list.add(line);
+        }
+        return list;
+    }
+
+    /**
+     * Maps the friends by animal to their descriptions, to compare zoos
+     * with different but equal animals.
+     */
+    private static Map<String, Set<String>> describe(
+            Map<ReadOnlyAnimal, Set<ReadOnlyAnimal>> friendsByAnimal) {
+        Map<String, Set<String>> descriptions = new HashMap<>();
+        for (Map.Entry<ReadOnlyAnimal, Set<ReadOnlyAnimal>> e : friendsByAnimal.entrySet()) {
+            Set<String> friends = new HashSet<>();
+            for (ReadOnlyAnimal friend : e.getValue()) friends.add(friend.toString());
+            descriptions.put(e.getKey().toString(), friends);
+        }
+        return descriptions;
+    }
+
+    private static Map<ReadOnlyAnimal, Set<ReadOnlyAnimal>> friendsByAnimal(Zoo zoo) {
+        Map<ReadOnlyAnimal, Set<ReadOnlyAnimal>> map = new HashMap<>();
+        for (Pair<ReadOnlyAnimal, Set<ReadOnlyAnimal>> af : zoo.getAnimalsAndFriends()) {
+            map.put(af.getKey(), af.getValue());
+        }
+        return map;
+    }
 }